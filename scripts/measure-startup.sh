@@ -0,0 +1,75 @@
+#!/usr/bin/env bash
+#
+# Measure startup time and resident memory of the web and headless modes.
+#
+# Starts the boot jar RUNS times per mode, waits for the StartupReport log lines, stops the process and prints the
+# median JVM uptime at ready and at first telemetry, the resident memory at first telemetry and the latency of the
+# first packet, from first byte read to handled.  Runs over the in-process simulator by default so no game is needed;
+# pass SIMPIT_ARGS="--simpit.transport=SERIAL" to measure against KerbalSimpit.  Run it on the Pi itself: figures
+# from a desktop say nothing about a Model B.
+#
+#   ./gradlew bootJar && scripts/measure-startup.sh
+#   RUNS=10 JAVA_OPTS="-Xmx64m -XX:+UseSerialGC -XX:TieredStopAtLevel=1" scripts/measure-startup.sh
+
+set -euo pipefail
+
+JAR=${JAR:-build/libs/rpi-simpit-0.1.0.jar}
+RUNS=${RUNS:-5}
+TIMEOUT=${TIMEOUT:-180}
+JAVA_OPTS=${JAVA_OPTS:-}
+SIMPIT_ARGS=${SIMPIT_ARGS:---simpit.transport=SIMULATOR --simpit.input=MOCK}
+
+if [ ! -f "$JAR" ]; then
+    echo "No jar at $JAR; run ./gradlew bootJar first or set JAR." >&2
+    exit 1
+fi
+
+# The number before the unit $3 (ms uptime, kB resident, us first packet) on the first log line containing $2.
+field() {
+    grep -m1 "$2" "$1" | sed -E "s/.* (-?[0-9]+) $3.*/\\1/"
+}
+
+median() {
+    sort -n | awk '{ v[NR] = $1 } END { if (NR == 0) print "-"; else if (NR % 2) print v[(NR + 1) / 2]; else print int((v[NR / 2] + v[NR / 2 + 1]) / 2) }'
+}
+
+measure() {
+    local mode=$1
+    shift
+    local ready=() telemetry=() resident=() packet=()
+    for run in $(seq 1 "$RUNS"); do
+        local log
+        log=$(mktemp)
+        # shellcheck disable=SC2086
+        java $JAVA_OPTS -jar "$JAR" $SIMPIT_ARGS "$@" > "$log" 2>&1 &
+        local pid=$!
+        for _ in $(seq 1 "$TIMEOUT"); do
+            if grep -q "Startup first telemetry" "$log" || ! kill -0 "$pid" 2> /dev/null; then
+                break
+            fi
+            sleep 1
+        done
+        kill "$pid" 2> /dev/null || true
+        wait "$pid" 2> /dev/null || true
+        if grep -q "Startup first telemetry" "$log"; then
+            ready+=("$(field "$log" "Startup ready" "ms uptime")")
+            telemetry+=("$(field "$log" "Startup first telemetry" "ms uptime")")
+            resident+=("$(field "$log" "Startup first telemetry" "kB resident")")
+            packet+=("$(field "$log" "Startup first telemetry" "us first packet")")
+        else
+            echo "$mode run $run: no telemetry within ${TIMEOUT}s, log kept at $log" >&2
+            continue
+        fi
+        rm -f "$log"
+    done
+    printf '%-10s %6s %14s %22s %18s %20s\n' "$mode" "${#telemetry[@]}" \
+        "$(printf '%s\n' "${ready[@]:-}" | grep . | median)" \
+        "$(printf '%s\n' "${telemetry[@]:-}" | grep . | median)" \
+        "$(printf '%s\n' "${resident[@]:-}" | grep . | median)" \
+        "$(printf '%s\n' "${packet[@]:-}" | grep . | median)"
+}
+
+echo "$(uname -nm), java: $(java -version 2>&1 | head -1), JAVA_OPTS: ${JAVA_OPTS:-none}"
+printf '%-10s %6s %14s %22s %18s %20s\n' mode runs "ready (ms)" "first telemetry (ms)" "resident (kB)" "first packet (us)"
+measure web
+measure headless --spring.profiles.active=headless
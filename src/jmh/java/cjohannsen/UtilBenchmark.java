@@ -0,0 +1,27 @@
+package cjohannsen;
+
+import cjohannsen.protocol.Packet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hex dumping a full frame, as the debug and trace logging does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UtilBenchmark {
+
+    private final byte[] frame = new byte[Packet.PACKET_SIZE];
+
+    @Benchmark
+    public String hexString() {
+        return Util.hexString(frame);
+    }
+}
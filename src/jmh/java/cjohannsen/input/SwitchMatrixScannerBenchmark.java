@@ -0,0 +1,51 @@
+package cjohannsen.input;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one full scan of an 8x8 matrix over the mock provider: the software side of the scan loop, without GPIO.
+ * {@code idle} scans an untouched matrix; {@code chattering} flips one switch on every scan, so the debounce logic
+ * runs for it each time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SwitchMatrixScannerBenchmark {
+
+    @Param({"0", "10"})
+    public int debounceMillis;
+
+    private MockInputProvider matrix;
+    private SwitchMatrixScanner scanner;
+    private long now;
+    private boolean closed;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        matrix = new MockInputProvider(8, 8);
+        scanner = new SwitchMatrixScanner(matrix, 1000, debounceMillis);
+        scanner.addListener((row, column, state, edgeNanos) -> blackhole.consume(edgeNanos));
+    }
+
+    @Benchmark
+    public void idle() {
+        scanner.scan(now++);
+    }
+
+    @Benchmark
+    public void chattering() {
+        closed = !closed;
+        matrix.set(3, 5, closed);
+        scanner.scan(now++);
+    }
+}
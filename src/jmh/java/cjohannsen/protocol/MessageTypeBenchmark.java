@@ -0,0 +1,37 @@
+package cjohannsen.protocol;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Type byte to enum resolution, over every type byte value.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MessageTypeBenchmark {
+
+    @Benchmark
+    @OperationsPerInvocation(256)
+    public void datagramFrom(final Blackhole blackhole) {
+        for (int value = 0; value < 256; value++) {
+            blackhole.consume(MessageType.Datagram.from(value));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(256)
+    public void commandFrom(final Blackhole blackhole) {
+        for (int value = 0; value < 256; value++) {
+            blackhole.consume(MessageType.Command.from(value));
+        }
+    }
+}
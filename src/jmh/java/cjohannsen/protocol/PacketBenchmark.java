@@ -0,0 +1,64 @@
+package cjohannsen.protocol;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frame encode and decode.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PacketBenchmark {
+
+    private byte[] frame;
+    private byte[] echoPayload;
+    private PacketPool pool;
+
+    @Setup
+    public void setUp() {
+        frame = new byte[Packet.PACKET_SIZE];
+        frame[0] = Packet.PACKET_HEADER_BYTE_0;
+        frame[1] = Packet.PACKET_HEADER_BYTE_1;
+        frame[Packet.MESSAGE_SIZE_INDEX] = 8;
+        frame[Packet.MESSAGE_TYPE_INDEX] = (byte) MessageType.Datagram.ALTITUDE_MESSAGE.getValue();
+        echoPayload = "rpi-simpit heartbeat".getBytes();
+        pool = new PacketPool(1);
+    }
+
+    @Benchmark
+    public Packet decodePacket() throws InvalidPacketException {
+        return Packet.decodePacket(frame);
+    }
+
+    @Benchmark
+    public Packet decodePacketSlice() throws InvalidPacketException {
+        return Packet.decodePacket(frame, 0, Packet.MESSAGE_HEADER_SIZE + 8);
+    }
+
+    /** The pooled path the reader thread uses: no allocation once the pool is warm. */
+    @Benchmark
+    public int loadPooled() throws InvalidPacketException {
+        final Packet packet = pool.acquire().load(frame, 0, Packet.MESSAGE_HEADER_SIZE + 8);
+        final int type = packet.getType();
+        packet.release();
+        return type;
+    }
+
+    @Benchmark
+    public byte[] encodePacketByte() {
+        return Packet.encodePacket(MessageType.Command.REGISTER_MESSAGE, (byte) MessageType.Datagram.ALTITUDE_MESSAGE.getValue());
+    }
+
+    @Benchmark
+    public byte[] encodePacketBytes() {
+        return Packet.encodePacket(MessageType.Command.ECHO_REQ_MESSAGE, echoPayload);
+    }
+}
@@ -0,0 +1,98 @@
+package cjohannsen.protocol;
+
+import cjohannsen.recorder.FlightRecorder;
+import cjohannsen.transport.Transport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The reader side of {@link PacketSource}: read, frame, load into a pooled packet and enqueue, fed from a byte array
+ * instead of the serial port.  The benchmark thread drains the queue itself, so each operation is one frame through
+ * the whole receive path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PacketSourceBenchmark {
+
+    /** Frames in the byte array; one receive call reads all of them. */
+    public static final int FRAMES = 16;
+
+    /** Bytes delivered per read: a whole chunk of frames, or one byte at a time as a slow link would. */
+    @Param({"256", "1"})
+    public int chunkSize;
+
+    private PacketSource packetSource;
+    private PacketQueue queue;
+    private int readsPerChunk;
+
+    @Setup
+    public void setUp() {
+        final byte[] stream = new byte[FRAMES * (Packet.MESSAGE_HEADER_SIZE + 8)];
+        for (int i = 0; i < FRAMES; i++) {
+            final int offset = i * (Packet.MESSAGE_HEADER_SIZE + 8);
+            stream[offset] = Packet.PACKET_HEADER_BYTE_0;
+            stream[offset + 1] = Packet.PACKET_HEADER_BYTE_1;
+            stream[offset + Packet.MESSAGE_SIZE_INDEX] = 8;
+            stream[offset + Packet.MESSAGE_TYPE_INDEX] = (byte) MessageType.Datagram.ALTITUDE_MESSAGE.getValue();
+        }
+        final int size = Math.min(chunkSize, stream.length);
+        readsPerChunk = (stream.length + size - 1) / size;
+        packetSource = new PacketSource(new ArrayTransport(stream, size), FRAMES, RingPacketQueue.OverflowPolicy.DROP_OLDEST,
+                false, new FlightRecorder());
+        queue = packetSource.getQueue();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public int receive() {
+        for (int i = 0; i < readsPerChunk; i++) {
+            packetSource.receive();
+        }
+        int types = 0;
+        Packet packet;
+        while ((packet = queue.poll()) != null) {
+            types += packet.getType();
+            packet.release();
+        }
+        return types;
+    }
+
+    /** Replays a byte array forever, a fixed number of bytes per read. */
+    private static class ArrayTransport implements Transport {
+        private final byte[] stream;
+        private final int chunkSize;
+        private int position;
+
+        ArrayTransport(final byte[] stream, final int chunkSize) {
+            this.stream = stream;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int length) {
+            final int count = Math.min(Math.min(length, chunkSize), stream.length - position);
+            System.arraycopy(stream, position, buffer, 0, count);
+            position = (position + count) % stream.length;
+            return count;
+        }
+
+        @Override
+        public int write(final byte[] buffer, final int length) {
+            return length;
+        }
+
+        @Override
+        public void setReadTimeout(final int timeoutMillis) {
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package cjohannsen.protocol;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Payload decoders: the allocating {@code from} factories, and the in-place field accessors for comparison.  Control
+ * messages are measured both ways, as they are encoded on every control streaming tick.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PayloadBenchmark {
+
+    private byte[] twoFloats;
+    private byte[] threeFloats;
+    private byte[] twoInts;
+    private byte[] actionGroup;
+    private byte[] soi;
+    private byte[] rotation;
+    private byte[] translation;
+    private byte[] wheel;
+
+    @Setup
+    public void setUp() {
+        twoFloats = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putFloat(123.456f).putFloat(234.567f).array();
+        threeFloats = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN).putFloat(2200f).putFloat(2100f).putFloat(-3.5f).array();
+        twoInts = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putInt(1800).putInt(3600).array();
+        actionGroup = new byte[]{(byte) MessageType.ActionGroupIndex.RCS_ACTION.getValue()};
+        soi = "Kerbin".getBytes();
+        rotation = new Payload.RotationMessage(-1200, 3400, 32767, (byte) 7).toBytes();
+        translation = new Payload.TranslationMessage(100, -200, 300, (byte) 5).toBytes();
+        wheel = new Payload.WheelMessage(-16000, 16000, (byte) 3).toBytes();
+    }
+
+    @Benchmark
+    public Payload altitude() {
+        return Payload.AltitudeMessage.from(twoFloats);
+    }
+
+    @Benchmark
+    public Payload apsides() {
+        return Payload.ApsidesMessage.from(twoFloats);
+    }
+
+    @Benchmark
+    public Payload apsidesTime() {
+        return Payload.ApsidesTimeMessage.from(twoInts);
+    }
+
+    @Benchmark
+    public Payload resource() {
+        return Payload.ResourceMessage.from(twoFloats);
+    }
+
+    @Benchmark
+    public Payload velocity() {
+        return Payload.VelocityMessage.from(threeFloats);
+    }
+
+    @Benchmark
+    public Payload target() {
+        return Payload.TargetMessage.from(twoFloats);
+    }
+
+    @Benchmark
+    public Payload airspeed() {
+        return Payload.AirspeedMessage.from(twoFloats);
+    }
+
+    @Benchmark
+    public Payload actionGroup() {
+        return Payload.ActionGroupMessage.from(actionGroup);
+    }
+
+    @Benchmark
+    public Payload sphereOfInfluence() {
+        return Payload.SphereOfInfluenceMessage.from(soi);
+    }
+
+    @Benchmark
+    public Payload.RotationMessage rotation() {
+        return Payload.RotationMessage.from(rotation);
+    }
+
+    @Benchmark
+    public Payload.TranslationMessage translation() {
+        return Payload.TranslationMessage.from(translation);
+    }
+
+    @Benchmark
+    public Payload.WheelMessage wheel() {
+        return Payload.WheelMessage.from(wheel);
+    }
+
+    @Benchmark
+    public byte[] rotationEncode() {
+        return Packet.encodePacket(MessageType.Command.ROTATION_MESSAGE, new Payload.RotationMessage(-1200, 3400, 32767, (byte) 7).toBytes());
+    }
+
+    @Benchmark
+    public void altitudeInPlace(final Blackhole blackhole) {
+        blackhole.consume(Payload.AltitudeMessage.sealevel(twoFloats, 0));
+        blackhole.consume(Payload.AltitudeMessage.surface(twoFloats, 0));
+    }
+
+    @Benchmark
+    public void velocityInPlace(final Blackhole blackhole) {
+        blackhole.consume(Payload.VelocityMessage.orbital(threeFloats, 0));
+        blackhole.consume(Payload.VelocityMessage.surface(threeFloats, 0));
+        blackhole.consume(Payload.VelocityMessage.vertical(threeFloats, 0));
+    }
+}
@@ -1,22 +1,42 @@
 package cjohannsen;
 
+import cjohannsen.broadcast.TelemetryBroadcaster;
+import cjohannsen.control.ControlStreamer;
+import cjohannsen.input.InputProvider;
+import cjohannsen.input.InputType;
+import cjohannsen.input.MockInputProvider;
+import cjohannsen.input.Pi4jMatrixProvider;
+import cjohannsen.input.SwitchMatrixScanner;
+import cjohannsen.link.LinkMonitor;
+import cjohannsen.metrics.StartupReport;
+import cjohannsen.protocol.CommandWriter;
 import cjohannsen.protocol.MessageType;
 import cjohannsen.protocol.PacketSource;
 import cjohannsen.protocol.Payload;
+import cjohannsen.simulator.KerbalSimpitSimulator;
+import cjohannsen.transport.LoopbackTransport;
+import cjohannsen.transport.ReplayTransport;
+import cjohannsen.transport.SerialTransport;
+import cjohannsen.transport.Transport;
+import cjohannsen.transport.TransportType;
 import com.fazecast.jSerialComm.SerialPort;
 import com.pi4j.io.gpio.*;
 import com.pi4j.io.gpio.event.GpioPinListenerDigital;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.env.Environment;
 
-import java.text.MessageFormat;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Arrays;
-import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
@@ -31,7 +51,6 @@ public class Application {
     }
 
     static final Logger logger = LoggerFactory.getLogger(Application.class);
-    public static final int HEARTBEAT_FREQUENCY_SECONDS = 60;
     public static final int BAUD_RATE = 57600;
     public static final int GPIO_DEBOUNCE_MILLIS = 100;
 
@@ -39,12 +58,50 @@ public class Application {
         SpringApplication.run(Application.class, args);
     }
 
+    /**
+     * The link to KerbalSimpit, chosen by {@code simpit.transport}: the serial port, an in-process simulator, or a
+     * flight recording.
+     */
     @Bean
-    SerialPort serialPort() {
+    Transport transport(@Value("${simpit.transport:SERIAL}") TransportType transportType,
+                        @Value("${simpit.serial.port:}") String serialPortName,
+                        @Value("${simpit.replay.path:}") String replayPath,
+                        @Value("${simpit.replay.speed:1}") String replaySpeed,
+                        @Value("${simpit.simulator.rate:" + KerbalSimpitSimulator.DEFAULT_RATE_HZ + "}") double simulatorRate,
+                        @Value("${simpit.simulator.rates:}") String simulatorRates) throws IOException {
+        switch (transportType) {
+            case SIMULATOR:
+                logger.info("Running against the KerbalSimpit simulator at " + simulatorRate + " Hz per channel.");
+                final LoopbackTransport loopback = new LoopbackTransport();
+                final KerbalSimpitSimulator simulator = new KerbalSimpitSimulator(loopback.getPeer(), simulatorRate);
+                simulator.setRates(simulatorRates);
+                simulator.start();
+                return loopback;
+            case REPLAY:
+                if (replayPath.isEmpty()) {
+                    throw new IllegalArgumentException("simpit.replay.path must be set to replay a flight recording.");
+                }
+                logger.info("Replaying flight recording " + replayPath + " at speed " + replaySpeed);
+                return new ReplayTransport(Paths.get(replayPath), ReplayTransport.parseSpeed(replaySpeed));
+            default:
+                return new SerialTransport(serialPort(serialPortName));
+        }
+    }
+
+    private SerialPort serialPort(String portName) {
         logger.info("*************************");
         logger.info("Retrieving serial port - ");
 
-        SerialPort comPort = SerialPort.getCommPorts()[0];
+        SerialPort comPort;
+        if (portName.isEmpty()) {
+            SerialPort[] ports = SerialPort.getCommPorts();
+            if (ports.length == 0) {
+                throw new IllegalStateException("No serial ports found.  Set simpit.transport=SIMULATOR to run without one.");
+            }
+            comPort = ports[0];
+        } else {
+            comPort = SerialPort.getCommPort(portName);
+        }
         comPort.setBaudRate(BAUD_RATE);
         logger.info("Identified serial port " + comPort.getDescriptivePortName());
         logger.info("Port description: " + comPort.getPortDescription());
@@ -66,21 +123,30 @@ public class Application {
         return comPort;
     }
 
+    /**
+     * Lazy so that Pi4J and wiringPi are only loaded when GPIO inputs are used; the mock input runs without them.
+     */
     @Bean
+    @Lazy
     GpioController gpioController() {
         return GpioFactory.getInstance();
     }
 
     @Bean
-    public CommandLineRunner commandLineRunner(ApplicationContext ctx) {
+    public CommandLineRunner commandLineRunner(ApplicationContext ctx, @Value("${simpit.input:DIRECT}") InputType inputType) {
         return args -> {
             logger.info("Initializing SimpitHost...");
 
             PacketSource packetSource = ctx.getBean(PacketSource.class);
+            CommandWriter commandWriter = ctx.getBean(CommandWriter.class);
+            ControlStreamer controlStreamer = ctx.getBean(ControlStreamer.class);
             SimpitHost simpitHost = ctx.getBean(SimpitHost.class);
             ApplicationState applicationState = ctx.getBean(ApplicationState.class);
-            GpioController gpioController = ctx.getBean(GpioController.class);
+            TelemetryHandler telemetryHandler = ctx.getBean(TelemetryHandler.class);
+            LinkMonitor linkMonitor = ctx.getBean(LinkMonitor.class);
             packetSource.start();
+            commandWriter.start();
+            ctx.getBean(TelemetryBroadcaster.class).start();
 
             final boolean handshakeSuccess = simpitHost.handshake();
             if (!handshakeSuccess) {
@@ -90,80 +156,139 @@ public class Application {
                 logger.info("Handshaking success.");
 
                 logger.info("Registering datagram handlers.");
-                simpitHost.registerHandler(ECHO_RESP_MESSAGE, (b) ->  null, (MessageType.Datagram type, byte[] message, Payload.Provider provider) -> {
-                    logger.debug(MessageFormat.format("{0}: {1}", type.printableString(), new String(message).trim()));
-                });
-                simpitHost.registerHandler(ALTITUDE_MESSAGE, Payload.AltitudeMessage::from, (t, b, p) -> updateDatagram(applicationState, t, b, p));
-                simpitHost.registerHandler(APSIDES_MESSAGE, Payload.ApsidesMessage::from, (t, b, p) -> updateDatagram(applicationState, t, b, p));
-                simpitHost.registerHandler(LF_MESSAGE, Payload.ResourceMessage::from, (t, b, p) -> updateDatagram(applicationState, t, b, p));
-                simpitHost.registerHandler(LF_STAGE_MESSAGE, Payload.ResourceMessage::from, (t, b, p) -> updateDatagram(applicationState, t, b, p));
-                simpitHost.registerHandler(OX_MESSAGE, Payload.ResourceMessage::from, (t, b, p) -> updateDatagram(applicationState, t, b, p));
-                simpitHost.registerHandler(OX_STAGE_MESSAGE, Payload.ResourceMessage::from, (t, b, p) -> updateDatagram(applicationState, t, b, p));
-                simpitHost.registerHandler(SF_MESSAGE, Payload.ResourceMessage::from, (t, b, p) -> updateDatagram(applicationState, t, b, p));
-                simpitHost.registerHandler(SF_STAGE_MESSAGE, Payload.ResourceMessage::from, (t, b, p) -> updateDatagram(applicationState, t, b, p));
-                simpitHost.registerHandler(MONO_MESSAGE, Payload.ResourceMessage::from, (t, b, p) -> updateDatagram(applicationState, t, b, p));
-                simpitHost.registerHandler(ELECTRIC_MESSAGE, Payload.ResourceMessage::from, (t, b, p) -> updateDatagram(applicationState, t, b, p));
-                simpitHost.registerHandler(EVA_MESSAGE, Payload.ResourceMessage::from, (t, b, p) -> updateDatagram(applicationState, t, b, p));
-                simpitHost.registerHandler(ORE_MESSAGE, Payload.ResourceMessage::from, (t, b, p) -> updateDatagram(applicationState, t, b, p));
-                simpitHost.registerHandler(AB_MESSAGE, Payload.ResourceMessage::from, (t, b, p) -> updateDatagram(applicationState, t, b, p));
-                simpitHost.registerHandler(AB_STAGE_MESSAGE, Payload.ResourceMessage::from, (t, b, p) -> updateDatagram(applicationState, t, b, p));
-                simpitHost.registerHandler(VELOCITY_MESSAGE, Payload.VelocityMessage::from, (t, b, p) -> updateDatagram(applicationState, t, b, p));
-                simpitHost.registerHandler(ACTIONSTATUS_MESSAGE, Payload.ActionGroupMessage::from, (t, b, p) -> updateDatagram(applicationState, t, b, p));
-                simpitHost.registerHandler(APSIDESTIME_MESSAGE, Payload.ApsidesTimeMessage::from, (t, b, p) -> updateDatagram(applicationState, t, b, p));
-                simpitHost.registerHandler(TARGETINFO_MESSAGE, Payload.TargetMessage::from, (t, b, p) -> updateDatagram(applicationState, t, b, p));
-                simpitHost.registerHandler(SOI_MESSAGE, Payload.SphereOfInfluenceMessage::from, (t, b, p) -> updateDatagram(applicationState, t, b, p));
-                simpitHost.registerHandler(AIRSPEED_MESSAGE, Payload.AirspeedMessage::from, (t, b, p) -> updateDatagram(applicationState, t, b, p));
+                simpitHost.registerHandler(ECHO_RESP_MESSAGE, (b) ->  null, linkMonitor);
+                simpitHost.registerHandler(ALTITUDE_MESSAGE, Payload.AltitudeMessage::from, telemetryHandler);
+                simpitHost.registerHandler(APSIDES_MESSAGE, Payload.ApsidesMessage::from, telemetryHandler);
+                simpitHost.registerHandler(LF_MESSAGE, Payload.ResourceMessage::from, telemetryHandler);
+                simpitHost.registerHandler(LF_STAGE_MESSAGE, Payload.ResourceMessage::from, telemetryHandler);
+                simpitHost.registerHandler(OX_MESSAGE, Payload.ResourceMessage::from, telemetryHandler);
+                simpitHost.registerHandler(OX_STAGE_MESSAGE, Payload.ResourceMessage::from, telemetryHandler);
+                simpitHost.registerHandler(SF_MESSAGE, Payload.ResourceMessage::from, telemetryHandler);
+                simpitHost.registerHandler(SF_STAGE_MESSAGE, Payload.ResourceMessage::from, telemetryHandler);
+                simpitHost.registerHandler(MONO_MESSAGE, Payload.ResourceMessage::from, telemetryHandler);
+                simpitHost.registerHandler(ELECTRIC_MESSAGE, Payload.ResourceMessage::from, telemetryHandler);
+                simpitHost.registerHandler(EVA_MESSAGE, Payload.ResourceMessage::from, telemetryHandler);
+                simpitHost.registerHandler(ORE_MESSAGE, Payload.ResourceMessage::from, telemetryHandler);
+                simpitHost.registerHandler(AB_MESSAGE, Payload.ResourceMessage::from, telemetryHandler);
+                simpitHost.registerHandler(AB_STAGE_MESSAGE, Payload.ResourceMessage::from, telemetryHandler);
+                simpitHost.registerHandler(VELOCITY_MESSAGE, Payload.VelocityMessage::from, telemetryHandler);
+                simpitHost.registerHandler(ACTIONSTATUS_MESSAGE, Payload.ActionGroupMessage::from, telemetryHandler);
+                simpitHost.registerHandler(APSIDESTIME_MESSAGE, Payload.ApsidesTimeMessage::from, telemetryHandler);
+                simpitHost.registerHandler(TARGETINFO_MESSAGE, Payload.TargetMessage::from, telemetryHandler);
+                simpitHost.registerHandler(SOI_MESSAGE, Payload.SphereOfInfluenceMessage::from, telemetryHandler);
+                simpitHost.registerHandler(AIRSPEED_MESSAGE, Payload.AirspeedMessage::from, telemetryHandler);
 
                 logger.info("Subscribing to message channels.");
                 Arrays.stream(MessageType.Datagram.values()).filter((d) -> d != MessageType.Datagram.UNDEFINED).forEach(simpitHost::enableChannel);
 
-                logger.info("Initiating echo heartbeat.");
-                Executors.newSingleThreadScheduledExecutor().scheduleAtFixedRate(() -> simpitHost.sendEchoRequest("rpi-simpit heartbeat"), 0, HEARTBEAT_FREQUENCY_SECONDS, TimeUnit.SECONDS);
+                controlStreamer.start();
+
+                linkMonitor.start();
+                ctx.getBean(StartupReport.class).ready();
 
                 Executors.newSingleThreadScheduledExecutor().scheduleAtFixedRate(() -> logger.info(applicationState.toString()), 0, 10, TimeUnit.SECONDS);
 
-                logger.info("Setting up a GPIO listener for STAGE control");
-
-                GpioPinDigitalInput stageButton = gpioController.provisionDigitalInputPin(RaspiPin.GPIO_01, "Stage Button", PinPullResistance.PULL_UP);
-                stageButton.setDebounce(GPIO_DEBOUNCE_MILLIS);
-                stageButton.addListener((GpioPinListenerDigital) event -> {
-                    if (event.getState().isLow()) {
-                        logger.info("Stage button activated.  Staging is " + (applicationState.isStageEnabled() ? "ENABLED" : "DISABLED"));
-                        if (applicationState.isStageEnabled()) {
-                            simpitHost.activateStandardActionGroup(MessageType.ActionGroupIndex.STAGE_ACTION);
-                        }
-                    }
-                });
-
-                GpioPinDigitalInput stageEnableSwitch = gpioController.provisionDigitalInputPin(RaspiPin.GPIO_02, "Stage Enable Switch", PinPullResistance.PULL_UP);
-                stageEnableSwitch.setDebounce(GPIO_DEBOUNCE_MILLIS);
-                stageEnableSwitch.addListener((GpioPinListenerDigital) event -> {
-                    applicationState.setStageEnabled(stageEnableSwitch.isLow());
-                });
-
-                GpioPinDigitalInput rcsEnableSwitch = gpioController.provisionDigitalInputPin(RaspiPin.GPIO_03, "RCS Enable Switch", PinPullResistance.PULL_UP);
-                rcsEnableSwitch.setDebounce(GPIO_DEBOUNCE_MILLIS);
-                rcsEnableSwitch.addListener((GpioPinListenerDigital) event -> {
-                    applicationState.setRcsEnabled(rcsEnableSwitch.isLow());
-                    if (rcsEnableSwitch.isLow()) {
-                        simpitHost.activateStandardActionGroup(MessageType.ActionGroupIndex.RCS_ACTION);
-                    } else {
-                        simpitHost.deactivateStandardActionGroup(MessageType.ActionGroupIndex.RCS_ACTION);
-                    }
-                });
+                if (inputType == InputType.DIRECT) {
+                    directInputs(ctx.getBean(GpioController.class), applicationState, simpitHost);
+                } else {
+                    matrixInputs(inputType, ctx, ctx.getEnvironment(), applicationState, simpitHost);
+                }
             }
         };
     }
 
-    private void updateDatagram(final ApplicationState applicationState, final MessageType.Datagram type, final byte[] message, final Payload.Provider provider) {
-        Payload datagram = provider.provide(message);
-        Optional<Payload> cachedDatagram = applicationState.getCachedDatagram(type);
-        if (!cachedDatagram.isPresent() || !cachedDatagram.get().equals(datagram)) {
-            applicationState.setCachedDatagram(type, datagram);
-            logger.info(type + " - " + datagram.toString());
+    /**
+     * One GPIO pin and Pi4J listener per switch: stage button on GPIO 1, stage enable on GPIO 2, RCS enable on GPIO 3.
+     */
+    private void directInputs(GpioController gpioController, ApplicationState applicationState, SimpitHost simpitHost) {
+        logger.info("Setting up a GPIO listener for STAGE control");
+
+        GpioPinDigitalInput stageButton = gpioController.provisionDigitalInputPin(RaspiPin.GPIO_01, "Stage Button", PinPullResistance.PULL_UP);
+        stageButton.setDebounce(GPIO_DEBOUNCE_MILLIS);
+        stageButton.addListener((GpioPinListenerDigital) event -> {
+            // pi4j events carry no timestamp, so the edge is stamped on entry to the listener.
+            final long edgeNanos = System.nanoTime();
+            if (event.getState().isLow()) {
+                stage(applicationState, simpitHost, edgeNanos);
+            }
+        });
+
+        GpioPinDigitalInput stageEnableSwitch = gpioController.provisionDigitalInputPin(RaspiPin.GPIO_02, "Stage Enable Switch", PinPullResistance.PULL_UP);
+        stageEnableSwitch.setDebounce(GPIO_DEBOUNCE_MILLIS);
+        stageEnableSwitch.addListener((GpioPinListenerDigital) event -> {
+            applicationState.setStageEnabled(stageEnableSwitch.isLow());
+        });
+
+        GpioPinDigitalInput rcsEnableSwitch = gpioController.provisionDigitalInputPin(RaspiPin.GPIO_03, "RCS Enable Switch", PinPullResistance.PULL_UP);
+        rcsEnableSwitch.setDebounce(GPIO_DEBOUNCE_MILLIS);
+        rcsEnableSwitch.addListener((GpioPinListenerDigital) event -> {
+            final long edgeNanos = System.nanoTime();
+            rcs(applicationState, simpitHost, rcsEnableSwitch.isLow(), edgeNanos);
+        });
+    }
+
+    /**
+     * A scanned switch matrix.  Switches are numbered row by row from 0; {@code simpit.input.stage-button},
+     * {@code simpit.input.stage-enable} and {@code simpit.input.rcs-enable} pick the switches for the existing controls.
+     */
+    private void matrixInputs(InputType inputType, ApplicationContext ctx, Environment environment,
+                              ApplicationState applicationState, SimpitHost simpitHost) {
+        final InputProvider provider;
+        if (inputType == InputType.MATRIX) {
+            provider = new Pi4jMatrixProvider(ctx.getBean(GpioController.class),
+                    Pi4jMatrixProvider.parsePins(environment.getRequiredProperty("simpit.input.rows")),
+                    Pi4jMatrixProvider.parsePins(environment.getRequiredProperty("simpit.input.columns")));
+        } else {
+            provider = new MockInputProvider(environment.getProperty("simpit.input.mock.rows", Integer.class, 8),
+                    environment.getProperty("simpit.input.mock.columns", Integer.class, 8));
+        }
+        final SwitchMatrixScanner scanner = new SwitchMatrixScanner(provider,
+                environment.getProperty("simpit.input.scan-rate", Double.class, SwitchMatrixScanner.DEFAULT_SCAN_RATE_HZ),
+                environment.getProperty("simpit.input.debounce-millis", Integer.class, SwitchMatrixScanner.DEFAULT_DEBOUNCE_MILLIS));
+        final int stageButton = environment.getProperty("simpit.input.stage-button", Integer.class, 0);
+        final int stageEnable = environment.getProperty("simpit.input.stage-enable", Integer.class, 1);
+        final int rcsEnable = environment.getProperty("simpit.input.rcs-enable", Integer.class, 2);
+        final int columns = provider.getColumnCount();
+        scanner.addListener((row, column, closed, edgeNanos) -> {
+            final int index = row * columns + column;
+            if (index == stageButton && closed) {
+                stage(applicationState, simpitHost, edgeNanos);
+            } else if (index == stageEnable) {
+                applicationState.setStageEnabled(closed);
+            } else if (index == rcsEnable) {
+                rcs(applicationState, simpitHost, closed, edgeNanos);
+            }
+        });
+        scanner.start();
+    }
+
+    private static void stage(ApplicationState applicationState, SimpitHost simpitHost, long edgeNanos) {
+        logger.info("Stage button activated.  Staging is " + (applicationState.isStageEnabled() ? "ENABLED" : "DISABLED"));
+        if (applicationState.isStageEnabled()) {
+            logFailure("Stage", simpitHost.activateStandardActionGroup(MessageType.ActionGroupIndex.STAGE_ACTION, edgeNanos));
         }
+    }
 
+    private static void rcs(ApplicationState applicationState, SimpitHost simpitHost, boolean enabled, long edgeNanos) {
+        applicationState.setRcsEnabled(enabled);
+        if (enabled) {
+            logFailure("RCS on", simpitHost.activateStandardActionGroup(MessageType.ActionGroupIndex.RCS_ACTION, edgeNanos));
+        } else {
+            logFailure("RCS off", simpitHost.deactivateStandardActionGroup(MessageType.ActionGroupIndex.RCS_ACTION, edgeNanos));
+        }
     }
 
+    /**
+     * A switch has no one to answer, so a command that was rejected or fell short is at least logged.
+     */
+    private static void logFailure(String command, CompletableFuture<Boolean> result) {
+        result.whenComplete((written, e) -> {
+            if (e != null) {
+                logger.error(command + " command not sent: " + (e.getCause() != null ? e.getCause() : e).getMessage());
+            } else if (!written) {
+                logger.error(command + " command fell short of a whole frame.");
+            }
+        });
+    }
 
 }
\ No newline at end of file
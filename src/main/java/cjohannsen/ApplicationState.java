@@ -2,17 +2,16 @@ package cjohannsen;
 
 import cjohannsen.protocol.MessageType;
 import cjohannsen.protocol.Payload;
+import cjohannsen.telemetry.TelemetryStore;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 @Component
 public class ApplicationState {
-    private final Map<MessageType.Datagram, Payload> dataCache = new ConcurrentHashMap<>();
+    private final TelemetryStore telemetryStore = new TelemetryStore();
 
     private AtomicBoolean stageEnabled = new AtomicBoolean(false);
     private AtomicBoolean rcsEnabled = new AtomicBoolean(false);
@@ -21,12 +20,31 @@ public class ApplicationState {
     public ApplicationState() {
     }
 
+    /**
+     * The primitive store backing the cached datagrams.  Written by the dispatcher thread.
+     * @return the telemetry store.
+     */
+    public TelemetryStore getTelemetryStore() {
+        return telemetryStore;
+    }
+
+    /**
+     * Decode the latest payload received on a channel.  Allocates; hot paths should read the
+     * {@link #getTelemetryStore() telemetry store} directly.
+     * @param type the channel.
+     * @return the decoded payload, or empty if nothing has been received on the channel.
+     */
     public Optional<Payload> getCachedDatagram(MessageType.Datagram type) {
-        return Optional.ofNullable(dataCache.get(type));
+        final Payload.Provider provider = Payload.providerFor(type);
+        if (provider == null || !telemetryStore.has(type)) {
+            return Optional.empty();
+        }
+        return Optional.of(provider.provide(telemetryStore.snapshot(null).getPayload(type)));
     }
 
     public void setCachedDatagram(MessageType.Datagram type, Payload payload) {
-        dataCache.put(type, payload);
+        final byte[] bytes = payload.getBytes();
+        telemetryStore.update(type, bytes, 0, bytes.length);
     }
 
     public boolean isStageEnabled() {
@@ -46,12 +64,18 @@ public class ApplicationState {
     }
 
     public String toString() {
-        if (dataCache.isEmpty()) {
+        final TelemetryStore.Snapshot snapshot = telemetryStore.snapshot(null);
+        if (snapshot.getVersion() == 0) {
             return "Status: Uninitialized";
         }
         StringBuilder b = new StringBuilder();
         b.append("Status:\r\n");
-        dataCache.forEach((d,p) -> b.append(d.printableString() + " - " + p.toString() + "\r\n"));
+        for (MessageType.Datagram d : MessageType.Datagram.values()) {
+            final Payload.Provider provider = Payload.providerFor(d);
+            if (provider != null && snapshot.has(d)) {
+                b.append(d.printableString() + " - " + provider.provide(snapshot.getPayload(d)).toString() + "\r\n");
+            }
+        }
         return b.toString();
     }
 }
@@ -1,15 +1,42 @@
 package cjohannsen;
 
+import cjohannsen.control.ControlStreamer;
+import cjohannsen.link.LinkMonitor;
+import cjohannsen.metrics.LatencyHistogram;
+import cjohannsen.metrics.LatencyTracker;
 import cjohannsen.protocol.MessageType;
+import cjohannsen.telemetry.TelemetryBinary;
+import cjohannsen.telemetry.TelemetryHistory;
+import cjohannsen.telemetry.TelemetryJson;
+import cjohannsen.telemetry.TelemetryPublisher;
+import cjohannsen.telemetry.TelemetryStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+import static org.springframework.http.MediaType.APPLICATION_OCTET_STREAM_VALUE;
+import static org.springframework.http.MediaType.TEXT_EVENT_STREAM_VALUE;
+import static org.springframework.http.MediaType.TEXT_PLAIN_VALUE;
 import static org.springframework.web.bind.annotation.RequestMethod.GET;
 import static org.springframework.web.bind.annotation.RequestMethod.POST;
 
@@ -19,79 +46,235 @@ public class CommandController {
 
     private final ApplicationState applicationState;
     private final SimpitHost simpitHost;
+    private final TelemetryHistory telemetryHistory;
+    private final LatencyTracker latencyTracker;
+    private final ControlStreamer controlStreamer;
+    private final TelemetryPublisher telemetryPublisher;
+    private final LinkMonitor linkMonitor;
 
     @Autowired
-    public CommandController(final ApplicationState applicationState, SimpitHost simpitHost) {
+    public CommandController(final ApplicationState applicationState, SimpitHost simpitHost, TelemetryHistory telemetryHistory,
+                             LatencyTracker latencyTracker, ControlStreamer controlStreamer, TelemetryPublisher telemetryPublisher,
+                             LinkMonitor linkMonitor) {
         this.applicationState = applicationState;
         this.simpitHost = simpitHost;
+        this.telemetryHistory = telemetryHistory;
+        this.latencyTracker = latencyTracker;
+        this.controlStreamer = controlStreamer;
+        this.telemetryPublisher = telemetryPublisher;
+        this.linkMonitor = linkMonitor;
     }
 
+    /**
+     * Telemetry as JSON, e.g. {@code /status?since=5f3a9c01-1234&channels=ALTITUDE_MESSAGE}.  {@code since} returns
+     * only the channels that changed after that version, or every channel for a version from an earlier run; the
+     * ETag is the version, so {@code If-None-Match} answers 304 until anything changes.
+     */
     @RequestMapping(value = "/status",
             method = GET,
             produces = APPLICATION_JSON_VALUE)
     @ResponseBody
-    public String status(@RequestBody(required = false) String body)  {
+    public String status(@RequestParam(value = "since", defaultValue = "") String since,
+                         @RequestParam(value = "channels", defaultValue = "") String channels,
+                         WebRequest request) {
+        final TelemetryStore.Snapshot snapshot = applicationState.getTelemetryStore().snapshot(null);
+        if (request.checkNotModified("\"" + snapshot.getTag() + "\"")) {
+            return null;
+        }
+        final StringBuilder json = new StringBuilder(1024);
+        TelemetryJson.write(json, snapshot, TelemetryJson.parseChannels(channels), snapshot.sinceVersion(since));
+        return json.toString();
+    }
+
+    /**
+     * Telemetry in the {@link TelemetryBinary} format, for clients that {@code Accept: application/octet-stream}.
+     * Takes the same parameters as the JSON form.
+     */
+    @RequestMapping(value = "/status",
+            method = GET,
+            produces = APPLICATION_OCTET_STREAM_VALUE)
+    public void statusBinary(@RequestParam(value = "since", defaultValue = "") String since,
+                             @RequestParam(value = "channels", defaultValue = "") String channels,
+                             WebRequest request, HttpServletResponse response) throws IOException {
+        final TelemetryStore.Snapshot snapshot = applicationState.getTelemetryStore().snapshot(null);
+        if (request.checkNotModified("\"" + snapshot.getTag() + ".bin\"")) {
+            return;
+        }
+        final long sinceVersion = snapshot.sinceVersion(since);
+        response.setContentType(APPLICATION_OCTET_STREAM_VALUE);
+        TelemetryBinary.write(response.getOutputStream(), snapshot, TelemetryJson.parseChannels(channels), sinceVersion);
+    }
 
+    /**
+     * The decoded telemetry as readable text, one channel per line.
+     */
+    @RequestMapping(value = "/status/text",
+            method = GET,
+            produces = TEXT_PLAIN_VALUE)
+    @ResponseBody
+    public String statusText() {
         return applicationState.toString();
     }
 
+    /**
+     * Telemetry pushed as Server-Sent Events, e.g. {@code /stream?channels=ALTITUDE_MESSAGE,VELOCITY_MESSAGE&rate=10}:
+     * a {@code snapshot} event on connect, then {@code update} events with the channels that changed.
+     */
+    @RequestMapping(value = "/stream",
+            method = GET,
+            produces = TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@RequestParam(value = "channels", defaultValue = "") String channels,
+                             @RequestParam(value = "rate", defaultValue = "0") double rate) {
+        return telemetryPublisher.subscribe(channels, rate);
+    }
+
+    /**
+     * History of one telemetry field, e.g. {@code /history?channel=ALTITUDE_MESSAGE&field=sealevel&tier=SECOND&seconds=300}.
+     */
+    @RequestMapping(value = "/history",
+            method = GET,
+            produces = APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public List<TelemetryHistory.Sample> history(@RequestParam("channel") String channel,
+                                                 @RequestParam("field") String field,
+                                                 @RequestParam(value = "tier", defaultValue = "SECOND") String tier,
+                                                 @RequestParam(value = "seconds", defaultValue = "300") long seconds) {
+        final long since = System.currentTimeMillis() - seconds * 1000;
+        return telemetryHistory.query(MessageType.Datagram.valueOf(channel.trim()), field.trim(),
+                TelemetryHistory.Tier.valueOf(tier.trim()), since);
+    }
+
+    /**
+     * Latency per pipeline stage: count, mean, p50, p99 and max in microseconds.  {@code reset=true} starts a new window.
+     */
+    @RequestMapping(value = "/latency",
+            method = GET,
+            produces = APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public Map<String, LatencyHistogram.Snapshot> latency(@RequestParam(value = "reset", defaultValue = "false") boolean reset) {
+        final Map<String, LatencyHistogram.Snapshot> snapshot = latencyTracker.snapshot();
+        if (reset) {
+            latencyTracker.reset();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Link health: state, echo probe counts, round trip time in microseconds and milliseconds of silence per channel.
+     */
+    @RequestMapping(value = "/link",
+            method = GET,
+            produces = APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public Map<String, Object> link() {
+        return linkMonitor.snapshot();
+    }
+
+    /**
+     * Set analog control axes, e.g. {@code PITCH=0.5,YAW=-0.25,THROTTLE=1}; they are streamed on the next tick.
+     */
+    @RequestMapping(value = "controls",
+            method = POST,
+            produces = APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public String controls(@RequestBody(required = true) String body) {
+        logger.info("controls: " + body);
+        controlStreamer.set(body);
+        return "OK";
+    }
+
     @RequestMapping(value = "actiongroup/standard/activate",
             method = POST,
             produces = APPLICATION_JSON_VALUE)
     @ResponseBody
-    public String activateStandardActionGroup(@RequestBody(required = true) String body) {
+    public CompletableFuture<ResponseEntity<String>> activateStandardActionGroup(@RequestBody(required = true) String body) {
         logger.info("index: " + body);
-        simpitHost.activateStandardActionGroup(MessageType.ActionGroupIndex.valueOf(body.trim()));
-        return "OK";
+        final MessageType.ActionGroupIndex index = MessageType.ActionGroupIndex.valueOf(body.trim());
+        return written("activate " + index, simpitHost.activateStandardActionGroup(index));
     }
 
     @RequestMapping(value = "actiongroup/standard/deactivate",
             method = POST,
             produces = APPLICATION_JSON_VALUE)
     @ResponseBody
-    public String deactivateStandardActionGroup(@RequestBody(required = true) String body) {
+    public CompletableFuture<ResponseEntity<String>> deactivateStandardActionGroup(@RequestBody(required = true) String body) {
         logger.info("index: " + body);
-        simpitHost.deactivateStandardActionGroup(MessageType.ActionGroupIndex.valueOf(body.trim()));
-        return "OK";
+        final MessageType.ActionGroupIndex index = MessageType.ActionGroupIndex.valueOf(body.trim());
+        return written("deactivate " + index, simpitHost.deactivateStandardActionGroup(index));
     }
 
     @RequestMapping(value = "actiongroup/standard/toggle",
             method = POST,
             produces = APPLICATION_JSON_VALUE)
     @ResponseBody
-    public String toggleStandardActionGroup(@RequestBody(required = true) String body) {
+    public CompletableFuture<ResponseEntity<String>> toggleStandardActionGroup(@RequestBody(required = true) String body) {
         logger.info("index: " + body);
-        simpitHost.toggleStandardActionGroup(MessageType.ActionGroupIndex.valueOf(body.trim()));
-        return "OK";
+        final MessageType.ActionGroupIndex index = MessageType.ActionGroupIndex.valueOf(body.trim());
+        return written("toggle " + index, simpitHost.toggleStandardActionGroup(index));
     }
 
     @RequestMapping(value = "actiongroup/custom/activate",
             method = POST,
             produces = APPLICATION_JSON_VALUE)
     @ResponseBody
-    public String activateCustomActionGroup(@RequestBody(required = true) String body) {
+    public CompletableFuture<ResponseEntity<String>> activateCustomActionGroup(@RequestBody(required = true) String body) {
         logger.info("index: " + body);
-        simpitHost.activateCustomActionGroup(Integer.valueOf(body));
-        return "OK";
+        final int index = Integer.valueOf(body);
+        return written("activate custom action group " + index, simpitHost.activateCustomActionGroup(index));
     }
 
     @RequestMapping(value = "actiongroup/custom/deactivate",
             method = POST,
             produces = APPLICATION_JSON_VALUE)
     @ResponseBody
-    public String deactivateCustomActionGroup(@RequestBody(required = true) String body) {
+    public CompletableFuture<ResponseEntity<String>> deactivateCustomActionGroup(@RequestBody(required = true) String body) {
         logger.info("index: " + body);
-        simpitHost.deactivateCustomActionGroup(Integer.valueOf(body));
-        return "OK";
+        final int index = Integer.valueOf(body);
+        return written("deactivate custom action group " + index, simpitHost.deactivateCustomActionGroup(index));
     }
 
     @RequestMapping(value = "actiongroup/custom/toggle",
             method = POST,
             produces = APPLICATION_JSON_VALUE)
     @ResponseBody
-    public String toggleCustomActionGroup(@RequestBody(required = true) String body) {
+    public CompletableFuture<ResponseEntity<String>> toggleCustomActionGroup(@RequestBody(required = true) String body) {
         logger.info("index: " + body);
-        simpitHost.toggleCustomActionGroup(Integer.valueOf(body));
-        return "OK";
+        final int index = Integer.valueOf(body);
+        return written("toggle custom action group " + index, simpitHost.toggleCustomActionGroup(index));
+    }
+
+    /**
+     * Answer once a command has been written: 200, 503 if its lane was full, or 500 if the write fell short.
+     */
+    private static CompletableFuture<ResponseEntity<String>> written(final String command,
+                                                                     final CompletableFuture<Boolean> result) {
+        return result.handle((written, e) -> {
+            final Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof RejectedExecutionException) {
+                logger.warn(command + " rejected: " + cause.getMessage());
+                return new ResponseEntity<>(cause.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+            }
+            if (cause != null) {
+                logger.error(command + " failed", cause);
+                return new ResponseEntity<>(String.valueOf(cause.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
+            }
+            if (!written) {
+                logger.warn(command + " fell short of a whole frame.");
+                return new ResponseEntity<>("Short write.", HttpStatus.INTERNAL_SERVER_ERROR);
+            }
+            return ResponseEntity.ok("OK");
+        });
+    }
+
+    /**
+     * An unknown channel, field, tier, axis or action group, or a malformed number, is the client's mistake: answer
+     * 400 with the reason rather than 500.
+     */
+    @ExceptionHandler(IllegalArgumentException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ResponseBody
+    public String badRequest(IllegalArgumentException e) {
+        logger.info("Bad request: " + e.getMessage());
+        return e.getMessage();
     }
 }
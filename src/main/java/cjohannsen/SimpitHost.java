@@ -4,16 +4,18 @@ import cjohannsen.protocol.*;
 import cjohannsen.protocol.Handler;
 import cjohannsen.protocol.MessageType;
 import cjohannsen.protocol.Packet;
-import com.fazecast.jSerialComm.SerialPort;
+import cjohannsen.metrics.LatencyTracker;
+import cjohannsen.metrics.PipelineMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 @Component
 public class SimpitHost {
@@ -69,15 +71,23 @@ public class SimpitHost {
     public static final int PACKET_TIMEOUT_MILLIS = 10000;
 
 
-    private final SerialPort serialPort;
-    private final Map<MessageType.Datagram, HandlerAndProvider> handlers;
+    private final CommandWriter commandWriter;
+    /** Handlers indexed by the raw type byte, so dispatch is a single array load. */
+    private final AtomicReferenceArray<HandlerAndProvider> handlers;
     private final PacketSource packetSource;
+    private final PipelineMetrics pipelineMetrics;
+    private final LatencyTracker latencyTracker;
+    /** {@link System#nanoTime()} each packet type was last received, indexed by the raw type byte. */
+    private final AtomicLongArray lastReceivedNanos = new AtomicLongArray(256);
 
     @Autowired
-    public SimpitHost(final SerialPort serialPort, final PacketSource packetSource) {
-        this.serialPort = serialPort;
-        this.handlers = new ConcurrentHashMap<>();
+    public SimpitHost(final CommandWriter commandWriter, final PacketSource packetSource, final PipelineMetrics pipelineMetrics,
+                      final LatencyTracker latencyTracker) {
+        this.commandWriter = commandWriter;
+        this.handlers = new AtomicReferenceArray<>(256);
         this.packetSource = packetSource;
+        this.pipelineMetrics = pipelineMetrics;
+        this.latencyTracker = latencyTracker;
     }
 
     public boolean handshake() {
@@ -111,23 +121,27 @@ public class SimpitHost {
             logger.info("SimpitHost initiating handshake...");
             byte[] message = Packet.encodePacket(MessageType.Command.SYNC_MESSAGE, SYN);
             logger.trace(Util.hexString(message));
-            serialPort.writeBytes(message, message.length);
+            write(CommandWriter.Lane.BULK, message);
             logger.info("Waiting for ACK...");
 
             while (System.currentTimeMillis() - startTimeMillis < HANDSHAKE_RETRY_FREQUENCY_MILLIS ) {
                 Optional<Packet> ackMessage = packetSource.next(Optional.of(new Integer(PACKET_TIMEOUT_MILLIS)));
                 if (ackMessage.isPresent() && ackMessage.get().getDatagram() == MessageType.Datagram.SYNC_MESSAGE) {
-                    byte ackByte = ackMessage.get().getPayload()[0];
+                    Packet ack = ackMessage.get();
+                    byte ackByte = ack.getBuffer()[ack.getPayloadOffset()];
+                    ack.release();
                     logger.debug("ack byte: " + ackByte);
                     if (ackByte == HANDSHAKE_ACK) {
                         logger.info("ACK received, sending SYNACK...");
                         byte[] synack = Packet.encodePacket(MessageType.Command.SYNC_MESSAGE, SYNACK);
                         logger.trace(Util.hexString(synack));
-                        serialPort.writeBytes(synack, 1);
+                        // The whole frame: this used to write only the first header byte of the SYNACK.
+                        write(CommandWriter.Lane.BULK, synack);
                     }
                     setupDataPoller();
                     return true;
                 }
+                ackMessage.ifPresent(Packet::release);
             }
             startTimeMillis = System.currentTimeMillis();
         }
@@ -135,100 +149,203 @@ public class SimpitHost {
         return false;
     }
 
-    public boolean sendEchoRequest(String echoMessage) {
+    public CompletableFuture<Boolean> sendEchoRequest(String echoMessage) {
         byte[] buffer = Packet.encodePacket(MessageType.Command.ECHO_REQ_MESSAGE, echoMessage.getBytes());
         logger.debug("Sending echo request: " + Util.hexString(buffer));
-        int bytesWritten = serialPort.writeBytes(buffer, buffer.length);
-        logger.trace("Wrote " + bytesWritten + " bytes successfully.");
-        return bytesWritten == buffer.length;
+        return write(CommandWriter.Lane.BULK, buffer);
     }
 
-    public boolean enableChannel(MessageType.Datagram type) {
+    /**
+     * Send an echo request with a binary payload, which KerbalSimpit returns unchanged in an ECHO_RESP_MESSAGE.
+     * @param payload at most 32 bytes.
+     */
+    public CompletableFuture<Boolean> sendEchoRequest(final byte[] payload) {
+        return write(CommandWriter.Lane.BULK, Packet.encodePacket(MessageType.Command.ECHO_REQ_MESSAGE, payload));
+    }
+
+    /**
+     * When a packet type was last received.
+     * @param type the raw type byte.
+     * @return the {@link System#nanoTime()} the last packet of that type was read, or 0 if none has been.
+     */
+    public long getLastReceivedNanos(final int type) {
+        return lastReceivedNanos.get(type);
+    }
+
+    public CompletableFuture<Boolean> enableChannel(MessageType.Datagram type) {
         byte[] buffer = Packet.encodePacket(MessageType.Command.REGISTER_MESSAGE, (byte) type.getValue());
         logger.debug("Sending channel register request: " + Util.hexString(buffer));
-        int bytesWritten = serialPort.writeBytes(buffer, buffer.length);
-        logger.trace("Wrote " + bytesWritten + " bytes successfully.");
-        return bytesWritten == buffer.length;
+        return write(CommandWriter.Lane.BULK, buffer);
     }
 
-    public boolean disableChannel(MessageType.Datagram type) {
+    public CompletableFuture<Boolean> disableChannel(MessageType.Datagram type) {
         byte[] buffer = Packet.encodePacket(MessageType.Command.DEREGISTER_MESSAGE, (byte) type.getValue());
-        logger.debug("Sending channel register request: " + Util.hexString(buffer));
-        int bytesWritten = serialPort.writeBytes(buffer, buffer.length);
-        logger.trace("Wrote " + bytesWritten + " bytes successfully.");
-        return bytesWritten == buffer.length;
+        logger.debug("Sending channel deregister request: " + Util.hexString(buffer));
+        return write(CommandWriter.Lane.BULK, buffer);
     }
 
 
+    /**
+     * @param type the channel to handle; not {@link MessageType.Datagram#UNDEFINED}, which no packet arrives on.
+     * @param provider decoder for the channel's payloads.
+     * @param handler handler for the channel's packets.
+     */
     public void registerHandler(MessageType.Datagram type, Payload.Provider provider, Handler handler) {
+        if (type == MessageType.Datagram.UNDEFINED) {
+            throw new IllegalArgumentException("Cannot register a handler for UNDEFINED; it stands for unknown datagram types.");
+        }
         logger.info("Registering handler for " + type);
-        handlers.put(type, new HandlerAndProvider(handler, provider));
+        handlers.set(type.getValue(), new HandlerAndProvider(handler, provider));
     }
 
-    public void activateStandardActionGroup(MessageType.ActionGroupIndex index) {
+    public CompletableFuture<Boolean> activateStandardActionGroup(MessageType.ActionGroupIndex index) {
+        return activateStandardActionGroup(index, System.nanoTime());
+    }
+
+    /**
+     * @param index the action group.
+     * @param originNanos {@link System#nanoTime()} when the command was requested, for latency tracing.
+     * @return a future completing with true once the command is written.
+     */
+    public CompletableFuture<Boolean> activateStandardActionGroup(MessageType.ActionGroupIndex index, long originNanos) {
         logger.info("Activating standard action group " + index);
         byte[] buffer = Packet.encodePacket(MessageType.Command.AGACTIVATE_MESSAGE, (byte) index.getValue());
+        final long encodedNanos = System.nanoTime();
         logger.debug("Sending activate standard action group request: " + Util.hexString(buffer));
-        int bytesWritten = serialPort.writeBytes(buffer, buffer.length);
-        logger.trace("Wrote " + bytesWritten + " bytes successfully.");
+        return write(buffer, originNanos, encodedNanos);
+    }
+
+    public CompletableFuture<Boolean> deactivateStandardActionGroup(MessageType.ActionGroupIndex index) {
+        return deactivateStandardActionGroup(index, System.nanoTime());
     }
 
-    public void deactivateStandardActionGroup(MessageType.ActionGroupIndex index) {
+    /**
+     * @param index the action group.
+     * @param originNanos {@link System#nanoTime()} when the command was requested, for latency tracing.
+     * @return a future completing with true once the command is written.
+     */
+    public CompletableFuture<Boolean> deactivateStandardActionGroup(MessageType.ActionGroupIndex index, long originNanos) {
         logger.info("Deactivating standard action group " + index);
         byte[] buffer = Packet.encodePacket(MessageType.Command.AGDEACTIVATE_MESSAGE, (byte) index.getValue());
+        final long encodedNanos = System.nanoTime();
         logger.debug("Sending deactivate standard action group request: " + Util.hexString(buffer));
-        int bytesWritten = serialPort.writeBytes(buffer, buffer.length);
-        logger.trace("Wrote " + bytesWritten + " bytes successfully.");
+        return write(buffer, originNanos, encodedNanos);
     }
 
-    public void toggleStandardActionGroup(MessageType.ActionGroupIndex index) {
+    public CompletableFuture<Boolean> toggleStandardActionGroup(MessageType.ActionGroupIndex index) {
+        return toggleStandardActionGroup(index, System.nanoTime());
+    }
+
+    /**
+     * @param index the action group.
+     * @param originNanos {@link System#nanoTime()} when the command was requested, for latency tracing.
+     * @return a future completing with true once the command is written.
+     */
+    public CompletableFuture<Boolean> toggleStandardActionGroup(MessageType.ActionGroupIndex index, long originNanos) {
         logger.info("Toggling standard action group " + index);
         byte[] buffer = Packet.encodePacket(MessageType.Command.AGTOGGLE_MESSAGE, (byte) index.getValue());
+        final long encodedNanos = System.nanoTime();
         logger.debug("Sending toggle standard action group request: " + Util.hexString(buffer));
-        int bytesWritten = serialPort.writeBytes(buffer, buffer.length);
-        logger.trace("Wrote " + bytesWritten + " bytes successfully.");
+        return write(buffer, originNanos, encodedNanos);
+    }
+
+    public CompletableFuture<Boolean> activateCustomActionGroup(int index) {
+        return activateCustomActionGroup(index, System.nanoTime());
     }
 
-    public void activateCustomActionGroup(int index) {
+    /**
+     * @param index the action group.
+     * @param originNanos {@link System#nanoTime()} when the command was requested, for latency tracing.
+     * @return a future completing with true once the command is written.
+     */
+    public CompletableFuture<Boolean> activateCustomActionGroup(int index, long originNanos) {
         logger.info("Activating custom action group " + index);
         byte[] buffer = Packet.encodePacket(MessageType.Command.CAGACTIVATE_MESSAGE, (byte) index);
+        final long encodedNanos = System.nanoTime();
         logger.debug("Sending activate custom action group request: " + Util.hexString(buffer));
-        int bytesWritten = serialPort.writeBytes(buffer, buffer.length);
-        logger.trace("Wrote " + bytesWritten + " bytes successfully.");
+        return write(buffer, originNanos, encodedNanos);
+    }
+
+    public CompletableFuture<Boolean> deactivateCustomActionGroup(int index) {
+        return deactivateCustomActionGroup(index, System.nanoTime());
     }
 
-    public void deactivateCustomActionGroup(int index) {
+    /**
+     * @param index the action group.
+     * @param originNanos {@link System#nanoTime()} when the command was requested, for latency tracing.
+     * @return a future completing with true once the command is written.
+     */
+    public CompletableFuture<Boolean> deactivateCustomActionGroup(int index, long originNanos) {
         logger.info("Deactivating custom action group " + index);
         byte[] buffer = Packet.encodePacket(MessageType.Command.CAGDEACTIVATE_MESSAGE, (byte) index);
+        final long encodedNanos = System.nanoTime();
         logger.debug("Sending deactivate custom action group request: " + Util.hexString(buffer));
-        int bytesWritten = serialPort.writeBytes(buffer, buffer.length);
-        logger.trace("Wrote " + bytesWritten + " bytes successfully.");
+        return write(buffer, originNanos, encodedNanos);
+    }
 
+    public CompletableFuture<Boolean> toggleCustomActionGroup(int index) {
+        return toggleCustomActionGroup(index, System.nanoTime());
     }
 
-    public void toggleCustomActionGroup(int index) {
+    /**
+     * @param index the action group.
+     * @param originNanos {@link System#nanoTime()} when the command was requested, for latency tracing.
+     * @return a future completing with true once the command is written.
+     */
+    public CompletableFuture<Boolean> toggleCustomActionGroup(int index, long originNanos) {
         logger.info("Toggling custom action group " + index);
         byte[] buffer = Packet.encodePacket(MessageType.Command.CAGTOGGLE_MESSAGE, (byte) index);
+        final long encodedNanos = System.nanoTime();
         logger.debug("Sending toggle custom action group request: " + Util.hexString(buffer));
-        int bytesWritten = serialPort.writeBytes(buffer, buffer.length);
-        logger.trace("Wrote " + bytesWritten + " bytes successfully.");
+        return write(buffer, originNanos, encodedNanos);
     }
 
 
 
+    private CompletableFuture<Boolean> write(final CommandWriter.Lane lane, final byte[] frame) {
+        final int type = frame[Packet.MESSAGE_TYPE_INDEX] & 0xFF;
+        return commandWriter.submit(lane, frame).thenApply(written -> {
+            pipelineMetrics.recordWrite(type, written ? frame.length : 0);
+            return written;
+        });
+    }
+
+    /**
+     * Write an action group command on the priority lane, tracing its latency.  The completion runs on the writer
+     * thread as soon as the write returns, so it stamps the write return.
+     */
+    private CompletableFuture<Boolean> write(final byte[] frame, final long originNanos, final long encodedNanos) {
+        final int type = frame[Packet.MESSAGE_TYPE_INDEX] & 0xFF;
+        return commandWriter.submit(CommandWriter.Lane.PRIORITY, frame).thenApply(written -> {
+            latencyTracker.recordCommand(originNanos, encodedNanos, System.nanoTime());
+            pipelineMetrics.recordWrite(type, written ? frame.length : 0);
+            return written;
+        });
+    }
+
     private void setupDataPoller() {
         logger.info("Initializing KerbalSimpit. Starting serial port data poller.");
         Executors.newSingleThreadExecutor().execute(() -> {
             while(true) {
                 Packet packet = packetSource.next();
-                logger.debug("Incoming packet: " + packet.getDatagram());
-                HandlerAndProvider handlerAndProvider = handlers.get(packet.getDatagram());
-                if (handlerAndProvider != null) {
-                    logger.debug("Found a handler");
-                    handlerAndProvider.getHandler().handle(packet.getDatagram(), packet.getPayload(), handlerAndProvider.getProvider());
-                }
-                else {
-                    logger.debug("No handler found for type " + packet.getDatagram());
+                logger.debug("Incoming packet: {}", packet.getDatagram());
+                HandlerAndProvider handlerAndProvider = handlers.get(packet.getType());
+                lastReceivedNanos.lazySet(packet.getType(), packet.getFrameNanos() != 0 ? packet.getFrameNanos() : System.nanoTime());
+                try {
+                    if (handlerAndProvider != null) {
+                        logger.debug("Found a handler");
+                        final long start = System.nanoTime();
+                        packet.setDispatchNanos(start);
+                        handlerAndProvider.getHandler().handle(packet, handlerAndProvider.getProvider());
+                        final long done = System.nanoTime();
+                        pipelineMetrics.recordHandler(packet.getType(), done - start);
+                        latencyTracker.recordTelemetry(packet, start, done);
+                    }
+                    else {
+                        logger.debug("No handler found for type {}", packet.getDatagram());
+                    }
+                } finally {
+                    packet.release();
                 }
             }
         });
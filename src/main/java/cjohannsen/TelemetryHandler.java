@@ -0,0 +1,73 @@
+package cjohannsen;
+
+import cjohannsen.broadcast.TelemetryBroadcaster;
+import cjohannsen.metrics.StartupReport;
+import cjohannsen.protocol.Handler;
+import cjohannsen.protocol.MessageType;
+import cjohannsen.protocol.Packet;
+import cjohannsen.protocol.Payload;
+import cjohannsen.telemetry.TelemetryFilter;
+import cjohannsen.telemetry.TelemetryHistory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+
+/**
+ * Handler for the telemetry channels.  Reads each packet in place and records it in the {@link TelemetryHistory}, so
+ * a steady channel still fills its buckets and their means are weighted by time.  Then drops it if the
+ * {@link TelemetryFilter} finds nothing new in it, and otherwise stores it in the {@link ApplicationState} telemetry
+ * store and queues it for the {@link TelemetryBroadcaster}.  Payloads are only decoded into {@link Payload} objects
+ * when the change is going to be logged.
+ */
+@Component
+public class TelemetryHandler implements Handler {
+    private static final Logger logger = LoggerFactory.getLogger(TelemetryHandler.class);
+
+    private final ApplicationState applicationState;
+    private final TelemetryFilter telemetryFilter;
+    private final TelemetryHistory telemetryHistory;
+    private final TelemetryBroadcaster telemetryBroadcaster;
+    private final StartupReport startupReport;
+
+    @Autowired
+    public TelemetryHandler(final ApplicationState applicationState, final TelemetryFilter telemetryFilter,
+                            final TelemetryHistory telemetryHistory, final TelemetryBroadcaster telemetryBroadcaster,
+                            final StartupReport startupReport) {
+        this.applicationState = applicationState;
+        this.telemetryFilter = telemetryFilter;
+        this.telemetryHistory = telemetryHistory;
+        this.telemetryBroadcaster = telemetryBroadcaster;
+        this.startupReport = startupReport;
+    }
+
+    @Override
+    public void handle(MessageType.Datagram type, byte[] message, Payload.Provider provider) {
+        update(type, message, 0, message.length, provider, 0, System.currentTimeMillis());
+    }
+
+    @Override
+    public void handle(Packet packet, Payload.Provider provider) {
+        update(packet.getDatagram(), packet.getBuffer(), packet.getPayloadOffset(), packet.getPayloadLength(), provider,
+                packet.getFirstByteNanos(), System.currentTimeMillis());
+    }
+
+    /**
+     * @param timeMillis arrival time, in epoch milliseconds.
+     */
+    void update(final MessageType.Datagram type, final byte[] bytes, final int offset, final int length,
+                final Payload.Provider provider, final long firstByteNanos, final long timeMillis) {
+        telemetryHistory.record(type, bytes, offset, length, timeMillis);
+        if (!telemetryFilter.accept(type, bytes, offset, length)) {
+            return;
+        }
+        applicationState.getTelemetryStore().update(type, bytes, offset, length);
+        telemetryBroadcaster.offer(type, bytes, offset, length);
+        if (logger.isInfoEnabled()) {
+            logger.info(type + " - " + provider.provide(Arrays.copyOfRange(bytes, offset, offset + length)).toString());
+        }
+        startupReport.telemetry(firstByteNanos);
+    }
+}
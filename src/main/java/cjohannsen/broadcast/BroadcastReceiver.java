@@ -0,0 +1,185 @@
+package cjohannsen.broadcast;
+
+import cjohannsen.protocol.MessageType;
+import cjohannsen.protocol.Payload;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Receives the datagrams sent by {@link TelemetryBroadcaster}, for display clients and for testing.
+ *
+ * Datagrams older than the last one received are dropped, so a late datagram never overwrites newer values; gaps
+ * in the sequence are counted as lost.  A datagram from a new session, i.e. a restarted broadcaster, starts the
+ * count again.  Run {@link #main(String[])} to print the updates arriving at an address.
+ */
+public class BroadcastReceiver implements Closeable {
+
+    /**
+     * Receives the updates of a datagram, in the order they were sent.  The payload array is reused between updates.
+     */
+    @FunctionalInterface
+    public interface UpdateListener {
+        void onUpdate(long sequence, int type, byte[] payload, int offset, int length);
+    }
+
+    private final DatagramChannel channel;
+    private final ByteBuffer datagram = ByteBuffer.allocate(65536).order(ByteOrder.LITTLE_ENDIAN);
+    private final byte[] payload = new byte[TelemetryBroadcaster.MAX_PAYLOAD_SIZE];
+
+    private boolean started;
+    private int session;
+    private long lastSequence;
+    private long receivedCount;
+    private long lostCount;
+    private long lateCount;
+    private long invalidCount;
+
+    /**
+     * Listen on an address.
+     * @param address a multicast group to join on every interface that supports it, or a local address to bind.
+     * @throws IOException if the socket cannot be opened.
+     */
+    public BroadcastReceiver(final InetSocketAddress address) throws IOException {
+        final InetAddress host = address.getAddress();
+        if (host != null && host.isMulticastAddress()) {
+            channel = DatagramChannel.open(StandardProtocolFamily.INET);
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.bind(new InetSocketAddress(address.getPort()));
+            for (NetworkInterface networkInterface : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+                if (networkInterface.isUp() && networkInterface.supportsMulticast()) {
+                    channel.join(host, networkInterface);
+                }
+            }
+        } else {
+            channel = DatagramChannel.open();
+            channel.bind(address);
+        }
+    }
+
+    /**
+     * @return the bound address, e.g. to find the port chosen for port 0.
+     * @throws IOException if the socket is closed.
+     */
+    public InetSocketAddress getLocalAddress() throws IOException {
+        return (InetSocketAddress) channel.getLocalAddress();
+    }
+
+    /**
+     * Block until a datagram arrives and hand its updates to a listener.
+     * @param listener receiver of the updates.
+     * @return the number of updates delivered; 0 if the datagram was late or invalid.
+     * @throws IOException if the socket fails.
+     */
+    public int receive(final UpdateListener listener) throws IOException {
+        datagram.clear();
+        channel.receive(datagram);
+        datagram.flip();
+        return decode(datagram, listener);
+    }
+
+    /**
+     * Decode one datagram.
+     * @param datagram the datagram, positioned at its start and little endian.
+     * @param listener receiver of the updates.
+     * @return the number of updates delivered; 0 if the datagram was late or invalid.
+     */
+    int decode(final ByteBuffer datagram, final UpdateListener listener) {
+        if (datagram.remaining() < TelemetryBroadcaster.HEADER_SIZE || datagram.getInt() != TelemetryBroadcaster.MAGIC) {
+            invalidCount++;
+            return 0;
+        }
+        final int datagramSession = datagram.getInt();
+        final long sequence = datagram.getLong();
+        final int count = datagram.getShort() & 0xFFFF;
+        if (!started || datagramSession != session) {
+            started = true;
+            session = datagramSession;
+        } else if (sequence <= lastSequence) {
+            lateCount++;
+            return 0;
+        } else {
+            lostCount += sequence - lastSequence - 1;
+        }
+        lastSequence = sequence;
+        receivedCount++;
+        for (int i = 0; i < count; i++) {
+            if (datagram.remaining() < TelemetryBroadcaster.RECORD_HEADER_SIZE) {
+                invalidCount++;
+                return i;
+            }
+            final int type = datagram.get() & 0xFF;
+            final int length = datagram.get() & 0xFF;
+            if (length > payload.length || datagram.remaining() < length) {
+                invalidCount++;
+                return i;
+            }
+            datagram.get(payload, 0, length);
+            listener.onUpdate(sequence, type, payload, 0, length);
+        }
+        return count;
+    }
+
+    public long getReceivedCount() {
+        return receivedCount;
+    }
+
+    /**
+     * Datagrams missing from the sequence.  Only datagrams sent between two received ones can be counted.
+     * @return number of lost datagrams.
+     */
+    public long getLostCount() {
+        return lostCount;
+    }
+
+    /**
+     * Datagrams dropped for arriving after a newer one.
+     * @return number of late datagrams.
+     */
+    public long getLateCount() {
+        return lateCount;
+    }
+
+    public long getInvalidCount() {
+        return invalidCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Print every update arriving at an address, decoded.
+     * @param args the address as {@code host:port}, e.g. {@code 239.255.83.80:7780} or {@code 0.0.0.0:7780}.
+     * @throws IOException if the socket fails.
+     */
+    public static void main(final String[] args) throws IOException {
+        final List<InetSocketAddress> addresses = TelemetryBroadcaster.parseTargets(args.length > 0 ? args[0] : TelemetryBroadcaster.DEFAULT_TARGETS);
+        try (BroadcastReceiver receiver = new BroadcastReceiver(addresses.get(0))) {
+            System.out.println("Listening on " + addresses.get(0));
+            while (true) {
+                receiver.receive((sequence, type, payload, offset, length) -> {
+                    final MessageType.Datagram datagram = MessageType.Datagram.from(type);
+                    final Payload.Provider provider = Payload.providerFor(datagram);
+                    final byte[] bytes = Arrays.copyOfRange(payload, offset, offset + length);
+                    System.out.println(sequence + " " + datagram + " - " + (provider != null ? provider.provide(bytes) : Arrays.toString(bytes)));
+                });
+                if (receiver.getLostCount() > 0 && receiver.getReceivedCount() % 1000 == 0) {
+                    System.out.println("Lost " + receiver.getLostCount() + " of " + (receiver.getReceivedCount() + receiver.getLostCount()) + " datagrams");
+                }
+            }
+        }
+    }
+}
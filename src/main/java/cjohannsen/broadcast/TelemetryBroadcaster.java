@@ -0,0 +1,314 @@
+package cjohannsen.broadcast;
+
+import cjohannsen.protocol.MessageType;
+import cjohannsen.protocol.Packet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fans accepted telemetry updates out to cockpit displays as UDP datagrams, to a multicast group or a list of
+ * unicast targets, so any number of displays costs the Pi one send per batch instead of one HTTP request each.
+ *
+ * The dispatcher thread only copies each update into a preallocated single-producer, single-consumer ring; a
+ * sender thread packs whatever is queued into datagrams of at most {@code mtu} bytes and sends each one to every
+ * target.  A datagram is sent as soon as it is full or the ring is empty, so batching adds no delay when updates
+ * are sparse.  A full ring drops the update rather than stall dispatch.  The sender thread parks while the ring is
+ * empty and the dispatcher thread unparks it after each update, so a silent link wakes it only once a second.
+ *
+ * Datagram layout, little-endian: a {@link #HEADER_SIZE} byte header ({@link #MAGIC}, a random session id chosen
+ * at start, a sequence number counting up from 0 per datagram, and the number of updates) followed by records of
+ * {@code [byte type][byte length][payload]}.  Receivers detect loss from gaps in the sequence, and a broadcaster
+ * restart from a new session id.  See {@link BroadcastReceiver}.
+ */
+@Component
+public class TelemetryBroadcaster {
+    private static final Logger logger = LoggerFactory.getLogger(TelemetryBroadcaster.class);
+
+    public static final int MAGIC = 0x54425053; // "SPBT"
+    public static final int HEADER_SIZE = 18;
+    public static final int RECORD_HEADER_SIZE = 2;
+    public static final int MAX_PAYLOAD_SIZE = Packet.PACKET_SIZE - Packet.MESSAGE_HEADER_SIZE;
+
+    public static final String DEFAULT_TARGETS = "239.255.83.80:7780";
+    /** Largest UDP payload that fits a 1500 byte Ethernet MTU without fragmenting. */
+    public static final int DEFAULT_MTU = 1472;
+    public static final int DEFAULT_RING_CAPACITY = 1024;
+    public static final int DEFAULT_TTL = 1;
+    public static final long IDLE_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final boolean enabled;
+    private final List<InetSocketAddress> targets;
+    private final int mtu;
+    private final int ttl;
+
+    private final byte[] payloads;
+    private final byte[] types;
+    private final int[] lengths;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    private final AtomicLong updatesSent = new AtomicLong();
+    private final AtomicLong datagramsSent = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong sendErrorCount = new AtomicLong();
+
+    private volatile boolean running;
+    private volatile Thread sendThread;
+    private ExecutorService executor;
+    private DatagramChannel channel;
+    private ByteBuffer datagram;
+    private int session;
+    private long sequence;
+    private int batched;
+
+    /** A broadcaster that sends nothing. */
+    public TelemetryBroadcaster() {
+        this(false, "", DEFAULT_MTU, DEFAULT_RING_CAPACITY, DEFAULT_TTL);
+    }
+
+    /**
+     * @param enabled whether to broadcast at all.
+     * @param targets comma separated {@code host:port} targets, each a multicast group or a unicast address.
+     * @param mtu largest datagram to send, in bytes.
+     * @param ringCapacity updates buffered between the dispatcher and the sender thread; rounded up to a power of two.
+     * @param ttl multicast time to live; 1 keeps datagrams on the local network.
+     */
+    @Autowired
+    public TelemetryBroadcaster(@Value("${simpit.broadcast.enabled:false}") boolean enabled,
+                                @Value("${simpit.broadcast.targets:" + DEFAULT_TARGETS + "}") String targets,
+                                @Value("${simpit.broadcast.mtu:" + DEFAULT_MTU + "}") int mtu,
+                                @Value("${simpit.broadcast.ring-capacity:" + DEFAULT_RING_CAPACITY + "}") int ringCapacity,
+                                @Value("${simpit.broadcast.ttl:" + DEFAULT_TTL + "}") int ttl) {
+        if (mtu < HEADER_SIZE + RECORD_HEADER_SIZE + MAX_PAYLOAD_SIZE) {
+            throw new IllegalArgumentException("MTU must be at least " + (HEADER_SIZE + RECORD_HEADER_SIZE + MAX_PAYLOAD_SIZE) + ": " + mtu);
+        }
+        if (ringCapacity < 1) {
+            throw new IllegalArgumentException("Ring capacity must be positive: " + ringCapacity);
+        }
+        this.enabled = enabled;
+        this.targets = enabled ? parseTargets(targets) : Collections.emptyList();
+        if (enabled && this.targets.isEmpty()) {
+            throw new IllegalArgumentException("Broadcasting needs at least one target");
+        }
+        this.mtu = mtu;
+        this.ttl = ttl;
+        final int size = Integer.highestOneBit(ringCapacity) == ringCapacity ? ringCapacity : Integer.highestOneBit(ringCapacity) << 1;
+        this.payloads = new byte[enabled ? size * MAX_PAYLOAD_SIZE : 0];
+        this.types = new byte[enabled ? size : 0];
+        this.lengths = new int[enabled ? size : 0];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Parse a list of targets.
+     * @param targets comma separated {@code host:port} entries, e.g. {@code 239.255.83.80:7780,192.168.1.20:7780}.
+     * @return the resolved addresses.
+     */
+    public static List<InetSocketAddress> parseTargets(final String targets) {
+        final List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String entry : targets.split(",")) {
+            final String target = entry.trim();
+            if (target.isEmpty()) {
+                continue;
+            }
+            final int colon = target.lastIndexOf(':');
+            if (colon < 1) {
+                throw new IllegalArgumentException("Invalid target '" + target + "' in '" + targets + "', expected host:port.");
+            }
+            try {
+                addresses.add(new InetSocketAddress(target.substring(0, colon), Integer.parseInt(target.substring(colon + 1))));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid target '" + target + "' in '" + targets + "', expected host:port.");
+            }
+        }
+        return addresses;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public List<InetSocketAddress> getTargets() {
+        return targets;
+    }
+
+    /**
+     * Open the socket and start the sender thread.  Does nothing if broadcasting is disabled or already running.
+     */
+    public synchronized void start() {
+        if (!enabled || running) {
+            return;
+        }
+        try {
+            channel = DatagramChannel.open();
+            channel.setOption(StandardSocketOptions.IP_MULTICAST_TTL, ttl);
+            channel.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+        } catch (IOException e) {
+            logger.error("Telemetry broadcast disabled, cannot open socket: " + e.getMessage());
+            return;
+        }
+        datagram = ByteBuffer.allocateDirect(mtu).order(ByteOrder.LITTLE_ENDIAN);
+        session = new Random().nextInt();
+        sequence = 0;
+        running = true;
+        executor = Executors.newSingleThreadExecutor();
+        executor.execute(this::sendLoop);
+        logger.info("Broadcasting telemetry to {}", targets);
+    }
+
+    /**
+     * Stop the sender thread once it has sent every update already queued, and close the socket.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        final Thread thread = sendThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Queue an accepted update for broadcast.  Called by the dispatcher thread; never blocks and never allocates.
+     * @param type the channel.
+     * @param bytes array holding the payload.
+     * @param offset index of the first payload byte.
+     * @param length payload length.
+     */
+    public void offer(final MessageType.Datagram type, final byte[] bytes, final int offset, final int length) {
+        if (!running) {
+            return;
+        }
+        final long t = tail.get();
+        if (t - head.get() > mask) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+        final int slot = (int) t & mask;
+        final int size = Math.min(length, MAX_PAYLOAD_SIZE);
+        System.arraycopy(bytes, offset, payloads, slot * MAX_PAYLOAD_SIZE, size);
+        types[slot] = (byte) type.getValue();
+        lengths[slot] = size;
+        tail.lazySet(t + 1);
+        final Thread thread = sendThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    public long getUpdatesSent() {
+        return updatesSent.get();
+    }
+
+    public long getDatagramsSent() {
+        return datagramsSent.get();
+    }
+
+    /**
+     * Updates not broadcast because the sender thread fell a full ring behind.
+     * @return number of dropped updates.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Sends that failed, counted per target.
+     * @return number of failed sends.
+     */
+    public long getSendErrorCount() {
+        return sendErrorCount.get();
+    }
+
+    private void sendLoop() {
+        sendThread = Thread.currentThread();
+        try {
+            while (running || head.get() != tail.get()) {
+                if (drain() == 0) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+            }
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close telemetry broadcast socket: " + e.getMessage());
+            }
+            sendThread = null;
+        }
+    }
+
+    private int drain() {
+        final long h = head.get();
+        final long t = tail.get();
+        for (long i = h; i < t; i++) {
+            final int slot = (int) i & mask;
+            if (batched > 0 && datagram.remaining() < RECORD_HEADER_SIZE + lengths[slot]) {
+                flush();
+            }
+            if (batched == 0) {
+                datagram.clear();
+                datagram.putInt(MAGIC);
+                datagram.putInt(session);
+                datagram.putLong(sequence);
+                datagram.putShort((short) 0);
+            }
+            datagram.put(types[slot]);
+            datagram.put((byte) lengths[slot]);
+            datagram.put(payloads, slot * MAX_PAYLOAD_SIZE, lengths[slot]);
+            batched++;
+        }
+        head.lazySet(t);
+        if (batched > 0) {
+            flush();
+        }
+        return (int) (t - h);
+    }
+
+    private void flush() {
+        datagram.putShort(HEADER_SIZE - 2, (short) batched);
+        datagram.flip();
+        for (InetSocketAddress target : targets) {
+            datagram.rewind();
+            try {
+                channel.send(datagram, target);
+            } catch (IOException e) {
+                if (sendErrorCount.incrementAndGet() == 1) {
+                    logger.warn("Telemetry broadcast to " + target + " failed: " + e.getMessage());
+                }
+            }
+        }
+        updatesSent.addAndGet(batched);
+        datagramsSent.incrementAndGet();
+        sequence++;
+        batched = 0;
+    }
+}
@@ -0,0 +1,65 @@
+package cjohannsen.control;
+
+import cjohannsen.protocol.MessageType;
+import cjohannsen.protocol.Payload;
+
+/**
+ * An analog flight control axis, the command that carries it and its bit in that command's mask.
+ */
+public enum Axis {
+    PITCH(MessageType.Command.ROTATION_MESSAGE, Payload.RotationMessage.PITCH, Short.MIN_VALUE),
+    ROLL(MessageType.Command.ROTATION_MESSAGE, Payload.RotationMessage.ROLL, Short.MIN_VALUE),
+    YAW(MessageType.Command.ROTATION_MESSAGE, Payload.RotationMessage.YAW, Short.MIN_VALUE),
+    TRANSLATE_X(MessageType.Command.TRANSLATION_MESSAGE, Payload.TranslationMessage.X, Short.MIN_VALUE),
+    TRANSLATE_Y(MessageType.Command.TRANSLATION_MESSAGE, Payload.TranslationMessage.Y, Short.MIN_VALUE),
+    TRANSLATE_Z(MessageType.Command.TRANSLATION_MESSAGE, Payload.TranslationMessage.Z, Short.MIN_VALUE),
+    WHEEL_STEER(MessageType.Command.WHEEL_MESSAGE, Payload.WheelMessage.STEER, Short.MIN_VALUE),
+    WHEEL_THROTTLE(MessageType.Command.WHEEL_MESSAGE, Payload.WheelMessage.THROTTLE, Short.MIN_VALUE),
+    /** The main throttle; its message has no mask and no negative range. */
+    THROTTLE(MessageType.Command.THROTTLE_MESSAGE, (byte) 0, 0);
+
+    private final MessageType.Command command;
+    private final byte maskBit;
+    private final int minimum;
+
+    Axis(final MessageType.Command command, final byte maskBit, final int minimum) {
+        this.command = command;
+        this.maskBit = maskBit;
+        this.minimum = minimum;
+    }
+
+    public MessageType.Command getCommand() {
+        return command;
+    }
+
+    public byte getMaskBit() {
+        return maskBit;
+    }
+
+    public int getMinimum() {
+        return minimum;
+    }
+
+    public int getMaximum() {
+        return Short.MAX_VALUE;
+    }
+
+    /**
+     * Scale a normalized input to the axis range.  Negative inputs scale to the minimum and positive ones to the
+     * maximum, so both ends of the input reach the ends of the range.
+     * @param normalized -1 to 1, or 0 to 1 for {@link #THROTTLE}; clamped to the range.
+     * @return the raw axis value.
+     */
+    public int scale(final float normalized) {
+        final float clamped = Math.max(minimum == 0 ? 0 : -1, Math.min(1, normalized));
+        return clamped < 0 ? Math.round(clamped * -minimum) : Math.round(clamped * Short.MAX_VALUE);
+    }
+
+    /**
+     * @param value a raw value.
+     * @return the value clamped to the axis range.
+     */
+    public int clamp(final int value) {
+        return Math.max(minimum, Math.min(Short.MAX_VALUE, value));
+    }
+}
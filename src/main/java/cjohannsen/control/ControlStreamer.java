@@ -0,0 +1,217 @@
+package cjohannsen.control;
+
+import cjohannsen.protocol.CommandWriter;
+import cjohannsen.protocol.MessageType;
+import cjohannsen.protocol.Packet;
+import cjohannsen.protocol.Payload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streams analog flight controls to KerbalSimpit at a fixed rate.
+ *
+ * Inputs may be set from any thread as often as they arrive; only the latest value of each {@link Axis} is kept.
+ * On every tick each control message (rotation, translation, wheel, throttle) is sent only if one of its axes moved
+ * by at least the deadband since it was last sent, with the mask naming just the axes that moved.  A move to centre
+ * or to either end of the range is always sent, so a small deadband can never leave an input stuck.  Each tick reads
+ * every axis once and both decides and encodes from that reading, so a value set mid-tick waits for the next one.  A
+ * message is not queued again while its previous frame is still waiting for the {@link CommandWriter}; the next tick
+ * sends the latest value instead.
+ */
+@Component
+public class ControlStreamer {
+    private static final Logger logger = LoggerFactory.getLogger(ControlStreamer.class);
+
+    public static final double DEFAULT_RATE_HZ = 30;
+    /** About 0.4% of full scale. */
+    public static final int DEFAULT_DEADBAND = 128;
+
+    private static final MessageType.Command[] COMMANDS = {
+            MessageType.Command.ROTATION_MESSAGE,
+            MessageType.Command.TRANSLATION_MESSAGE,
+            MessageType.Command.WHEEL_MESSAGE,
+            MessageType.Command.THROTTLE_MESSAGE
+    };
+
+    private final CommandWriter commandWriter;
+    private final double rateHz;
+    private final int deadband;
+
+    private final AtomicIntegerArray latest = new AtomicIntegerArray(Axis.values().length);
+    /** Values read at the start of the current tick; ticker thread only. */
+    private final int[] values = new int[Axis.values().length];
+    /** Values last handed to the writer; ticker thread only. */
+    private final int[] sent = new int[Axis.values().length];
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final CompletableFuture<Boolean>[] pending = new CompletableFuture[COMMANDS.length];
+
+    private final AtomicLong framesSent = new AtomicLong();
+    private final AtomicLong framesSuppressed = new AtomicLong();
+
+    private ScheduledExecutorService executor;
+
+    public ControlStreamer(final CommandWriter commandWriter) {
+        this(commandWriter, DEFAULT_RATE_HZ, DEFAULT_DEADBAND);
+    }
+
+    /**
+     * @param commandWriter writer for the control frames.
+     * @param rateHz ticks per second; 30 to 60 keeps controls smooth without crowding out telemetry at 57600 baud.
+     * @param deadband smallest change in raw axis units worth sending.
+     */
+    @Autowired
+    public ControlStreamer(final CommandWriter commandWriter,
+                           @Value("${simpit.controls.rate:" + DEFAULT_RATE_HZ + "}") final double rateHz,
+                           @Value("${simpit.controls.deadband:" + DEFAULT_DEADBAND + "}") final int deadband) {
+        if (rateHz <= 0) {
+            throw new IllegalArgumentException("Rate must be positive: " + rateHz);
+        }
+        if (deadband < 0) {
+            throw new IllegalArgumentException("Deadband must not be negative: " + deadband);
+        }
+        this.commandWriter = commandWriter;
+        this.rateHz = rateHz;
+        this.deadband = deadband;
+    }
+
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        logger.info("Streaming controls at " + rateHz + " Hz, deadband " + deadband + ".");
+        executor = Executors.newSingleThreadScheduledExecutor();
+        final long periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rateHz);
+        executor.scheduleAtFixedRate(this::tick, periodNanos, periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    /**
+     * @param axis the axis.
+     * @param value raw axis value, clamped to the axis range.
+     */
+    public void set(final Axis axis, final int value) {
+        latest.set(axis.ordinal(), axis.clamp(value));
+    }
+
+    /**
+     * @param axis the axis.
+     * @param normalized -1 to 1, or 0 to 1 for the throttle.
+     */
+    public void set(final Axis axis, final float normalized) {
+        latest.set(axis.ordinal(), axis.scale(normalized));
+    }
+
+    public int get(final Axis axis) {
+        return latest.get(axis.ordinal());
+    }
+
+    /**
+     * Set axes from text, e.g. {@code PITCH=0.5,YAW=-0.25,THROTTLE=1}.
+     * @param values comma separated {@code AXIS=normalized} pairs.
+     */
+    public void set(final String values) {
+        for (String entry : values.split(",")) {
+            final String trimmed = entry.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            final int separator = trimmed.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid control '" + trimmed + "', expected AXIS=value.");
+            }
+            set(Axis.valueOf(trimmed.substring(0, separator).trim()), Float.parseFloat(trimmed.substring(separator + 1).trim()));
+        }
+    }
+
+    public double getRateHz() {
+        return rateHz;
+    }
+
+    public long getFramesSent() {
+        return framesSent.get();
+    }
+
+    /**
+     * Ticks on which a message was skipped because its previous frame was still waiting to be written.
+     * @return number of skipped sends.
+     */
+    public long getFramesSuppressed() {
+        return framesSuppressed.get();
+    }
+
+    /**
+     * Send every control message whose axes moved.  Runs on the ticker thread.
+     */
+    void tick() {
+        for (int i = 0; i < values.length; i++) {
+            values[i] = latest.get(i);
+        }
+        for (int i = 0; i < COMMANDS.length; i++) {
+            final MessageType.Command command = COMMANDS[i];
+            byte mask = 0;
+            for (Axis axis : Axis.values()) {
+                if (axis.getCommand() == command && moved(axis)) {
+                    mask |= axis.getMaskBit();
+                }
+            }
+            if (mask == 0 && !(command == MessageType.Command.THROTTLE_MESSAGE && moved(Axis.THROTTLE))) {
+                continue;
+            }
+            if (pending[i] != null && !pending[i].isDone()) {
+                framesSuppressed.incrementAndGet();
+                continue;
+            }
+            final byte[] payload = encode(command, mask);
+            pending[i] = commandWriter.submit(CommandWriter.Lane.BULK, Packet.encodePacket(command, payload));
+            framesSent.incrementAndGet();
+        }
+    }
+
+    private boolean moved(final Axis axis) {
+        final int value = values[axis.ordinal()];
+        final int last = sent[axis.ordinal()];
+        return value != last && (Math.abs(value - last) >= deadband
+                || value == 0 || value == axis.getMinimum() || value == axis.getMaximum());
+    }
+
+    /**
+     * Encode a command from the values read this tick, marking the masked axes as sent.  Axes outside the mask carry their
+     * last sent value, which the plugin ignores.
+     */
+    private byte[] encode(final MessageType.Command command, final byte mask) {
+        switch (command) {
+            case ROTATION_MESSAGE:
+                return new Payload.RotationMessage(take(Axis.PITCH, mask), take(Axis.ROLL, mask), take(Axis.YAW, mask), mask).toBytes();
+            case TRANSLATION_MESSAGE:
+                return new Payload.TranslationMessage(take(Axis.TRANSLATE_X, mask), take(Axis.TRANSLATE_Y, mask), take(Axis.TRANSLATE_Z, mask), mask).toBytes();
+            case WHEEL_MESSAGE:
+                return new Payload.WheelMessage(take(Axis.WHEEL_STEER, mask), take(Axis.WHEEL_THROTTLE, mask), mask).toBytes();
+            default:
+                sent[Axis.THROTTLE.ordinal()] = values[Axis.THROTTLE.ordinal()];
+                return new Payload.ThrottleMessage(sent[Axis.THROTTLE.ordinal()]).toBytes();
+        }
+    }
+
+    private int take(final Axis axis, final byte mask) {
+        if ((mask & axis.getMaskBit()) != 0) {
+            sent[axis.ordinal()] = values[axis.ordinal()];
+        }
+        return sent[axis.ordinal()];
+    }
+}
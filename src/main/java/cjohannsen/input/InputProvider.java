@@ -0,0 +1,22 @@
+package cjohannsen.input;
+
+/**
+ * Raw access to a row/column switch matrix.  A {@link SwitchMatrixScanner} reads one row at a time and does its own
+ * debouncing, so providers only report what the hardware reads right now.
+ */
+public interface InputProvider {
+
+    int getRowCount();
+
+    /**
+     * @return number of columns; at most 32.
+     */
+    int getColumnCount();
+
+    /**
+     * Select a row and read its columns.
+     * @param row the row, from 0.
+     * @return the closed switches of the row as a bit mask, bit {@code c} for column {@code c}.
+     */
+    int readRow(int row);
+}
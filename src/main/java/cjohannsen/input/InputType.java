@@ -0,0 +1,13 @@
+package cjohannsen.input;
+
+/**
+ * Where switch inputs come from, chosen by {@code simpit.input}.
+ */
+public enum InputType {
+    /** One GPIO pin and Pi4J listener per switch. */
+    DIRECT,
+    /** A scanned row/column matrix on GPIO, see {@link Pi4jMatrixProvider}. */
+    MATRIX,
+    /** An in-memory matrix, for running without GPIO; see {@link MockInputProvider}. */
+    MOCK
+}
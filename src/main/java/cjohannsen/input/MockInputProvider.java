@@ -0,0 +1,67 @@
+package cjohannsen.input;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-memory switch matrix.  Switches are opened and closed from any thread; reads see the change immediately,
+ * with no bounce unless a test or benchmark scripts one.
+ */
+public class MockInputProvider implements InputProvider {
+
+    private final int columns;
+    private final AtomicIntegerArray rows;
+    private final AtomicLong readCount = new AtomicLong();
+
+    public MockInputProvider(final int rows, final int columns) {
+        if (rows < 1 || columns < 1 || columns > 32) {
+            throw new IllegalArgumentException("Matrix must have at least one row and 1 to 32 columns: " + rows + "x" + columns);
+        }
+        this.rows = new AtomicIntegerArray(rows);
+        this.columns = columns;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows.length();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columns;
+    }
+
+    @Override
+    public int readRow(final int row) {
+        readCount.incrementAndGet();
+        return rows.get(row);
+    }
+
+    /**
+     * @param row the switch row.
+     * @param column the switch column.
+     * @param closed true to close the switch, false to open it.
+     */
+    public void set(final int row, final int column, final boolean closed) {
+        final int bit = 1 << column;
+        int current;
+        do {
+            current = rows.get(row);
+        } while (!rows.compareAndSet(row, current, closed ? current | bit : current & ~bit));
+    }
+
+    public void press(final int row, final int column) {
+        set(row, column, true);
+    }
+
+    public void release(final int row, final int column) {
+        set(row, column, false);
+    }
+
+    /**
+     * @return number of row reads made by the scanner.
+     */
+    public long getReadCount() {
+        return readCount.get();
+    }
+}
@@ -0,0 +1,106 @@
+package cjohannsen.input;
+
+import com.pi4j.io.gpio.GpioController;
+import com.pi4j.io.gpio.GpioPinDigitalInput;
+import com.pi4j.io.gpio.GpioPinDigitalOutput;
+import com.pi4j.io.gpio.Pin;
+import com.pi4j.io.gpio.PinPullResistance;
+import com.pi4j.io.gpio.PinState;
+import com.pi4j.io.gpio.RaspiPin;
+
+/**
+ * A switch matrix on GPIO.  Rows are outputs held HIGH and pulled LOW one at a time to select them; columns are
+ * inputs with pull ups, so a closed switch in the selected row reads LOW.  Each switch needs a diode to its row to
+ * stop ghosting when several are closed.  An 8x8 matrix reads 64 switches with 16 pins and no interrupts.
+ */
+public class Pi4jMatrixProvider implements InputProvider {
+
+    /** Time for a column to settle after its row is selected. */
+    public static final long DEFAULT_SETTLE_NANOS = 10_000;
+
+    private final GpioPinDigitalOutput[] rows;
+    private final GpioPinDigitalInput[] columns;
+    private final long settleNanos;
+
+    /**
+     * @param gpioController the controller to provision pins from.
+     * @param rowPins WiringPi addresses of the row pins.
+     * @param columnPins WiringPi addresses of the column pins, at most 32.
+     */
+    public Pi4jMatrixProvider(final GpioController gpioController, final int[] rowPins, final int[] columnPins) {
+        this(gpioController, rowPins, columnPins, DEFAULT_SETTLE_NANOS);
+    }
+
+    public Pi4jMatrixProvider(final GpioController gpioController, final int[] rowPins, final int[] columnPins, final long settleNanos) {
+        if (rowPins.length < 1 || columnPins.length < 1 || columnPins.length > 32) {
+            throw new IllegalArgumentException("Matrix must have at least one row and 1 to 32 columns: " + rowPins.length + "x" + columnPins.length);
+        }
+        this.rows = new GpioPinDigitalOutput[rowPins.length];
+        for (int i = 0; i < rowPins.length; i++) {
+            rows[i] = gpioController.provisionDigitalOutputPin(pin(rowPins[i]), "Matrix row " + i, PinState.HIGH);
+            rows[i].setShutdownOptions(true, PinState.HIGH);
+        }
+        this.columns = new GpioPinDigitalInput[columnPins.length];
+        for (int i = 0; i < columnPins.length; i++) {
+            columns[i] = gpioController.provisionDigitalInputPin(pin(columnPins[i]), "Matrix column " + i, PinPullResistance.PULL_UP);
+        }
+        this.settleNanos = settleNanos;
+    }
+
+    /**
+     * Parse a list of WiringPi pin addresses.
+     * @param pins comma separated addresses, e.g. {@code 21,22,23}.
+     * @return the addresses.
+     */
+    public static int[] parsePins(final String pins) {
+        final String[] entries = pins.split(",");
+        final int[] addresses = new int[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            try {
+                addresses[i] = Integer.parseInt(entries[i].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid pin '" + entries[i].trim() + "' in '" + pins + "', expected WiringPi addresses.");
+            }
+        }
+        return addresses;
+    }
+
+    private static Pin pin(final int address) {
+        final Pin pin = RaspiPin.getPinByAddress(address);
+        if (pin == null) {
+            throw new IllegalArgumentException("No Raspberry Pi GPIO pin at address " + address);
+        }
+        return pin;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows.length;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    @Override
+    public int readRow(final int row) {
+        final GpioPinDigitalOutput selected = rows[row];
+        selected.low();
+        try {
+            final long settled = System.nanoTime() + settleNanos;
+            while (System.nanoTime() - settled < 0) {
+                // Busy wait: a few microseconds is far below the scheduler's sleep resolution.
+            }
+            int closed = 0;
+            for (int column = 0; column < columns.length; column++) {
+                if (columns[column].isLow()) {
+                    closed |= 1 << column;
+                }
+            }
+            return closed;
+        } finally {
+            selected.high();
+        }
+    }
+}
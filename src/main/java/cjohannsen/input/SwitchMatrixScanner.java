@@ -0,0 +1,220 @@
+package cjohannsen.input;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Scans a switch matrix on one timed loop, debounces every switch in software and reports edges.
+ *
+ * A switch changes state once it has read the new state on enough consecutive scans to cover the debounce time; any
+ * read of the old state in between starts the count again.  Edge events carry the {@link System#nanoTime()} of the
+ * first scan that saw the new state, so latency measured from them includes the debounce.  Listeners are called on
+ * the scan thread and must return quickly.
+ */
+public class SwitchMatrixScanner {
+    private static final Logger logger = LoggerFactory.getLogger(SwitchMatrixScanner.class);
+
+    public static final double DEFAULT_SCAN_RATE_HZ = 1000;
+    public static final int DEFAULT_DEBOUNCE_MILLIS = 10;
+
+    public interface SwitchListener {
+        /**
+         * @param row the switch row.
+         * @param column the switch column.
+         * @param closed the new, debounced, state.
+         * @param edgeNanos when the new state was first read.
+         */
+        void onSwitch(int row, int column, boolean closed, long edgeNanos);
+    }
+
+    private final InputProvider provider;
+    private final int rowCount;
+    private final int columnCount;
+    private final long periodNanos;
+    private final int stableScans;
+
+    /** Debounced state per row, and the switches of each row partway through a change; scan thread only. */
+    private final int[] stable;
+    private final int[] changing;
+    private final int[] counts;
+    private final long[] firstSeenNanos;
+    private final int[] published;
+
+    private final List<SwitchListener> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicLong scanCount = new AtomicLong();
+    private final AtomicLong overrunCount = new AtomicLong();
+    private final AtomicLong edgeCount = new AtomicLong();
+    private volatile long maxScanNanos;
+    private volatile boolean running;
+    private ExecutorService executor;
+
+    public SwitchMatrixScanner(final InputProvider provider) {
+        this(provider, DEFAULT_SCAN_RATE_HZ, DEFAULT_DEBOUNCE_MILLIS);
+    }
+
+    /**
+     * @param provider the matrix to scan.
+     * @param scanRateHz full matrix scans per second.
+     * @param debounceMillis how long a new state must hold before it is reported; 0 reports every change.
+     */
+    public SwitchMatrixScanner(final InputProvider provider, final double scanRateHz, final int debounceMillis) {
+        if (scanRateHz <= 0) {
+            throw new IllegalArgumentException("Scan rate must be positive: " + scanRateHz);
+        }
+        if (debounceMillis < 0) {
+            throw new IllegalArgumentException("Debounce must not be negative: " + debounceMillis);
+        }
+        this.provider = provider;
+        this.rowCount = provider.getRowCount();
+        this.columnCount = provider.getColumnCount();
+        this.periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / scanRateHz);
+        this.stableScans = (int) Math.max(1, Math.ceil((double) TimeUnit.MILLISECONDS.toNanos(debounceMillis) / periodNanos));
+        this.stable = new int[rowCount];
+        this.changing = new int[rowCount];
+        this.counts = new int[rowCount * columnCount];
+        this.firstSeenNanos = new long[rowCount * columnCount];
+        this.published = new int[rowCount];
+    }
+
+    public void addListener(final SwitchListener listener) {
+        listeners.add(listener);
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        logger.info("Scanning " + rowCount + "x" + columnCount + " switch matrix every " + periodNanos / 1000 + " us, "
+                + stableScans + " scans to debounce.");
+        running = true;
+        executor = Executors.newSingleThreadExecutor();
+        executor.execute(this::scanLoop);
+    }
+
+    /**
+     * Stop scanning, once the scan in progress has finished.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The debounced state of a switch.  Safe to call from any thread; may lag the scan thread by one scan.
+     */
+    public boolean isClosed(final int row, final int column) {
+        synchronized (published) {
+            return (published[row] & 1 << column) != 0;
+        }
+    }
+
+    public int getStableScans() {
+        return stableScans;
+    }
+
+    public long getScanCount() {
+        return scanCount.get();
+    }
+
+    /**
+     * Scans that started more than a full period late, because a scan or the scheduler ran long.
+     * @return number of late scans.
+     */
+    public long getOverrunCount() {
+        return overrunCount.get();
+    }
+
+    public long getEdgeCount() {
+        return edgeCount.get();
+    }
+
+    /**
+     * @return the longest a single scan of the whole matrix has taken.
+     */
+    public long getMaxScanNanos() {
+        return maxScanNanos;
+    }
+
+    private void scanLoop() {
+        long next = System.nanoTime();
+        while (running) {
+            final long now = System.nanoTime();
+            scan(now);
+            final long took = System.nanoTime() - now;
+            if (took > maxScanNanos) {
+                maxScanNanos = took;
+            }
+            next += periodNanos;
+            final long wait = next - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            } else if (-wait > periodNanos) {
+                overrunCount.incrementAndGet();
+                next = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * Read every row once and report debounced edges.  Called on the scan thread only.
+     * @param now {@link System#nanoTime()} of the scan.
+     */
+    void scan(final long now) {
+        scanCount.incrementAndGet();
+        for (int row = 0; row < rowCount; row++) {
+            final int raw = provider.readRow(row);
+            final int differs = raw ^ stable[row];
+            int pending = differs | changing[row];
+            while (pending != 0) {
+                final int column = Integer.numberOfTrailingZeros(pending);
+                final int bit = 1 << column;
+                pending &= ~bit;
+                final int index = row * columnCount + column;
+                if ((differs & bit) == 0) {
+                    // Bounced back to the stable state before the debounce time.
+                    counts[index] = 0;
+                    changing[row] &= ~bit;
+                    continue;
+                }
+                if (counts[index] == 0) {
+                    firstSeenNanos[index] = now;
+                }
+                if (++counts[index] < stableScans) {
+                    changing[row] |= bit;
+                    continue;
+                }
+                counts[index] = 0;
+                changing[row] &= ~bit;
+                stable[row] ^= bit;
+                publish(row);
+                edgeCount.incrementAndGet();
+                final boolean closed = (stable[row] & bit) != 0;
+                for (SwitchListener listener : listeners) {
+                    listener.onSwitch(row, column, closed, firstSeenNanos[index]);
+                }
+            }
+        }
+    }
+
+    private void publish(final int row) {
+        synchronized (published) {
+            published[row] = stable[row];
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package cjohannsen.link;
+
+import cjohannsen.SimpitHost;
+import cjohannsen.metrics.LatencyHistogram;
+import cjohannsen.protocol.Handler;
+import cjohannsen.protocol.MessageType;
+import cjohannsen.protocol.Packet;
+import cjohannsen.protocol.Payload;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Watches the serial link to KerbalSimpit: measures round trip time with echo probes, tracks how long each channel
+ * has been silent, and publishes a {@link State} that other components can react to.
+ *
+ * Each probe is an echo request carrying {@link #PROBE_MAGIC}, a sequence number and its send time; the plugin
+ * returns the payload unchanged, so the response gives the round trip time directly, and is matched against the
+ * probes in flight so stale or foreign echoes are ignored.  A probe unanswered after the probe timeout is lost.
+ *
+ * The link is {@link State#LOST} when nothing at all has been received for the lost silence, {@link State#DEGRADED}
+ * when nothing has been received for the degraded silence, the last round trip was slow or the last probe was lost,
+ * and {@link State#HEALTHY} otherwise.  Probes are sent at the slow healthy interval while the link is healthy and at
+ * the fast interval otherwise, so a recovering link is noticed quickly without flooding a healthy one.
+ */
+@Component
+public class LinkMonitor implements Handler {
+    private static final Logger logger = LoggerFactory.getLogger(LinkMonitor.class);
+
+    public enum State {
+        HEALTHY,
+        DEGRADED,
+        LOST
+    }
+
+    public interface LinkStateListener {
+        /**
+         * Called on the monitor thread when the link state changes.
+         */
+        void onLinkState(State previous, State current);
+    }
+
+    public static final int PROBE_MAGIC = 0x4B4E4C53; // "SLNK"
+    public static final int PROBE_SIZE = 20;
+    public static final int MAX_PROBES_IN_FLIGHT = 16;
+
+    public static final long DEFAULT_HEALTHY_PROBE_MILLIS = 5000;
+    public static final long DEFAULT_DEGRADED_PROBE_MILLIS = 500;
+    public static final long DEFAULT_PROBE_TIMEOUT_MILLIS = 2000;
+    public static final long DEFAULT_DEGRADED_RTT_MILLIS = 250;
+    public static final long DEFAULT_DEGRADED_SILENCE_MILLIS = 2000;
+    public static final long DEFAULT_LOST_SILENCE_MILLIS = 6000;
+    public static final long TICK_MILLIS = 100;
+
+    private final Consumer<byte[]> prober;
+    private final IntToLongFunction lastReceived;
+    private final long healthyProbeNanos;
+    private final long degradedProbeNanos;
+    private final long probeTimeoutNanos;
+    private final long degradedRttNanos;
+    private final long degradedSilenceNanos;
+    private final long lostSilenceNanos;
+
+    /** Send times of the probes in flight by sequence modulo {@link #MAX_PROBES_IN_FLIGHT}; 0 for a free slot. */
+    private final long[] inFlightNanos = new long[MAX_PROBES_IN_FLIGHT];
+    private final long[] inFlightSequences = new long[MAX_PROBES_IN_FLIGHT];
+    private final LatencyHistogram rtt = new LatencyHistogram();
+    private final List<LinkStateListener> listeners = new CopyOnWriteArrayList<>();
+
+    private long sequence;
+    private long nextProbeNanos;
+    private long startNanos;
+    private boolean lastProbeLost;
+    private volatile long lastRttNanos;
+    private volatile long probesSent;
+    private volatile long probesAnswered;
+    private volatile long probesLost;
+    private volatile State state = State.HEALTHY;
+    private ScheduledExecutorService executor;
+
+    @Autowired
+    public LinkMonitor(final SimpitHost simpitHost, final MeterRegistry registry,
+                       @Value("${simpit.link.healthy-probe-millis:" + DEFAULT_HEALTHY_PROBE_MILLIS + "}") final long healthyProbeMillis,
+                       @Value("${simpit.link.degraded-probe-millis:" + DEFAULT_DEGRADED_PROBE_MILLIS + "}") final long degradedProbeMillis,
+                       @Value("${simpit.link.probe-timeout-millis:" + DEFAULT_PROBE_TIMEOUT_MILLIS + "}") final long probeTimeoutMillis,
+                       @Value("${simpit.link.degraded-rtt-millis:" + DEFAULT_DEGRADED_RTT_MILLIS + "}") final long degradedRttMillis,
+                       @Value("${simpit.link.degraded-silence-millis:" + DEFAULT_DEGRADED_SILENCE_MILLIS + "}") final long degradedSilenceMillis,
+                       @Value("${simpit.link.lost-silence-millis:" + DEFAULT_LOST_SILENCE_MILLIS + "}") final long lostSilenceMillis) {
+        this(simpitHost::sendEchoRequest, simpitHost::getLastReceivedNanos, healthyProbeMillis, degradedProbeMillis,
+                probeTimeoutMillis, degradedRttMillis, degradedSilenceMillis, lostSilenceMillis);
+        Gauge.builder("simpit.link.state", this, m -> m.getState().ordinal())
+                .description("0 healthy, 1 degraded, 2 lost")
+                .register(registry);
+        Gauge.builder("simpit.link.rtt", rtt, h -> h.getPercentileNanos(50) / 1e9)
+                .tags("statistic", "p50")
+                .baseUnit("seconds")
+                .register(registry);
+        Gauge.builder("simpit.link.rtt", rtt, h -> h.getPercentileNanos(99) / 1e9)
+                .tags("statistic", "p99")
+                .baseUnit("seconds")
+                .register(registry);
+        Gauge.builder("simpit.link.rtt", rtt, h -> h.getMaxNanos() / 1e9)
+                .tags("statistic", "max")
+                .baseUnit("seconds")
+                .register(registry);
+        FunctionCounter.builder("simpit.link.probes.lost", this, LinkMonitor::getProbesLost)
+                .register(registry);
+    }
+
+    /**
+     * @param prober sends an echo request with the given payload.
+     * @param lastReceived the {@link System#nanoTime()} a packet type was last received, or 0.
+     */
+    LinkMonitor(final Consumer<byte[]> prober, final IntToLongFunction lastReceived, final long healthyProbeMillis,
+                final long degradedProbeMillis, final long probeTimeoutMillis, final long degradedRttMillis,
+                final long degradedSilenceMillis, final long lostSilenceMillis) {
+        if (healthyProbeMillis <= 0 || degradedProbeMillis <= 0 || probeTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("Probe intervals and timeout must be positive");
+        }
+        if (lostSilenceMillis < degradedSilenceMillis) {
+            throw new IllegalArgumentException("Lost silence must not be shorter than degraded silence: "
+                    + lostSilenceMillis + " < " + degradedSilenceMillis);
+        }
+        this.prober = prober;
+        this.lastReceived = lastReceived;
+        this.healthyProbeNanos = TimeUnit.MILLISECONDS.toNanos(healthyProbeMillis);
+        this.degradedProbeNanos = TimeUnit.MILLISECONDS.toNanos(degradedProbeMillis);
+        this.probeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(probeTimeoutMillis);
+        this.degradedRttNanos = TimeUnit.MILLISECONDS.toNanos(degradedRttMillis);
+        this.degradedSilenceNanos = TimeUnit.MILLISECONDS.toNanos(degradedSilenceMillis);
+        this.lostSilenceNanos = TimeUnit.MILLISECONDS.toNanos(lostSilenceMillis);
+        this.startNanos = System.nanoTime();
+    }
+
+    public void addListener(final LinkStateListener listener) {
+        listeners.add(listener);
+    }
+
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        logger.info("Monitoring link, probing every " + TimeUnit.NANOSECONDS.toMillis(healthyProbeNanos) + " ms while healthy and "
+                + TimeUnit.NANOSECONDS.toMillis(degradedProbeNanos) + " ms otherwise.");
+        startNanos = System.nanoTime();
+        nextProbeNanos = startNanos;
+        executor = Executors.newSingleThreadScheduledExecutor();
+        executor.scheduleAtFixedRate(() -> {
+            try {
+                tick(System.nanoTime());
+            } catch (RuntimeException e) {
+                logger.error("Link monitor tick failed", e);
+            }
+        }, 0, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    @Override
+    public void handle(final MessageType.Datagram type, final byte[] message, final Payload.Provider provider) {
+        onEcho(message, 0, message.length, System.nanoTime());
+    }
+
+    @Override
+    public void handle(final Packet packet, final Payload.Provider provider) {
+        final long received = packet.getFrameNanos() != 0 ? packet.getFrameNanos() : System.nanoTime();
+        onEcho(packet.getBuffer(), packet.getPayloadOffset(), packet.getPayloadLength(), received);
+    }
+
+    /**
+     * Match an echo response to the probe it answers.  Called on the dispatcher thread.
+     * @param receivedNanos when the response was read.
+     */
+    synchronized void onEcho(final byte[] bytes, final int offset, final int length, final long receivedNanos) {
+        if (length < PROBE_SIZE || Payload.readIntLE(bytes, offset) != PROBE_MAGIC) {
+            logger.debug("Echo response: " + new String(bytes, offset, length).trim());
+            return;
+        }
+        final long probe = Payload.readLongLE(bytes, offset + 4);
+        final long sentNanos = Payload.readLongLE(bytes, offset + 12);
+        final int slot = (int) probe & (MAX_PROBES_IN_FLIGHT - 1);
+        if (inFlightNanos[slot] != sentNanos || inFlightSequences[slot] != probe) {
+            // Already timed out, answered twice, or from an earlier run.
+            return;
+        }
+        inFlightNanos[slot] = 0;
+        final long roundTrip = receivedNanos - sentNanos;
+        rtt.record(roundTrip);
+        lastRttNanos = roundTrip;
+        lastProbeLost = false;
+        probesAnswered++;
+    }
+
+    /**
+     * Expire lost probes, update the state and send a probe when one is due.  Called on the monitor thread.
+     * @param now {@link System#nanoTime()} of the tick.
+     */
+    synchronized void tick(final long now) {
+        for (int slot = 0; slot < MAX_PROBES_IN_FLIGHT; slot++) {
+            if (inFlightNanos[slot] != 0 && now - inFlightNanos[slot] >= probeTimeoutNanos) {
+                inFlightNanos[slot] = 0;
+                lastProbeLost = true;
+                probesLost++;
+            }
+        }
+
+        final long silence = now - lastInboundNanos();
+        final State next;
+        if (silence >= lostSilenceNanos) {
+            next = State.LOST;
+        } else if (silence >= degradedSilenceNanos || lastProbeLost || lastRttNanos >= degradedRttNanos) {
+            next = State.DEGRADED;
+        } else {
+            next = State.HEALTHY;
+        }
+        final State previous = state;
+        if (next != previous) {
+            state = next;
+            logger.info("Link " + previous + " -> " + next + ", silent for " + TimeUnit.NANOSECONDS.toMillis(silence)
+                    + " ms, last round trip " + TimeUnit.NANOSECONDS.toMicros(lastRttNanos) + " us.");
+            for (LinkStateListener listener : listeners) {
+                listener.onLinkState(previous, next);
+            }
+            // Bring the next probe forward to the new rate.
+            nextProbeNanos = Math.min(nextProbeNanos, now + (next == State.HEALTHY ? healthyProbeNanos : degradedProbeNanos));
+        }
+
+        if (now - nextProbeNanos >= 0) {
+            probe(now);
+            nextProbeNanos = now + (state == State.HEALTHY ? healthyProbeNanos : degradedProbeNanos);
+        }
+    }
+
+    private void probe(final long now) {
+        final long probe = sequence++;
+        final int slot = (int) probe & (MAX_PROBES_IN_FLIGHT - 1);
+        if (inFlightNanos[slot] != 0) {
+            // Only possible when probing faster than the timeout allows; the older probe counts as lost.
+            lastProbeLost = true;
+            probesLost++;
+        }
+        final byte[] payload = new byte[PROBE_SIZE];
+        Payload.writeIntLE(payload, 0, PROBE_MAGIC);
+        Payload.writeLongLE(payload, 4, probe);
+        Payload.writeLongLE(payload, 12, now);
+        inFlightNanos[slot] = now;
+        inFlightSequences[slot] = probe;
+        probesSent++;
+        prober.accept(payload);
+    }
+
+    /** The latest arrival of any packet type, or the start time if nothing has arrived. */
+    private long lastInboundNanos() {
+        long latest = startNanos;
+        for (int type = 0; type < 256; type++) {
+            final long received = lastReceived.applyAsLong(type);
+            if (received != 0 && received - latest > 0) {
+                latest = received;
+            }
+        }
+        return latest;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public LatencyHistogram getRtt() {
+        return rtt;
+    }
+
+    public long getLastRttNanos() {
+        return lastRttNanos;
+    }
+
+    public long getProbesSent() {
+        return probesSent;
+    }
+
+    public long getProbesAnswered() {
+        return probesAnswered;
+    }
+
+    public long getProbesLost() {
+        return probesLost;
+    }
+
+    /**
+     * How long each channel that has been received at least once has been silent.
+     * @return milliseconds since the last packet, keyed by datagram name in type order.
+     */
+    public Map<String, Long> getSilenceMillis() {
+        final long now = System.nanoTime();
+        final Map<String, Long> silence = new LinkedHashMap<>();
+        for (MessageType.Datagram type : MessageType.Datagram.values()) {
+            if (type == MessageType.Datagram.UNDEFINED) {
+                continue;
+            }
+            final long received = lastReceived.applyAsLong(type.getValue());
+            if (received != 0) {
+                silence.put(type.name(), TimeUnit.NANOSECONDS.toMillis(now - received));
+            }
+        }
+        return silence;
+    }
+
+    /**
+     * @return state, probe counts, round trip statistics and per channel silence, for {@code /link}.
+     */
+    public Map<String, Object> snapshot() {
+        final Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("state", state);
+        snapshot.put("probesSent", probesSent);
+        snapshot.put("probesAnswered", probesAnswered);
+        snapshot.put("probesLost", probesLost);
+        snapshot.put("lastRttMicros", TimeUnit.NANOSECONDS.toMicros(lastRttNanos));
+        snapshot.put("rtt", rtt.snapshot());
+        snapshot.put("silenceMillis", getSilenceMillis());
+        return snapshot;
+    }
+}
@@ -0,0 +1,119 @@
+package cjohannsen.metrics;
+
+import cjohannsen.protocol.Packet;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * End to end latency, stage by stage, from {@link System#nanoTime()} stamps taken along the telemetry and command paths.
+ *
+ * Telemetry is stamped when the read holding a frame's first byte returns, when the frame is complete, when the
+ * dispatcher takes it and when its handler returns.  Commands are stamped at their origin (the GPIO edge for a
+ * button), when encoded, and when the write to the link returns.  Every stage has its own {@link LatencyHistogram};
+ * snapshots are served at {@code /latency} and p50, p99 and max are published as {@code simpit.latency} gauges.
+ */
+@Component
+public class LatencyTracker {
+
+    public enum Stage {
+        /** First byte read to frame complete: time spent waiting for the rest of the frame on the wire. */
+        FRAME,
+        /** Frame complete to dispatch: time in the inbound queue. */
+        QUEUE,
+        /** Dispatch to handler done. */
+        HANDLER,
+        /** First byte read to handler done. */
+        TELEMETRY_TOTAL,
+        /** Command origin to encoded frame. */
+        ENCODE,
+        /** Encoded frame to write return. */
+        WRITE,
+        /** Command origin to write return. */
+        COMMAND_TOTAL
+    }
+
+    private final EnumMap<Stage, LatencyHistogram> histograms = new EnumMap<>(Stage.class);
+
+    public LatencyTracker() {
+        for (Stage stage : Stage.values()) {
+            histograms.put(stage, new LatencyHistogram());
+        }
+    }
+
+    @Autowired
+    public LatencyTracker(final MeterRegistry registry) {
+        this();
+        for (Stage stage : Stage.values()) {
+            final LatencyHistogram histogram = histograms.get(stage);
+            final String name = stage.name().toLowerCase();
+            Gauge.builder("simpit.latency", histogram, h -> h.getPercentileNanos(50) / 1e9)
+                    .tags("stage", name, "statistic", "p50")
+                    .baseUnit("seconds")
+                    .register(registry);
+            Gauge.builder("simpit.latency", histogram, h -> h.getPercentileNanos(99) / 1e9)
+                    .tags("stage", name, "statistic", "p99")
+                    .baseUnit("seconds")
+                    .register(registry);
+            Gauge.builder("simpit.latency", histogram, h -> h.getMaxNanos() / 1e9)
+                    .tags("stage", name, "statistic", "max")
+                    .baseUnit("seconds")
+                    .register(registry);
+        }
+    }
+
+    /**
+     * Record the receive stages of a handled packet.  Packets without receive stamps, such as those built with
+     * {@link Packet#decodePacket(byte[])}, only record the handler stage.
+     * @param packet the packet, stamped by the packet source.
+     * @param dispatchNanos when the dispatcher took the packet.
+     * @param doneNanos when the handler returned.
+     */
+    public void recordTelemetry(final Packet packet, final long dispatchNanos, final long doneNanos) {
+        histograms.get(Stage.HANDLER).record(doneNanos - dispatchNanos);
+        if (packet.getFrameNanos() == 0) {
+            return;
+        }
+        histograms.get(Stage.FRAME).record(packet.getFrameNanos() - packet.getFirstByteNanos());
+        histograms.get(Stage.QUEUE).record(dispatchNanos - packet.getFrameNanos());
+        histograms.get(Stage.TELEMETRY_TOTAL).record(doneNanos - packet.getFirstByteNanos());
+    }
+
+    /**
+     * Record the stages of a command written to the link.
+     * @param originNanos when the command was requested, e.g. the GPIO edge.
+     * @param encodedNanos when the frame was encoded.
+     * @param writtenNanos when the write returned.
+     */
+    public void recordCommand(final long originNanos, final long encodedNanos, final long writtenNanos) {
+        histograms.get(Stage.ENCODE).record(encodedNanos - originNanos);
+        histograms.get(Stage.WRITE).record(writtenNanos - encodedNanos);
+        histograms.get(Stage.COMMAND_TOTAL).record(writtenNanos - originNanos);
+    }
+
+    public LatencyHistogram getHistogram(final Stage stage) {
+        return histograms.get(stage);
+    }
+
+    /**
+     * @return a snapshot of every stage, keyed by lower case stage name in pipeline order.
+     */
+    public Map<String, LatencyHistogram.Snapshot> snapshot() {
+        final Map<String, LatencyHistogram.Snapshot> snapshot = new LinkedHashMap<>();
+        for (Stage stage : Stage.values()) {
+            snapshot.put(stage.name().toLowerCase(), histograms.get(stage).snapshot());
+        }
+        return snapshot;
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+    }
+}
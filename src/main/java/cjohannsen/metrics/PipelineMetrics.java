@@ -0,0 +1,130 @@
+package cjohannsen.metrics;
+
+import cjohannsen.protocol.CommandWriter;
+import cjohannsen.protocol.ConflatingPacketQueue;
+import cjohannsen.protocol.InvalidPacketException;
+import cjohannsen.protocol.MessageType;
+import cjohannsen.protocol.PacketQueue;
+import cjohannsen.protocol.PacketSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters for the receive and dispatch pipeline, published through the actuator ({@code /actuator/prometheus}).
+ *
+ * Per packet counts stay in the pipeline's own atomic counters and are read by function counters only when the
+ * registry is scraped, so the reader thread pays one uncontended atomic increment per frame, and one more for an
+ * invalid frame, with no meter lookup.  The dispatcher and command paths record through
+ * meters resolved once per type byte up front, so recording is an array load and a timer or counter update.
+ */
+@Component
+public class PipelineMetrics {
+
+    private final Timer[] handlerTimers = new Timer[256];
+    private final Counter[] commandBytes = new Counter[256];
+
+    @Autowired
+    public PipelineMetrics(final MeterRegistry registry, final PacketSource packetSource, final CommandWriter commandWriter) {
+        for (MessageType.Datagram type : MessageType.Datagram.values()) {
+            if (type == MessageType.Datagram.UNDEFINED) {
+                continue;
+            }
+            FunctionCounter.builder("simpit.packets.received", packetSource, s -> s.getReceivedCount(type))
+                    .tag("channel", type.name())
+                    .description("Valid frames received")
+                    .register(registry);
+            handlerTimers[type.getValue()] = Timer.builder("simpit.handler.duration")
+                    .tag("channel", type.name())
+                    .description("Handler execution time on the dispatcher thread")
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofNanos(1000))
+                    .maximumExpectedValue(Duration.ofMillis(100))
+                    .register(registry);
+        }
+        for (InvalidPacketException.Reason reason : InvalidPacketException.Reason.values()) {
+            FunctionCounter.builder("simpit.frames.invalid", packetSource, s -> s.getInvalidCount(reason))
+                    .tag("reason", reason.name())
+                    .description("Frames rejected by validation")
+                    .register(registry);
+        }
+        FunctionCounter.builder("simpit.frames.invalid", packetSource, PacketSource::getOversizedFrameCount)
+                .tag("reason", "OVERSIZED_FRAME")
+                .description("Frames rejected by validation")
+                .register(registry);
+        FunctionCounter.builder("simpit.bytes.discarded", packetSource, PacketSource::getBytesDiscarded)
+                .baseUnit("bytes")
+                .description("Bytes skipped while looking for a frame header")
+                .register(registry);
+        FunctionCounter.builder("simpit.bytes.received", packetSource, PacketSource::getBytesReceived)
+                .baseUnit("bytes")
+                .register(registry);
+
+        final PacketQueue queue = packetSource.getQueue();
+        Gauge.builder("simpit.queue.depth", queue, PacketQueue::size)
+                .description("Packets waiting for the dispatcher")
+                .register(registry);
+        FunctionCounter.builder("simpit.queue.dropped", queue, PacketQueue::getDroppedCount)
+                .description("Packets dropped because the dispatcher fell behind")
+                .register(registry);
+        if (queue instanceof ConflatingPacketQueue) {
+            FunctionCounter.builder("simpit.queue.conflated", (ConflatingPacketQueue) queue, ConflatingPacketQueue::getConflatedCount)
+                    .description("Packets replaced by a newer packet on the same channel")
+                    .register(registry);
+        }
+
+        for (MessageType.Command command : MessageType.Command.values()) {
+            if (command == MessageType.Command.UNDEFINED) {
+                continue;
+            }
+            commandBytes[command.getValue()] = Counter.builder("simpit.commands.written")
+                    .tag("command", command.name())
+                    .baseUnit("bytes")
+                    .description("Bytes written to the link")
+                    .register(registry);
+        }
+        for (CommandWriter.Lane lane : CommandWriter.Lane.values()) {
+            Gauge.builder("simpit.commands.pending", commandWriter, w -> w.getPending(lane))
+                    .tag("lane", lane.name())
+                    .description("Commands waiting for the writer")
+                    .register(registry);
+        }
+        FunctionCounter.builder("simpit.commands.rejected", commandWriter, CommandWriter::getRejectedCount)
+                .description("Commands turned away because their lane was full")
+                .register(registry);
+        FunctionCounter.builder("simpit.commands.writes", commandWriter, CommandWriter::getWriteCount)
+                .description("Transport writes; fewer than commands when frames are batched")
+                .register(registry);
+    }
+
+    /**
+     * Record how long a handler took.
+     * @param type the raw type byte of the packet handled.
+     * @param nanos handler execution time.
+     */
+    public void recordHandler(final int type, final long nanos) {
+        final Timer timer = handlerTimers[type];
+        if (timer != null) {
+            timer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Record a command written to the link.
+     * @param type the raw command type byte.
+     * @param bytes number of bytes written.
+     */
+    public void recordWrite(final int type, final int bytes) {
+        final Counter counter = commandBytes[type];
+        if (counter != null && bytes > 0) {
+            counter.increment(bytes);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package cjohannsen.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Logs how long the process took to become ready and to handle its first telemetry, with its resident memory at
+ * each point.  Times are JVM uptime, so they include JVM start and class loading but not the boot of the Pi itself.
+ * The first telemetry line also gives the latency of that first packet, from its first byte read to handled: the
+ * {@link LatencyTracker.Stage#TELEMETRY_TOTAL telemetry_total} stage, which is slowest before any code is warm.
+ * The log lines start with {@link #READY} and {@link #FIRST_TELEMETRY} so {@code scripts/measure-startup.sh} can
+ * find them.
+ */
+@Component
+public class StartupReport {
+    private static final Logger logger = LoggerFactory.getLogger(StartupReport.class);
+
+    public static final String READY = "Startup ready";
+    public static final String FIRST_TELEMETRY = "Startup first telemetry";
+
+    private static final Path STATUS = Paths.get("/proc/self/status");
+
+    private final String mode;
+    private final AtomicBoolean telemetrySeen = new AtomicBoolean();
+    private volatile long readyMillis;
+    private volatile long firstTelemetryMillis;
+    private volatile long firstPacketMicros = -1;
+
+    public StartupReport() {
+        this("servlet");
+    }
+
+    /**
+     * @param mode the web application type, reported alongside the figures.
+     */
+    @Autowired
+    public StartupReport(@Value("${spring.main.web-application-type:servlet}") final String mode) {
+        this.mode = mode.toLowerCase();
+    }
+
+    /**
+     * Record that the pipeline is running.  Called once, after the handshake.
+     */
+    public void ready() {
+        readyMillis = uptimeMillis();
+        logger.info(READY + ": " + readyMillis + " ms uptime, " + residentKilobytes() + " kB resident, web " + mode + ".");
+    }
+
+    /**
+     * Record the first telemetry update, once.  Called on the dispatcher thread for every accepted update, once it
+     * has been handled; after the first it costs a single volatile read.
+     * @param firstByteNanos {@link System#nanoTime()} when the update's first byte was read, or 0 if not stamped.
+     */
+    public void telemetry(final long firstByteNanos) {
+        if (telemetrySeen.get() || !telemetrySeen.compareAndSet(false, true)) {
+            return;
+        }
+        firstPacketMicros = firstByteNanos != 0 ? TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - firstByteNanos) : -1;
+        firstTelemetryMillis = uptimeMillis();
+        logger.info(FIRST_TELEMETRY + ": " + firstTelemetryMillis + " ms uptime, " + residentKilobytes() + " kB resident, "
+                + firstPacketMicros + " us first packet, web " + mode + ".");
+    }
+
+    public long getReadyMillis() {
+        return readyMillis;
+    }
+
+    public long getFirstTelemetryMillis() {
+        return firstTelemetryMillis;
+    }
+
+    /**
+     * @return first byte read to handled for the first telemetry update, in microseconds; -1 if not known.
+     */
+    public long getFirstPacketMicros() {
+        return firstPacketMicros;
+    }
+
+    public static long uptimeMillis() {
+        return ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+
+    /**
+     * The resident set size of this process, from {@code /proc/self/status}.
+     * @return the resident memory in kilobytes, or -1 where it is not available.
+     */
+    public static long residentKilobytes() {
+        try {
+            return parseResidentKilobytes(Files.readAllLines(STATUS));
+        } catch (IOException | RuntimeException e) {
+            return -1;
+        }
+    }
+
+    static long parseResidentKilobytes(final List<String> status) {
+        for (String line : status) {
+            if (line.startsWith("VmRSS:")) {
+                return Long.parseLong(line.substring("VmRSS:".length()).trim().split("\\s+")[0]);
+            }
+        }
+        return -1;
+    }
+}
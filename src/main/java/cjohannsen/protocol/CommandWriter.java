@@ -0,0 +1,219 @@
+package cjohannsen.protocol;
+
+import cjohannsen.Util;
+import cjohannsen.transport.Transport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The only writer to the link.  Any thread may submit an encoded frame and get back a future; a single writer thread
+ * takes frames from the queues, combines the frames already waiting into one transport write, and completes their
+ * futures when the write returns.
+ *
+ * Frames on the {@link Lane#PRIORITY} lane, such as staging, are always written before frames on the
+ * {@link Lane#BULK} lane, such as channel registration.  A write is never delayed to wait for more frames, and is
+ * limited to {@link #getBatchBytes()} bytes so a priority frame submitted during a bulk write waits at most one short
+ * write: 64 bytes take about 11 ms at 57600 baud.
+ */
+@Component
+public class CommandWriter {
+    private static final Logger logger = LoggerFactory.getLogger(CommandWriter.class);
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+    public static final int DEFAULT_BATCH_BYTES = 64;
+    public static final long IDLE_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    public enum Lane {
+        /** Safety critical commands, written ahead of everything else. */
+        PRIORITY,
+        /** Everything else. */
+        BULK
+    }
+
+    private static class Command {
+        final byte[] frame;
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        Command(final byte[] frame) {
+            this.frame = frame;
+        }
+    }
+
+    private final Transport transport;
+    private final BlockingQueue<Command> priority;
+    private final BlockingQueue<Command> bulk;
+    private final int batchBytes;
+    private final byte[] batch;
+    private final Command[] batchCommands;
+    /** Bytes and frames in the batch being built; writer thread only. */
+    private int batchSize;
+    private int batchCount;
+
+    private final AtomicLong framesWritten = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private volatile boolean running;
+    private volatile Thread writerThread;
+
+    public CommandWriter(final Transport transport) {
+        this(transport, DEFAULT_QUEUE_CAPACITY, DEFAULT_BATCH_BYTES);
+    }
+
+    /**
+     * @param transport the link to write.
+     * @param queueCapacity frames each lane holds before submissions are rejected.
+     * @param batchBytes most bytes combined into one write; at least one whole frame.
+     */
+    @Autowired
+    public CommandWriter(final Transport transport,
+                         @Value("${simpit.commands.queue-capacity:" + DEFAULT_QUEUE_CAPACITY + "}") final int queueCapacity,
+                         @Value("${simpit.commands.batch-bytes:" + DEFAULT_BATCH_BYTES + "}") final int batchBytes) {
+        if (batchBytes < Packet.PACKET_SIZE) {
+            throw new IllegalArgumentException("Batch must hold a whole frame of " + Packet.PACKET_SIZE + " bytes: " + batchBytes);
+        }
+        this.transport = transport;
+        this.priority = new ArrayBlockingQueue<>(queueCapacity);
+        this.bulk = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchBytes = batchBytes;
+        this.batch = new byte[batchBytes];
+        this.batchCommands = new Command[batchBytes / Packet.MESSAGE_HEADER_SIZE];
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        logger.info("Starting command writer.");
+        running = true;
+        Executors.newSingleThreadExecutor().execute(() -> {
+            writerThread = Thread.currentThread();
+            while (running) {
+                writeNext();
+            }
+        });
+    }
+
+    public void stop() {
+        running = false;
+        final Thread thread = writerThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Queue an encoded frame for writing.  Never blocks.
+     * @param lane the lane to queue on.
+     * @param frame a whole frame, header included.
+     * @return a future completing with true once the whole frame is written, or false if the write fell short.  It
+     * completes exceptionally with {@link RejectedExecutionException} if the lane is full.
+     */
+    public CompletableFuture<Boolean> submit(final Lane lane, final byte[] frame) {
+        if (frame.length > batchBytes) {
+            throw new IllegalArgumentException("Frame of " + frame.length + " bytes exceeds the batch size " + batchBytes);
+        }
+        final Command command = new Command(frame);
+        if (!(lane == Lane.PRIORITY ? priority : bulk).offer(command)) {
+            rejected.incrementAndGet();
+            command.result.completeExceptionally(new RejectedExecutionException(lane + " command queue is full."));
+            return command.result;
+        }
+        final Thread thread = writerThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+        return command.result;
+    }
+
+    public int getBatchBytes() {
+        return batchBytes;
+    }
+
+    /**
+     * @param lane the lane.
+     * @return frames waiting on the lane.
+     */
+    public int getPending(final Lane lane) {
+        return (lane == Lane.PRIORITY ? priority : bulk).size();
+    }
+
+    public long getFramesWritten() {
+        return framesWritten.get();
+    }
+
+    /**
+     * Transport writes made; fewer than {@link #getFramesWritten()} when frames were batched.
+     * @return number of writes.
+     */
+    public long getWriteCount() {
+        return writes.get();
+    }
+
+    /**
+     * Submissions turned away because their lane was full.
+     * @return number of rejected frames.
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Write one batch, or park until there is something to write.  Called on the writer thread only.
+     */
+    void writeNext() {
+        batchSize = 0;
+        batchCount = 0;
+        fill(priority);
+        if (priority.isEmpty()) {
+            fill(bulk);
+        }
+        if (batchCount == 0) {
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            return;
+        }
+        if (logger.isTraceEnabled()) {
+            logger.trace("Writing " + batchCount + " frames: " + Util.hexString(Arrays.copyOf(batch, batchSize)));
+        }
+        final int written = transport.write(batch, batchSize);
+        writes.incrementAndGet();
+        if (written < batchSize) {
+            logger.warn("Short write: " + written + " of " + batchSize + " bytes.");
+        }
+        int end = 0;
+        for (int i = 0; i < batchCount; i++) {
+            final Command command = batchCommands[i];
+            batchCommands[i] = null;
+            end += command.frame.length;
+            final boolean complete = written >= end;
+            if (complete) {
+                framesWritten.incrementAndGet();
+            }
+            command.result.complete(complete);
+        }
+    }
+
+    /** Move frames from a lane into the batch while they fit. */
+    private void fill(final BlockingQueue<Command> lane) {
+        Command next;
+        while ((next = lane.peek()) != null && batchSize + next.frame.length <= batchBytes) {
+            lane.poll();
+            System.arraycopy(next.frame, 0, batch, batchSize, next.frame.length);
+            batchSize += next.frame.length;
+            batchCommands[batchCount++] = next;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package cjohannsen.protocol;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A {@link PacketQueue} that keeps only the newest unprocessed packet on each
+ * {@link MessageType.Datagram#isContinuous() continuous} channel, so a dispatcher that falls behind works on fresh
+ * telemetry rather than a stale backlog.  Event channels (action status, SOI, scene change, echo, ...) are never
+ * conflated; they travel through a FIFO {@link RingPacketQueue} and are delivered ahead of pending continuous values.
+ *
+ * Continuous packets are parked in a slot per type byte.  When a slot goes from empty to full its index is pushed onto
+ * a ready list; since only the consumer empties slots, an index is on the ready list at most once and the list can
+ * never overflow.  A packet replaced before it was consumed is released straight back to its pool.
+ */
+public class ConflatingPacketQueue implements PacketQueue {
+
+    private static final int CHANNELS = 256;
+
+    private final RingPacketQueue events;
+    private final AtomicReferenceArray<Packet> latest = new AtomicReferenceArray<>(CHANNELS);
+    private final AtomicLongArray conflated = new AtomicLongArray(CHANNELS);
+
+    private final int[] ready = new int[CHANNELS];
+    private final AtomicLong readyHead = new AtomicLong();
+    private final AtomicLong readyTail = new AtomicLong();
+
+    private volatile Thread waitingConsumer;
+
+    /**
+     * @param eventCapacity capacity of the FIFO queue for event channels.
+     * @param overflowPolicy overflow behaviour of the event queue.
+     */
+    public ConflatingPacketQueue(final int eventCapacity, final RingPacketQueue.OverflowPolicy overflowPolicy) {
+        this.events = new RingPacketQueue(eventCapacity, overflowPolicy);
+    }
+
+    @Override
+    public boolean offer(final Packet packet) {
+        final boolean accepted;
+        if (packet.getDatagram().isContinuous()) {
+            final int type = packet.getType();
+            final Packet previous = latest.getAndSet(type, packet);
+            if (previous != null) {
+                conflated.incrementAndGet(type);
+                previous.release();
+            } else {
+                final long tail = readyTail.get();
+                ready[(int) tail & (CHANNELS - 1)] = type;
+                readyTail.set(tail + 1);
+            }
+            accepted = true;
+        } else {
+            accepted = events.offer(packet);
+        }
+        final Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+        return accepted;
+    }
+
+    @Override
+    public Packet poll() {
+        final Packet event = events.poll();
+        if (event != null) {
+            return event;
+        }
+        while (true) {
+            final long head = readyHead.get();
+            if (head >= readyTail.get()) {
+                return null;
+            }
+            final int type = ready[(int) head & (CHANNELS - 1)];
+            readyHead.set(head + 1);
+            final Packet packet = latest.getAndSet(type, null);
+            if (packet != null) {
+                return packet;
+            }
+        }
+    }
+
+    @Override
+    public Packet poll(final long timeout, final TimeUnit unit) {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        Packet packet = poll();
+        while (packet == null) {
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return null;
+            }
+            waitingConsumer = Thread.currentThread();
+            if (isEmpty()) {
+                LockSupport.parkNanos(this, remaining);
+            }
+            waitingConsumer = null;
+            packet = poll();
+        }
+        return packet;
+    }
+
+    @Override
+    public Packet take() {
+        Packet packet = poll();
+        while (packet == null) {
+            waitingConsumer = Thread.currentThread();
+            if (isEmpty()) {
+                LockSupport.park(this);
+            }
+            waitingConsumer = null;
+            packet = poll();
+        }
+        return packet;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return events.isEmpty() && readyHead.get() >= readyTail.get();
+    }
+
+    @Override
+    public int size() {
+        return events.size() + (int) Math.max(0, readyTail.get() - readyHead.get());
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return events.getDroppedCount();
+    }
+
+    /**
+     * Packets replaced by a newer packet on the same channel before the dispatcher got to them.
+     * @return number of conflated packets across all channels.
+     */
+    public long getConflatedCount() {
+        long total = 0;
+        for (int i = 0; i < CHANNELS; i++) {
+            total += conflated.get(i);
+        }
+        return total;
+    }
+
+    public long getConflatedCount(final MessageType.Datagram type) {
+        return conflated.get(type.getValue());
+    }
+
+    /**
+     * The FIFO queue carrying event channels.
+     * @return the event queue.
+     */
+    public RingPacketQueue getEventQueue() {
+        return events;
+    }
+}
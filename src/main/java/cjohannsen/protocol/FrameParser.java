@@ -0,0 +1,174 @@
+package cjohannsen.protocol;
+
+/**
+ * Incremental parser for the KerbalSimpit wire format.  Bytes are fed in whatever chunks the serial port delivers
+ * them; partial frames are kept between calls and every complete frame in a chunk is emitted.
+ *
+ * Received bytes are held in a ring buffer whose first {@link Packet#PACKET_SIZE} bytes are mirrored past its end, so
+ * a frame that wraps around the ring is still contiguous in the backing array and can be handed out as a single
+ * offset/length slice.
+ *
+ * Not thread safe; a parser belongs to the thread that reads the port.
+ */
+public class FrameParser {
+
+    public static final int DEFAULT_CAPACITY = 256;
+
+    public static final int MAX_PAYLOAD_SIZE = Packet.PACKET_SIZE - Packet.MESSAGE_HEADER_SIZE;
+
+    /**
+     * Receives complete frames.  The slice is only valid for the duration of the call.
+     */
+    public interface FrameListener {
+        void onFrame(byte[] buffer, int offset, int length);
+    }
+
+    private final byte[] ring;
+    private final int capacity;
+    private int readIndex;
+    private int size;
+
+    // Volatile so other threads can read the counters without tearing; only the reading thread writes them.
+    private volatile long framesParsed;
+    private volatile long bytesDiscarded;
+    private volatile long oversizedFrames;
+    private volatile long overflowBytes;
+
+    public FrameParser() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public FrameParser(int capacity) {
+        if (capacity < Packet.PACKET_SIZE) {
+            throw new IllegalArgumentException("Capacity must be at least " + Packet.PACKET_SIZE + " bytes.");
+        }
+        this.capacity = capacity;
+        this.ring = new byte[capacity + Packet.PACKET_SIZE];
+    }
+
+    /**
+     * Append a chunk of received bytes and emit every frame it completes.
+     * @param bytes source array.
+     * @param offset index of the first byte to consume.
+     * @param length number of bytes to consume.
+     * @param listener receives each complete frame, header included.
+     */
+    public void feed(final byte[] bytes, final int offset, final int length, final FrameListener listener) {
+        int consumed = 0;
+        while (consumed < length) {
+            final int writable = Math.min(length - consumed, capacity - size);
+            if (writable == 0) {
+                // A full ring can only hold garbage (a frame is at most PACKET_SIZE bytes); drop the oldest byte.
+                advance(1);
+                overflowBytes++;
+                continue;
+            }
+            for (int i = 0; i < writable; i++) {
+                put(bytes[offset + consumed + i]);
+            }
+            consumed += writable;
+            parse(listener);
+        }
+    }
+
+    /**
+     * Discard any buffered partial frame.
+     */
+    public void reset() {
+        readIndex = 0;
+        size = 0;
+    }
+
+    /**
+     * Number of bytes held waiting for the rest of a frame.
+     * @return number of buffered bytes.
+     */
+    public int buffered() {
+        return size;
+    }
+
+    public long getFramesParsed() {
+        return framesParsed;
+    }
+
+    /**
+     * Bytes skipped while searching for a frame header.
+     * @return number of discarded bytes.
+     */
+    public long getBytesDiscarded() {
+        return bytesDiscarded;
+    }
+
+    /**
+     * Headers that announced a payload larger than {@link #MAX_PAYLOAD_SIZE} and were skipped.
+     * @return number of rejected headers.
+     */
+    public long getOversizedFrames() {
+        return oversizedFrames;
+    }
+
+    public long getOverflowBytes() {
+        return overflowBytes;
+    }
+
+    private void put(final byte b) {
+        int index = readIndex + size;
+        if (index >= capacity) {
+            index -= capacity;
+        }
+        ring[index] = b;
+        if (index < Packet.PACKET_SIZE) {
+            ring[capacity + index] = b;
+        }
+        size++;
+    }
+
+    private byte peek(final int position) {
+        // readIndex < capacity and position < PACKET_SIZE, so the mirror keeps this in bounds.
+        return ring[readIndex + position];
+    }
+
+    private void advance(final int count) {
+        readIndex += count;
+        if (readIndex >= capacity) {
+            readIndex -= capacity;
+        }
+        size -= count;
+    }
+
+    private void parse(final FrameListener listener) {
+        while (size > 0) {
+            if (peek(0) != Packet.PACKET_HEADER_BYTE_0) {
+                advance(1);
+                bytesDiscarded++;
+                continue;
+            }
+            if (size < 2) {
+                return;
+            }
+            if (peek(1) != Packet.PACKET_HEADER_BYTE_1) {
+                advance(1);
+                bytesDiscarded++;
+                continue;
+            }
+            if (size < Packet.MESSAGE_HEADER_SIZE) {
+                return;
+            }
+            final int payloadSize = peek(Packet.MESSAGE_SIZE_INDEX) & 0xFF;
+            if (payloadSize > MAX_PAYLOAD_SIZE) {
+                // Not a real header; resynchronise on the next byte.
+                advance(1);
+                bytesDiscarded++;
+                oversizedFrames++;
+                continue;
+            }
+            final int frameSize = Packet.MESSAGE_HEADER_SIZE + payloadSize;
+            if (size < frameSize) {
+                return;
+            }
+            framesParsed++;
+            listener.onFrame(ring, readIndex, frameSize);
+            advance(frameSize);
+        }
+    }
+}
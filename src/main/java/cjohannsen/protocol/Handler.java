@@ -4,4 +4,13 @@ public interface Handler {
 
     void handle(MessageType.Datagram type, byte[] message, Payload.Provider provider);
 
+    /**
+     * Handle a packet in place.  The packet is only valid for the duration of the call.  The default copies the
+     * payload out and delegates to {@link #handle(MessageType.Datagram, byte[], Payload.Provider)}; handlers on the
+     * hot path should override this and read straight from {@link Packet#getBuffer()}.
+     */
+    default void handle(Packet packet, Payload.Provider provider) {
+        handle(packet.getDatagram(), packet.getPayload(), provider);
+    }
+
 }
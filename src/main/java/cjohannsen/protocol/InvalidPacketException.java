@@ -1,11 +1,41 @@
 package cjohannsen.protocol;
 
 public class InvalidPacketException extends ProtocolException {
+
+    /**
+     * Why a frame was rejected.
+     */
+    public enum Reason {
+        /** Shorter than the message header. */
+        SHORT_FRAME,
+        /** Does not start with the 0xAA 0x50 header bytes. */
+        MISSING_HEADER,
+        /** Declares a payload larger than a packet can hold. */
+        OVERSIZED_PAYLOAD,
+        /** Declares more payload than the frame carries. */
+        TRUNCATED_FRAME,
+        /** Not the fixed length the decoder expects. */
+        WRONG_LENGTH,
+        UNKNOWN
+    }
+
+    private final Reason reason;
+
     public InvalidPacketException() {
         super();
+        this.reason = Reason.UNKNOWN;
     }
 
     public InvalidPacketException(String message) {
+        this(Reason.UNKNOWN, message);
+    }
+
+    public InvalidPacketException(Reason reason, String message) {
         super(message);
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
     }
 }
@@ -1,5 +1,7 @@
 package cjohannsen.protocol;
 
+import java.util.Arrays;
+
 /** Constants for inbound and outbound message IDs.
  */
 public class MessageType {
@@ -50,13 +52,23 @@ public class MessageType {
 
         UNDEFINED(Integer.MAX_VALUE);
 
-        public static final Command from(int value) {
-            for(Command c : Command.values()) {
-                if (c.value == value) {
-                    return c;
+        private static final Command[] BY_VALUE = new Command[256];
+        static {
+            Arrays.fill(BY_VALUE, UNDEFINED);
+            for (Command c : Command.values()) {
+                if (c != UNDEFINED) {
+                    BY_VALUE[c.value] = c;
                 }
             }
-            return UNDEFINED;
+        }
+
+        /**
+         * Look up a command by its type byte.  Constant time and allocation free.
+         * @param value the type byte, 0-255.
+         * @return the matching command, or UNDEFINED.
+         */
+        public static final Command from(int value) {
+            return value >= 0 && value < BY_VALUE.length ? BY_VALUE[value] : UNDEFINED;
         }
 
         private final int value;
@@ -172,13 +184,23 @@ public class MessageType {
 
         UNDEFINED(Integer.MAX_VALUE);
 
-        public static final Datagram from(int value) {
-            for(Datagram d : Datagram.values()) {
-                if (d.value == value) {
-                    return d;
+        private static final Datagram[] BY_VALUE = new Datagram[256];
+        static {
+            Arrays.fill(BY_VALUE, UNDEFINED);
+            for (Datagram d : Datagram.values()) {
+                if (d != UNDEFINED) {
+                    BY_VALUE[d.value] = d;
                 }
             }
-            return UNDEFINED;
+        }
+
+        /**
+         * Look up a datagram by its type byte.  Constant time and allocation free.
+         * @param value the type byte, 0-255.
+         * @return the matching datagram, or UNDEFINED.
+         */
+        public static final Datagram from(int value) {
+            return value >= 0 && value < BY_VALUE.length ? BY_VALUE[value] : UNDEFINED;
         }
 
         private final int value;
@@ -187,6 +209,37 @@ public class MessageType {
         public boolean equals(Datagram d) {
             return d.value == this.value;
         }
+        /**
+         * Whether this channel carries continuously sampled state, where only the newest value matters, as opposed
+         * to discrete events that must each be delivered.
+         * @return true for channels that may be conflated.
+         */
+        public boolean isContinuous() {
+            switch (this) {
+                case ALTITUDE_MESSAGE:
+                case APSIDES_MESSAGE:
+                case LF_MESSAGE:
+                case LF_STAGE_MESSAGE:
+                case OX_MESSAGE:
+                case OX_STAGE_MESSAGE:
+                case SF_MESSAGE:
+                case SF_STAGE_MESSAGE:
+                case MONO_MESSAGE:
+                case ELECTRIC_MESSAGE:
+                case EVA_MESSAGE:
+                case ORE_MESSAGE:
+                case AB_MESSAGE:
+                case AB_STAGE_MESSAGE:
+                case VELOCITY_MESSAGE:
+                case APSIDESTIME_MESSAGE:
+                case TARGETINFO_MESSAGE:
+                case AIRSPEED_MESSAGE:
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
         public String printableString() {
             switch (this) {
                 case SYNC_MESSAGE:
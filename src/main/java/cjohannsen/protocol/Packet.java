@@ -1,5 +1,15 @@
 package cjohannsen.protocol;
 
+import java.util.Arrays;
+
+/**
+ * A received KerbalSimpit frame.  A packet is a view over a frame held in a byte array: {@link #getBuffer()},
+ * {@link #getPayloadOffset()} and {@link #getPayloadLength()} locate the payload without copying it.
+ *
+ * Packets handed out by a {@link PacketPool} own a {@link #PACKET_SIZE} byte frame buffer that is reused for every
+ * frame loaded into them.  Consumers of pooled packets must call {@link #release()} once they are done, after which
+ * neither the packet nor its buffer may be touched.
+ */
 public class Packet {
 
     public static final int PACKET_SIZE = 36;
@@ -12,21 +22,180 @@ public class Packet {
     public static final int MESSAGE_SIZE_INDEX = 2;
     public static final int MESSAGE_TYPE_INDEX = 3;
 
+    private final PacketPool pool;
+    private final byte[] frame;
+
     private MessageType.Datagram datagram;
-    private byte[] payload;
+    private byte[] buffer;
+    private int offset;
+    private int length;
+
+    private long firstByteNanos;
+    private long frameNanos;
+    private long dispatchNanos;
+
+    /** Intrusive link used by {@link PacketPool}. */
+    Packet next;
+    boolean pooled;
+
+    Packet(final PacketPool pool) {
+        this.pool = pool;
+        this.frame = pool != null ? new byte[PACKET_SIZE] : null;
+    }
 
     public MessageType.Datagram getDatagram() {
         return datagram;
     }
 
+    /**
+     * The raw type byte of the frame, 0-255.
+     * @return the unsigned message type.
+     */
+    public int getType() {
+        return buffer[offset + MESSAGE_TYPE_INDEX] & 0xFF;
+    }
+
+    /**
+     * Copy the payload out of the frame.  This allocates; hot paths should read the payload in place through
+     * {@link #getBuffer()}, {@link #getPayloadOffset()} and {@link #getPayloadLength()}.
+     * @return a copy of the payload bytes.
+     */
     public byte[] getPayload() {
-        return payload;
+        final int payloadOffset = getPayloadOffset();
+        return Arrays.copyOfRange(buffer, payloadOffset, payloadOffset + getPayloadLength());
     }
 
-    private Packet(final MessageType.Datagram datagram, final byte[] payload) {
-        this.datagram = datagram;
-        this.payload = payload;
-    };
+    /**
+     * The array holding the frame.  Only valid until the packet is released.
+     * @return the backing array.
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    public int getPayloadOffset() {
+        return offset + MESSAGE_HEADER_SIZE;
+    }
+
+    public int getPayloadLength() {
+        return length - MESSAGE_HEADER_SIZE;
+    }
+
+    public int getFrameOffset() {
+        return offset;
+    }
+
+    public int getFrameLength() {
+        return length;
+    }
+
+    /**
+     * {@link System#nanoTime()} when the read holding the first byte of this frame returned.
+     * @return the timestamp, or 0 if the packet was not received from a link.
+     */
+    public long getFirstByteNanos() {
+        return firstByteNanos;
+    }
+
+    /**
+     * {@link System#nanoTime()} when the frame was complete.
+     * @return the timestamp, or 0 if the packet was not received from a link.
+     */
+    public long getFrameNanos() {
+        return frameNanos;
+    }
+
+    /**
+     * {@link System#nanoTime()} when the dispatcher took the packet.
+     * @return the timestamp, or 0 if not yet dispatched.
+     */
+    public long getDispatchNanos() {
+        return dispatchNanos;
+    }
+
+    /**
+     * Stamp the receive times.
+     * @param firstByteNanos when the first byte of the frame was read.
+     * @param frameNanos when the frame was complete.
+     */
+    public void setReceiveNanos(final long firstByteNanos, final long frameNanos) {
+        this.firstByteNanos = firstByteNanos;
+        this.frameNanos = frameNanos;
+    }
+
+    public void setDispatchNanos(final long dispatchNanos) {
+        this.dispatchNanos = dispatchNanos;
+    }
+
+    /**
+     * Point this packet at a frame in an existing array without copying it.
+     * @param buffer array holding the frame.
+     * @param offset index of the first header byte.
+     * @param length length of the frame, header included.
+     * @return this packet.
+     * @throws InvalidPacketException if the slice does not hold a valid frame.
+     */
+    public Packet wrap(final byte[] buffer, final int offset, final int length) throws InvalidPacketException {
+        //   0xAA
+        //   0x50
+        //   MESSAGE_SIZE
+        //   MESSAGE_TYPE
+        //   PAYLOAD
+
+        if (length < MESSAGE_HEADER_SIZE) {
+            throw new InvalidPacketException(InvalidPacketException.Reason.SHORT_FRAME, "Invalid length - frame is " + length + " bytes, shorter than the " + MESSAGE_HEADER_SIZE + " byte header.");
+        }
+
+        // First, validate the header
+        if (buffer[offset] != PACKET_HEADER_BYTE_0 || buffer[offset + 1] != PACKET_HEADER_BYTE_1) {
+            throw new InvalidPacketException(InvalidPacketException.Reason.MISSING_HEADER, "Missing header bytes.");
+        }
+
+        final int payloadSize = buffer[offset + MESSAGE_SIZE_INDEX] & 0xFF;
+        if (payloadSize > PACKET_SIZE - MESSAGE_HEADER_SIZE) {
+            throw new InvalidPacketException(InvalidPacketException.Reason.OVERSIZED_PAYLOAD, "Invalid length - Payload size is " + payloadSize + ", which exceeds the maximum of " + (PACKET_SIZE - MESSAGE_HEADER_SIZE));
+        }
+        if (payloadSize > length - MESSAGE_HEADER_SIZE) {
+            throw new InvalidPacketException(InvalidPacketException.Reason.TRUNCATED_FRAME, "Truncated frame - Payload size is " + payloadSize + ", but only " + (length - MESSAGE_HEADER_SIZE) + " bytes follow the header.");
+        }
+
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = MESSAGE_HEADER_SIZE + payloadSize;
+        this.datagram = MessageType.Datagram.from(buffer[offset + MESSAGE_TYPE_INDEX] & 0xFF);
+        this.firstByteNanos = 0;
+        this.frameNanos = 0;
+        this.dispatchNanos = 0;
+        return this;
+    }
+
+    /**
+     * Copy a frame into this packet's own buffer.  Only pooled packets own a buffer.
+     * @param source array holding the frame.
+     * @param offset index of the first header byte.
+     * @param length length of the frame, header included.
+     * @return this packet.
+     * @throws InvalidPacketException if the slice does not hold a valid frame.
+     */
+    public Packet load(final byte[] source, final int offset, final int length) throws InvalidPacketException {
+        if (frame == null) {
+            throw new IllegalStateException("Only pooled packets can load frames.");
+        }
+        if (length > PACKET_SIZE) {
+            throw new InvalidPacketException(InvalidPacketException.Reason.WRONG_LENGTH, "Invalid length - frame is " + length + " bytes, which exceeds the maximum of " + PACKET_SIZE);
+        }
+        System.arraycopy(source, offset, frame, 0, length);
+        return wrap(frame, 0, length);
+    }
+
+    /**
+     * Return this packet to the pool it came from.  Packets that were not pooled are left to the garbage collector.
+     */
+    public void release() {
+        if (pool != null) {
+            pool.release(this);
+        }
+    }
 
     public static final byte[] encodePacket(MessageType.Command command, final byte payload) {
         byte[] bytes = {payload};
@@ -53,33 +222,23 @@ public class Packet {
     }
 
     public static final Packet decodePacket(final byte[] payload) throws InvalidPacketException {
-        //   0xAA
-        //   0x50
-        //   MESSAGE_SIZE
-        //   MESSAGE_TYPE
-        //   PAYLOAD
-
         // Sanity check: is the payload long enough for a message?  It must have at least 5 bytes to be a valid message.
         if (payload.length != PACKET_SIZE) {
-            throw new InvalidPacketException("Invalid length - packet is " + payload.length + ", not " + PACKET_SIZE + " in size.");
-        }
-
-        // First, validate the header
-        if (payload[0] != PACKET_HEADER_BYTE_0 || payload[1] != PACKET_HEADER_BYTE_1) {
-            throw new InvalidPacketException("Missing header bytes.");
-        }
-
-        final int payloadSize = payload[MESSAGE_SIZE_INDEX];
-        if (payloadSize > PACKET_SIZE - MESSAGE_HEADER_SIZE) {
-            throw new InvalidPacketException("Invalid length - Payload size is " + payloadSize + ", which exceeds the maximum of " + (PACKET_SIZE - MESSAGE_HEADER_SIZE));
+            throw new InvalidPacketException(InvalidPacketException.Reason.WRONG_LENGTH, "Invalid length - packet is " + payload.length + ", not " + PACKET_SIZE + " in size.");
         }
+        return decodePacket(payload, 0, payload.length);
+    }
 
-        final byte messageType = payload[MESSAGE_TYPE_INDEX];
-
-        final byte[] message = new byte[payloadSize];
-        for(int i = 0; i < payloadSize; i++) {
-            message[i] = payload[i + MESSAGE_HEADER_SIZE];
-        }
-        return new Packet(MessageType.Datagram.from(messageType), message);
+    /**
+     * Decode a frame into a new, unpooled packet holding its own copy of the bytes.
+     * @param buffer array holding the frame.
+     * @param offset index of the first header byte.
+     * @param length length of the frame, header included.
+     * @return a new packet.
+     * @throws InvalidPacketException if the slice does not hold a valid frame.
+     */
+    public static final Packet decodePacket(final byte[] buffer, final int offset, final int length) throws InvalidPacketException {
+        final Packet packet = new Packet(null).wrap(buffer, offset, length);
+        return packet.wrap(Arrays.copyOfRange(buffer, offset, offset + packet.getFrameLength()), 0, packet.getFrameLength());
     }
 }
@@ -0,0 +1,69 @@
+package cjohannsen.protocol;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A free list of reusable {@link Packet}s, so the receive path does not allocate per frame once it has warmed up.
+ *
+ * The free list is a lock-free stack linked through the packets themselves.  Any thread may release a packet, but
+ * only one thread (the serial reader) may acquire them; with a single popper the stack cannot suffer from ABA.
+ * When the list runs dry a new packet is allocated, so the pool grows to the peak number of packets in flight and
+ * then stays there.
+ */
+public class PacketPool {
+
+    private final AtomicReference<Packet> free = new AtomicReference<>();
+    private final AtomicLong allocated = new AtomicLong();
+
+    public PacketPool(final int initialSize) {
+        for (int i = 0; i < initialSize; i++) {
+            release(newPacket());
+        }
+    }
+
+    /**
+     * Take a packet from the pool, allocating one if none are free.  Must only be called from a single thread.
+     * @return a packet ready to {@link Packet#load(byte[], int, int) load} a frame.
+     */
+    public Packet acquire() {
+        while (true) {
+            final Packet head = free.get();
+            if (head == null) {
+                return newPacket();
+            }
+            if (free.compareAndSet(head, head.next)) {
+                head.next = null;
+                head.pooled = false;
+                return head;
+            }
+        }
+    }
+
+    void release(final Packet packet) {
+        if (packet.pooled) {
+            throw new IllegalStateException("Packet released twice.");
+        }
+        packet.pooled = true;
+        while (true) {
+            final Packet head = free.get();
+            packet.next = head;
+            if (free.compareAndSet(head, packet)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Total number of packets this pool has created.  Stops growing once the pool covers the peak in-flight count.
+     * @return number of packets allocated.
+     */
+    public long getAllocatedCount() {
+        return allocated.get();
+    }
+
+    private Packet newPacket() {
+        allocated.incrementAndGet();
+        return new Packet(this);
+    }
+}
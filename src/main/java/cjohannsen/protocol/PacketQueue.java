@@ -0,0 +1,47 @@
+package cjohannsen.protocol;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands received packets from the serial reader thread to the dispatcher thread.  Implementations support exactly
+ * one producer and one consumer.
+ */
+public interface PacketQueue {
+
+    /**
+     * Enqueue a packet.  Producer thread only.
+     * @param packet the packet to enqueue.
+     * @return false if the packet was dropped; it has then already been released.
+     */
+    boolean offer(Packet packet);
+
+    /**
+     * Dequeue a packet without waiting.  Consumer thread only.
+     * @return the next packet, or null if none is queued.
+     */
+    Packet poll();
+
+    /**
+     * Dequeue a packet, waiting up to the given time for one to arrive.  Consumer thread only.
+     * @param timeout how long to wait.
+     * @param unit unit of the timeout.
+     * @return the next packet, or null if none arrived in time.
+     */
+    Packet poll(long timeout, TimeUnit unit);
+
+    /**
+     * Dequeue a packet, waiting as long as it takes.  Consumer thread only.
+     * @return the next packet.
+     */
+    Packet take();
+
+    boolean isEmpty();
+
+    int size();
+
+    /**
+     * Packets discarded because the queue overflowed.
+     * @return number of dropped packets.
+     */
+    long getDroppedCount();
+}
@@ -1,154 +1,221 @@
 package cjohannsen.protocol;
 
 import cjohannsen.Util;
-import com.fazecast.jSerialComm.SerialPort;
+import cjohannsen.recorder.FlightRecorder;
+import cjohannsen.transport.Transport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.util.Arrays;
 import java.util.Optional;
-import java.util.concurrent.*;
-
-import static cjohannsen.protocol.PacketSource.ReceiveState.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 @Component
 public class PacketSource {
     private static final Logger logger = LoggerFactory.getLogger(PacketSource.class);
 
-    private static final int MAX_QUEUE_DEPTH = 10;
-    public static final long POLL_INTERVAL_MILLIS = 25;
-
-    private final SerialPort serialPort;
-    private final BlockingQueue<Packet> packets;
-
-    enum ReceiveState {
-        WAITING_FOR_HEADER_BYTE_0,
-        WAITING_FOR_HEADER_BYTE_1,
-        WAITING_FOR_SIZE_BYTE,
-        WAITING_FOR_TYPE_BYTE,
-        WAITING_FOR_DATA
+    public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+    /**
+     * How long a read blocks on a silent link before returning empty.  The transport wakes the reader as soon as
+     * any byte arrives, so this only bounds the idle wakeup rate, not the receive latency.
+     */
+    public static final int IDLE_READ_TIMEOUT_MILLIS = 1000;
+    public static final int READ_BUFFER_SIZE = 256;
+
+    private final Transport transport;
+    private final PacketQueue packets;
+    private final byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+    private final FrameParser frameParser = new FrameParser();
+    private final FrameParser.FrameListener frameListener = this::enqueue;
+    private final PacketPool packetPool;
+    private final FlightRecorder flightRecorder;
+
+    private final AtomicLong readCount = new AtomicLong();
+    private final AtomicLong idleWakeupCount = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLongArray receivedCounts = new AtomicLongArray(256);
+    /** When the read that returned the first byte of the next frame to complete returned; reader thread only. */
+    private long frameStartNanos;
+    /** When the first byte of the partial frame left in the parser was read; reader thread only. */
+    private long carriedSinceNanos;
+    private long readNanos;
+
+    private final AtomicLongArray invalidCounts = new AtomicLongArray(InvalidPacketException.Reason.values().length);
+
+    public PacketSource(Transport transport) {
+        this(transport, DEFAULT_QUEUE_CAPACITY, RingPacketQueue.OverflowPolicy.DROP_OLDEST, false, new FlightRecorder());
     }
 
-
+    /**
+     * @param transport the link to read.
+     * @param queueCapacity capacity of the queue to the dispatcher.
+     * @param overflowPolicy what to do when the dispatcher falls behind and the queue fills.
+     * @param conflate keep only the newest unprocessed packet on continuous telemetry channels.
+     * @param flightRecorder recorder handed every raw frame received.
+     */
     @Autowired
-    public PacketSource(SerialPort serialPort) {
-        this.serialPort = serialPort;
-        packets = new LinkedBlockingQueue<>();
+    public PacketSource(Transport transport,
+                        @Value("${simpit.packets.queue-capacity:" + DEFAULT_QUEUE_CAPACITY + "}") int queueCapacity,
+                        @Value("${simpit.packets.overflow-policy:DROP_OLDEST}") RingPacketQueue.OverflowPolicy overflowPolicy,
+                        @Value("${simpit.packets.conflate:false}") boolean conflate,
+                        FlightRecorder flightRecorder) {
+        this.transport = transport;
+        this.flightRecorder = flightRecorder;
+        if (conflate) {
+            this.packets = new ConflatingPacketQueue(queueCapacity, overflowPolicy);
+        } else {
+            this.packets = new RingPacketQueue(queueCapacity, overflowPolicy);
+        }
+        // One packet being filled by the reader and one being handled by the dispatcher, on top of a full queue.
+        // Conflated channels hold at most one more packet each; the pool grows to cover them on first use.
+        this.packetPool = new PacketPool(queueCapacity + 2);
     }
 
+    /**
+     * Take the next packet, blocking until one arrives.  The caller must {@link Packet#release() release} it.
+     * @return the next packet.
+     */
     public Packet next() {
         return next(Optional.empty()).get();
     }
 
+    /**
+     * Take the next packet, waiting up to the given time if one is supplied.  The caller must
+     * {@link Packet#release() release} any packet returned.
+     * @param timeoutMillis how long to wait, or empty to wait indefinitely.
+     * @return the next packet, or empty if the timeout expired first.
+     */
     public Optional<Packet> next(Optional<Integer> timeoutMillis) {
-        Packet packet = null;
-        while(packet == null) {
-            try {
-                if (timeoutMillis.isPresent()) {
-                    packet = packets.poll(timeoutMillis.get(), TimeUnit.MILLISECONDS);
-                }
-                else {
-                    packet = packets.take();
-                }
-            } catch (InterruptedException e) {
-            }
+        final Packet packet;
+        if (timeoutMillis.isPresent()) {
+            packet = packets.poll(timeoutMillis.get(), TimeUnit.MILLISECONDS);
+        }
+        else {
+            packet = packets.take();
         }
         if (packet != null) {
-            logger.trace("Packet: " + packet.getDatagram());
+            logger.trace("Packet: {}", packet.getDatagram());
         }
         return Optional.ofNullable(packet);
     }
 
+    /**
+     * The queue between the reader and the dispatcher, for depth and drop accounting.
+     * @return the inbound packet queue.
+     */
+    public PacketQueue getQueue() {
+        return packets;
+    }
+
+    /**
+     * Number of reads that returned data.
+     * @return the number of reads that returned data.
+     */
+    public long getReadCount() {
+        return readCount.get();
+    }
+
+    /**
+     * Number of times the reader woke up on a silent link.  With no traffic this grows by one every
+     * {@link #IDLE_READ_TIMEOUT_MILLIS}.
+     * @return the number of reads that timed out without data.
+     */
+    public long getIdleWakeupCount() {
+        return idleWakeupCount.get();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    /**
+     * Valid frames received on a channel, whether or not the queue kept them.
+     * @param type the channel.
+     * @return the number of frames received.
+     */
+    public long getReceivedCount(final MessageType.Datagram type) {
+        return type == MessageType.Datagram.UNDEFINED ? 0 : receivedCounts.get(type.getValue());
+    }
+
+    /**
+     * Frames the parser delimited but that failed validation.
+     * @param reason why the frames were rejected.
+     * @return the number of rejected frames.
+     */
+    public long getInvalidCount(final InvalidPacketException.Reason reason) {
+        return invalidCounts.get(reason.ordinal());
+    }
+
+    /**
+     * Bytes skipped while looking for a frame header, including the bytes of oversized frames.
+     * @return the number of discarded bytes.
+     */
+    public long getBytesDiscarded() {
+        return frameParser.getBytesDiscarded();
+    }
+
+    public long getOversizedFrameCount() {
+        return frameParser.getOversizedFrames();
+    }
+
     public void start() {
         logger.info("Packet source starting.");
+        flightRecorder.start();
+        transport.setReadTimeout(IDLE_READ_TIMEOUT_MILLIS);
         Executors.newSingleThreadExecutor().execute(() -> {
             while (true) {
-                try {
-                    final Packet packet = waitForPacket();
-                    logger.debug("New packet: " + packet.getDatagram());
-                    packets.add(packet);
-                    while (packets.size() > MAX_QUEUE_DEPTH) {
-                        packets.remove();
-                    }
-                } catch (InvalidPacketException e) {
-                    logger.trace("Invalid packet:" + e.getMessage());
-                }
+                receive();
             }
         });
     }
 
-    private Packet waitForPacket() throws InvalidPacketException {
-        final byte[] buffer = new byte[Packet.PACKET_SIZE];
-        int bufferIndex = 0;
-        ReceiveState receiveState = WAITING_FOR_HEADER_BYTE_0;
-        boolean complete = false;
-        int payloadSize = 0;
-        int payloadBytesRead = 0;
-        while(!complete) {
-            while (serialPort.bytesAvailable() == 0) {
-                try {
-                    Thread.sleep(POLL_INTERVAL_MILLIS);
-                } catch (InterruptedException e) {
-                    // NO-OP
-                }
-            }
-            final int bytesAvailable = serialPort.bytesAvailable();
-            logger.trace(bytesAvailable + " bytes available.");
-
-            byte[] incomingBytes = new byte[bytesAvailable];
-            int bytesRead = serialPort.readBytes(incomingBytes, bytesAvailable);
-
-            logger.debug("Incoming data: " + Util.hexString(incomingBytes));
-
-            for (int i = 0; i < bytesRead; i++) {
-                switch (receiveState) {
-                    case WAITING_FOR_HEADER_BYTE_0:
-                        if (incomingBytes[i] != Packet.PACKET_HEADER_BYTE_0) {
-                            continue;
-                        } else {
-                            buffer[bufferIndex++] = incomingBytes[i];
-                            receiveState = WAITING_FOR_HEADER_BYTE_1;
-                        }
-                        break;
-                    case WAITING_FOR_HEADER_BYTE_1:
-                        if (incomingBytes[i] != Packet.PACKET_HEADER_BYTE_1) {
-                            receiveState = WAITING_FOR_HEADER_BYTE_0;
-                            bufferIndex = 0;
-                            continue;
-                        } else {
-                            buffer[bufferIndex++] = incomingBytes[i];
-                            receiveState = WAITING_FOR_SIZE_BYTE;
-                        }
-                        break;
-                    case WAITING_FOR_SIZE_BYTE:
-                        payloadSize = incomingBytes[i];
-                        buffer[bufferIndex++] = incomingBytes[i];
-                        receiveState = WAITING_FOR_TYPE_BYTE;
-                        break;
-                    case WAITING_FOR_TYPE_BYTE:
-                        buffer[bufferIndex++] = incomingBytes[i];
-                        receiveState = WAITING_FOR_DATA;
-                        break;
-                    case WAITING_FOR_DATA:
-                        if (payloadBytesRead >= payloadSize) {
-                            complete = true;
-                            break;
-                        }
-                        if (bufferIndex <= Packet.PACKET_SIZE) {
-                            buffer[bufferIndex++] = incomingBytes[i];
-                        }
-                        payloadBytesRead++;
-                        break;
-                }
-
-                if (complete || bufferIndex >= Packet.PACKET_SIZE) {
-                    break;
-                }
-            }
+    /** One read from the transport, and every frame it completes.  Package-private for the receive benchmark. */
+    void receive() {
+        // Semi-blocking read: returns as soon as at least one byte is available, or empty after the idle timeout.
+        final int bytesRead = transport.read(readBuffer, readBuffer.length);
+        if (bytesRead <= 0) {
+            idleWakeupCount.incrementAndGet();
+            return;
         }
-        logger.debug("packet complete, read payload bytes " + payloadBytesRead + ": " + Util.hexString(buffer));
+        readNanos = System.nanoTime();
+        readCount.incrementAndGet();
+        bytesReceived.addAndGet(bytesRead);
 
-        return Packet.decodePacket(buffer);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Incoming data: " + Util.hexString(Arrays.copyOf(readBuffer, bytesRead)));
+        }
+        // A frame completed by this read started either in a partial frame carried over from earlier reads, or here.
+        frameStartNanos = frameParser.buffered() > 0 ? carriedSinceNanos : readNanos;
+        frameParser.feed(readBuffer, 0, bytesRead, frameListener);
+        if (frameParser.buffered() > 0) {
+            carriedSinceNanos = frameStartNanos;
+        }
+    }
+
+    private void enqueue(final byte[] buffer, final int offset, final int length) {
+        final long frameNanos = System.nanoTime();
+        final long firstByteNanos = frameStartNanos;
+        frameStartNanos = readNanos;
+        flightRecorder.record(buffer, offset, length);
+        final Packet packet = packetPool.acquire();
+        try {
+            packet.load(buffer, offset, length);
+        } catch (InvalidPacketException e) {
+            logger.trace("Invalid packet:" + e.getMessage());
+            invalidCounts.incrementAndGet(e.getReason().ordinal());
+            packet.release();
+            return;
+        }
+        receivedCounts.incrementAndGet(packet.getType());
+        packet.setReceiveNanos(firstByteNanos, frameNanos);
+        logger.debug("New packet: {}", packet.getDatagram());
+        packets.offer(packet);
     }
 }
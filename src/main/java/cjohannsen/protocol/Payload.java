@@ -19,6 +19,47 @@ public abstract class Payload {
 
     public static final double MAX_DELTA = 0.000001;
 
+    /**
+     * The provider that decodes payloads received on a datagram channel.
+     * @param type the channel.
+     * @return the provider, or null for channels that carry no telemetry payload (sync, echo, scene change).
+     */
+    public static Provider providerFor(final MessageType.Datagram type) {
+        switch (type) {
+            case ALTITUDE_MESSAGE:
+                return AltitudeMessage::from;
+            case APSIDES_MESSAGE:
+                return ApsidesMessage::from;
+            case LF_MESSAGE:
+            case LF_STAGE_MESSAGE:
+            case OX_MESSAGE:
+            case OX_STAGE_MESSAGE:
+            case SF_MESSAGE:
+            case SF_STAGE_MESSAGE:
+            case MONO_MESSAGE:
+            case ELECTRIC_MESSAGE:
+            case EVA_MESSAGE:
+            case ORE_MESSAGE:
+            case AB_MESSAGE:
+            case AB_STAGE_MESSAGE:
+                return ResourceMessage::from;
+            case VELOCITY_MESSAGE:
+                return VelocityMessage::from;
+            case ACTIONSTATUS_MESSAGE:
+                return ActionGroupMessage::from;
+            case APSIDESTIME_MESSAGE:
+                return ApsidesTimeMessage::from;
+            case TARGETINFO_MESSAGE:
+                return TargetMessage::from;
+            case SOI_MESSAGE:
+                return SphereOfInfluenceMessage::from;
+            case AIRSPEED_MESSAGE:
+                return AirspeedMessage::from;
+            default:
+                return null;
+        }
+    }
+
     private final byte[] bytes;
 
     @Override
@@ -42,6 +83,82 @@ public abstract class Payload {
         this.bytes = bytes;
     }
 
+    /**
+     * Read a little-endian 32-bit float without allocating.
+     * @param bytes source array.
+     * @param offset index of the first byte.
+     * @return the decoded float.
+     */
+    public static float readFloatLE(final byte[] bytes, final int offset) {
+        return Float.intBitsToFloat(readIntLE(bytes, offset));
+    }
+
+    /**
+     * Read a little-endian 32-bit integer without allocating.
+     * @param bytes source array.
+     * @param offset index of the first byte.
+     * @return the decoded integer.
+     */
+    public static int readIntLE(final byte[] bytes, final int offset) {
+        return (bytes[offset] & 0xFF)
+                | (bytes[offset + 1] & 0xFF) << 8
+                | (bytes[offset + 2] & 0xFF) << 16
+                | (bytes[offset + 3] & 0xFF) << 24;
+    }
+
+    /**
+     * Read a little-endian signed 16-bit integer without allocating.
+     * @param bytes source array.
+     * @param offset index of the first byte.
+     * @return the decoded value, sign extended.
+     */
+    public static short readShortLE(final byte[] bytes, final int offset) {
+        return (short) ((bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8);
+    }
+
+    /**
+     * Write a little-endian 16-bit integer without allocating.
+     * @param bytes destination array.
+     * @param offset index of the first byte.
+     * @param value the value; only the low 16 bits are written.
+     */
+    public static void writeShortLE(final byte[] bytes, final int offset, final int value) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >>> 8);
+    }
+
+    /**
+     * Write a little-endian 32-bit integer without allocating.
+     * @param bytes destination array.
+     * @param offset index of the first byte.
+     * @param value the value.
+     */
+    public static void writeIntLE(final byte[] bytes, final int offset, final int value) {
+        writeShortLE(bytes, offset, value);
+        writeShortLE(bytes, offset + 2, value >>> 16);
+    }
+
+    /**
+     * Read a little-endian 64-bit integer without allocating.
+     * @param bytes source array.
+     * @param offset index of the first byte.
+     * @return the decoded value.
+     */
+    public static long readLongLE(final byte[] bytes, final int offset) {
+        return (readIntLE(bytes, offset) & 0xFFFFFFFFL) | (long) readIntLE(bytes, offset + 4) << 32;
+    }
+
+    /**
+     * Write a little-endian 64-bit integer without allocating.
+     * @param bytes destination array.
+     * @param offset index of the first byte.
+     * @param value the value.
+     */
+    public static void writeLongLE(final byte[] bytes, final int offset, final long value) {
+        writeIntLE(bytes, offset, (int) value);
+        writeIntLE(bytes, offset + 4, (int) (value >>> 32));
+    }
+
     private static final boolean equalWithDelta(float a, float b) {
         return equalWithDelta(a, b, MAX_DELTA)
 ;    }
@@ -80,9 +197,17 @@ public abstract class Payload {
             if (bytes.length < 8) {
                 throw new IllegalArgumentException("Not enough bytes.  8 required. " + bytes.length + " sent.");
             }
-            float seaLevel = ByteBuffer.wrap(bytes, 0, 4).order(ByteOrder.LITTLE_ENDIAN).getFloat();
-            float surfaceAlt = ByteBuffer.wrap(bytes, 4, 4).order(ByteOrder.LITTLE_ENDIAN).getFloat();
-            return new AltitudeMessage(seaLevel, surfaceAlt, bytes);
+            return new AltitudeMessage(sealevel(bytes, 0), surface(bytes, 0), bytes);
+        }
+
+        /** Read the sea level altitude of a payload starting at offset, without allocating. */
+        public static float sealevel(byte[] bytes, int offset) {
+            return readFloatLE(bytes, offset);
+        }
+
+        /** Read the surface altitude of a payload starting at offset, without allocating. */
+        public static float surface(byte[] bytes, int offset) {
+            return readFloatLE(bytes, offset + 4);
         }
     }
 
@@ -115,9 +240,17 @@ public abstract class Payload {
             if (bytes.length < 8) {
                 throw new IllegalArgumentException("Not enough bytes.  8 required. " + bytes.length + " sent.");
             }
-            float periapsis = ByteBuffer.wrap(bytes, 0, 4).order(ByteOrder.LITTLE_ENDIAN).getFloat();
-            float apoapsis = ByteBuffer.wrap(bytes, 4, 4).order(ByteOrder.LITTLE_ENDIAN).getFloat();
-            return new ApsidesMessage(periapsis, apoapsis, bytes);
+            return new ApsidesMessage(periapsis(bytes, 0), apoapsis(bytes, 0), bytes);
+        }
+
+        /** Read the periapsis of a payload starting at offset, without allocating. */
+        public static float periapsis(byte[] bytes, int offset) {
+            return readFloatLE(bytes, offset);
+        }
+
+        /** Read the apoapsis of a payload starting at offset, without allocating. */
+        public static float apoapsis(byte[] bytes, int offset) {
+            return readFloatLE(bytes, offset + 4);
         }
     }
 
@@ -136,9 +269,17 @@ public abstract class Payload {
             if (bytes.length < 8) {
                 throw new IllegalArgumentException("Not enough bytes.  8 required. " + bytes.length + " sent.");
             }
-            int periapsis = ByteBuffer.wrap(bytes, 0, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
-            int apoapsis = ByteBuffer.wrap(bytes, 4, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
-            return new ApsidesTimeMessage(periapsis, apoapsis, bytes);
+            return new ApsidesTimeMessage(periapsis(bytes, 0), apoapsis(bytes, 0), bytes);
+        }
+
+        /** Read the time to periapsis of a payload starting at offset, without allocating. */
+        public static int periapsis(byte[] bytes, int offset) {
+            return readIntLE(bytes, offset);
+        }
+
+        /** Read the time to apoapsis of a payload starting at offset, without allocating. */
+        public static int apoapsis(byte[] bytes, int offset) {
+            return readIntLE(bytes, offset + 4);
         }
 
         @Override
@@ -171,9 +312,17 @@ public abstract class Payload {
             if (bytes.length < 8) {
                 throw new IllegalArgumentException("Not enough bytes.  8 required. " + bytes.length + " sent.");
             }
-            float total = ByteBuffer.wrap(bytes, 0, 4).order(ByteOrder.LITTLE_ENDIAN).getFloat();
-            float available = ByteBuffer.wrap(bytes, 4, 4).order(ByteOrder.LITTLE_ENDIAN).getFloat();
-            return new ResourceMessage(total, available, bytes);
+            return new ResourceMessage(total(bytes, 0), available(bytes, 0), bytes);
+        }
+
+        /** Read the resource capacity of a payload starting at offset, without allocating. */
+        public static float total(byte[] bytes, int offset) {
+            return readFloatLE(bytes, offset);
+        }
+
+        /** Read the resource level of a payload starting at offset, without allocating. */
+        public static float available(byte[] bytes, int offset) {
+            return readFloatLE(bytes, offset + 4);
         }
 
         @Override
@@ -207,10 +356,22 @@ public abstract class Payload {
             if (bytes.length < 12) {
                 throw new IllegalArgumentException("Not enough bytes.  12 required. " + bytes.length + " sent.");
             }
-            float orbital = ByteBuffer.wrap(bytes, 0, 4).order(ByteOrder.LITTLE_ENDIAN).getFloat();
-            float surface = ByteBuffer.wrap(bytes, 4, 4).order(ByteOrder.LITTLE_ENDIAN).getFloat();
-            float vertical = ByteBuffer.wrap(bytes, 8, 4).order(ByteOrder.LITTLE_ENDIAN).getFloat();
-            return new VelocityMessage(orbital, surface, vertical, bytes);
+            return new VelocityMessage(orbital(bytes, 0), surface(bytes, 0), vertical(bytes, 0), bytes);
+        }
+
+        /** Read the orbital velocity of a payload starting at offset, without allocating. */
+        public static float orbital(byte[] bytes, int offset) {
+            return readFloatLE(bytes, offset);
+        }
+
+        /** Read the surface velocity of a payload starting at offset, without allocating. */
+        public static float surface(byte[] bytes, int offset) {
+            return readFloatLE(bytes, offset + 4);
+        }
+
+        /** Read the vertical velocity of a payload starting at offset, without allocating. */
+        public static float vertical(byte[] bytes, int offset) {
+            return readFloatLE(bytes, offset + 8);
         }
 
         @Override
@@ -252,9 +413,17 @@ public abstract class Payload {
         }
 
         public static TargetMessage from(byte[] bytes) {
-            float distance = ByteBuffer.wrap(bytes, 0, 4).order(ByteOrder.LITTLE_ENDIAN).getFloat();
-            float velocity = ByteBuffer.wrap(bytes, 4, 4).order(ByteOrder.LITTLE_ENDIAN).getFloat();
-            return new TargetMessage(distance, velocity, bytes);
+            return new TargetMessage(distance(bytes, 0), velocity(bytes, 0), bytes);
+        }
+
+        /** Read the target distance of a payload starting at offset, without allocating. */
+        public static float distance(byte[] bytes, int offset) {
+            return readFloatLE(bytes, offset);
+        }
+
+        /** Read the target relative velocity of a payload starting at offset, without allocating. */
+        public static float velocity(byte[] bytes, int offset) {
+            return readFloatLE(bytes, offset + 4);
         }
     }
 
@@ -283,9 +452,17 @@ public abstract class Payload {
         }
 
         public static AirspeedMessage from(byte[] bytes) {
-            float ias = ByteBuffer.wrap(bytes, 0, 4).order(ByteOrder.LITTLE_ENDIAN).getFloat();
-            float mach = ByteBuffer.wrap(bytes, 4, 4).order(ByteOrder.LITTLE_ENDIAN).getFloat();
-            return new AirspeedMessage(ias, mach, bytes);
+            return new AirspeedMessage(indicatedAirSpeed(bytes, 0), mach(bytes, 0), bytes);
+        }
+
+        /** Read the indicated airspeed of a payload starting at offset, without allocating. */
+        public static float indicatedAirSpeed(byte[] bytes, int offset) {
+            return readFloatLE(bytes, offset);
+        }
+
+        /** Read the mach number of a payload starting at offset, without allocating. */
+        public static float mach(byte[] bytes, int offset) {
+            return readFloatLE(bytes, offset + 4);
         }
     }
 
@@ -322,7 +499,12 @@ public abstract class Payload {
         }
 
         public static ActionGroupMessage from(byte[] bytes) {
-            return new ActionGroupMessage(bytes[0], bytes);
+            return new ActionGroupMessage(actionGroupStatus(bytes, 0), bytes);
+        }
+
+        /** Read the action group bitmask of a payload starting at offset, without allocating. */
+        public static byte actionGroupStatus(byte[] bytes, int offset) {
+            return bytes[offset];
         }
     }
 
@@ -352,9 +534,14 @@ public abstract class Payload {
     /** A vessel rotation message.
      This class contains information about vessel rotation commands. */
     public static class RotationMessage {
-        public final int pitch; /**< (16-bits) Vessel pitch. */
-        public final int roll; /**< (16-bits) Vessel roll. */
-        public final int yaw; /**< (16-bits) Vessel yaw. */
+        public static final int SIZE = 7;
+        public static final byte PITCH = 1;
+        public static final byte ROLL = 2;
+        public static final byte YAW = 4;
+
+        public final short pitch; /**< (16-bits) Vessel pitch. */
+        public final short roll; /**< (16-bits) Vessel roll. */
+        public final short yaw; /**< (16-bits) Vessel yaw. */
         /** The mask indicates which elements are intentionally set. Unset elements
          should be ignored. It should be one or more of:
 
@@ -364,28 +551,46 @@ public abstract class Payload {
          */
         public final byte mask;
 
-        private RotationMessage(final int pitch, final int roll, int yaw, byte mask) {
-            this.pitch = pitch;
-            this.roll = roll;
-            this.yaw = yaw;
+        public RotationMessage(final int pitch, final int roll, final int yaw, final byte mask) {
+            this.pitch = (short) pitch;
+            this.roll = (short) roll;
+            this.yaw = (short) yaw;
             this.mask = mask;
         }
 
         public static RotationMessage from(byte[] bytes) {
-            int pitch = ByteBuffer.wrap(bytes, 0, 2).order(ByteOrder.LITTLE_ENDIAN).getInt();
-            int roll = ByteBuffer.wrap(bytes, 2, 2).order(ByteOrder.LITTLE_ENDIAN).getInt();
-            int yaw = ByteBuffer.wrap(bytes, 4, 2).order(ByteOrder.LITTLE_ENDIAN).getInt();
-            byte mask = bytes[bytes.length - 1];
-            return new RotationMessage(pitch, roll, yaw, mask);
+            if (bytes.length < SIZE) {
+                throw new IllegalArgumentException("Not enough bytes.  " + SIZE + " required. " + bytes.length + " sent.");
+            }
+            return new RotationMessage(readShortLE(bytes, 0), readShortLE(bytes, 2), readShortLE(bytes, 4), bytes[6]);
+        }
+
+        public byte[] toBytes() {
+            final byte[] bytes = new byte[SIZE];
+            writeShortLE(bytes, 0, pitch);
+            writeShortLE(bytes, 2, roll);
+            writeShortLE(bytes, 4, yaw);
+            bytes[6] = mask;
+            return bytes;
+        }
+
+        @Override
+        public String toString() {
+            return MessageFormat.format("pitch: {0} roll: {1} yaw: {2} mask: {3}", pitch, roll, yaw, mask);
         }
     }
 
     /** A vessel translation message.
      This class contains information about vessel translation commands. */
     public static class TranslationMessage {
-        public final int x; /**< (16-bits) Translation along the X axis. */
-        public final int y; /**< (16-bits) Translation along the Y axis. */
-        public final int z; /**< (16-bits) Translation along the Z axis. */
+        public static final int SIZE = 7;
+        public static final byte X = 1;
+        public static final byte Y = 2;
+        public static final byte Z = 4;
+
+        public final short x; /**< (16-bits) Translation along the X axis. */
+        public final short y; /**< (16-bits) Translation along the Y axis. */
+        public final short z; /**< (16-bits) Translation along the Z axis. */
         /** The mask indicates which elements are intentionally set. Unset elements
          should be ignored. It should be one or more of:
 
@@ -395,27 +600,44 @@ public abstract class Payload {
          */
         public final byte mask;
 
-        private TranslationMessage(final int x, final int y, int z, byte mask) {
-            this.x = x;
-            this.y = y;
-            this.z = z;
+        public TranslationMessage(final int x, final int y, final int z, final byte mask) {
+            this.x = (short) x;
+            this.y = (short) y;
+            this.z = (short) z;
             this.mask = mask;
         }
 
         public static TranslationMessage from(byte[] bytes) {
-            int x = ByteBuffer.wrap(bytes, 0, 2).order(ByteOrder.LITTLE_ENDIAN).getInt();
-            int y = ByteBuffer.wrap(bytes, 2, 2).order(ByteOrder.LITTLE_ENDIAN).getInt();
-            int z = ByteBuffer.wrap(bytes, 4, 2).order(ByteOrder.LITTLE_ENDIAN).getInt();
-            byte mask = bytes[bytes.length - 1];
-            return new TranslationMessage(x, y, z, mask);
+            if (bytes.length < SIZE) {
+                throw new IllegalArgumentException("Not enough bytes.  " + SIZE + " required. " + bytes.length + " sent.");
+            }
+            return new TranslationMessage(readShortLE(bytes, 0), readShortLE(bytes, 2), readShortLE(bytes, 4), bytes[6]);
+        }
+
+        public byte[] toBytes() {
+            final byte[] bytes = new byte[SIZE];
+            writeShortLE(bytes, 0, x);
+            writeShortLE(bytes, 2, y);
+            writeShortLE(bytes, 4, z);
+            bytes[6] = mask;
+            return bytes;
+        }
+
+        @Override
+        public String toString() {
+            return MessageFormat.format("x: {0} y: {1} z: {2} mask: {3}", x, y, z, mask);
         }
     }
 
     /** A wheel control message.
      This class contains information about wheel steering and throttle. */
     public static class WheelMessage {
-        public final int steer; /**< (16-bits) Wheel steer. */
-        public final int throttle; /**< (16-bits)  Wheel throttle. */
+        public static final int SIZE = 5;
+        public static final byte STEER = 1;
+        public static final byte THROTTLE = 2;
+
+        public final short steer; /**< (16-bits) Wheel steer. */
+        public final short throttle; /**< (16-bits)  Wheel throttle. */
         /** The mask indicates which elements are intentionally set. Unset elements
          should be ignored. It should be one or more of:
 
@@ -424,17 +646,59 @@ public abstract class Payload {
          */
         public final  byte mask;
 
-        private WheelMessage(final int steer, final int throttle, byte mask) {
-            this.steer = steer;
-            this.throttle = throttle;
+        public WheelMessage(final int steer, final int throttle, final byte mask) {
+            this.steer = (short) steer;
+            this.throttle = (short) throttle;
             this.mask = mask;
         }
 
         public static WheelMessage from(byte[] bytes) {
-            int steer = ByteBuffer.wrap(bytes, 0, 2).order(ByteOrder.LITTLE_ENDIAN).getInt();
-            int throttle = ByteBuffer.wrap(bytes, 2, 2).order(ByteOrder.LITTLE_ENDIAN).getInt();
-            byte mask = bytes[bytes.length - 1];
-            return new WheelMessage(steer, throttle, mask);
+            if (bytes.length < SIZE) {
+                throw new IllegalArgumentException("Not enough bytes.  " + SIZE + " required. " + bytes.length + " sent.");
+            }
+            return new WheelMessage(readShortLE(bytes, 0), readShortLE(bytes, 2), bytes[4]);
+        }
+
+        public byte[] toBytes() {
+            final byte[] bytes = new byte[SIZE];
+            writeShortLE(bytes, 0, steer);
+            writeShortLE(bytes, 2, throttle);
+            bytes[4] = mask;
+            return bytes;
+        }
+
+        @Override
+        public String toString() {
+            return MessageFormat.format("steer: {0} throttle: {1} mask: {2}", steer, throttle, mask);
+        }
+    }
+
+    /** A main throttle message: 0 is idle, {@link Short#MAX_VALUE} full throttle. */
+    public static class ThrottleMessage {
+        public static final int SIZE = 2;
+
+        public final short throttle; /**< (16-bits) Main throttle. */
+
+        public ThrottleMessage(final int throttle) {
+            this.throttle = (short) throttle;
+        }
+
+        public static ThrottleMessage from(byte[] bytes) {
+            if (bytes.length < SIZE) {
+                throw new IllegalArgumentException("Not enough bytes.  " + SIZE + " required. " + bytes.length + " sent.");
+            }
+            return new ThrottleMessage(readShortLE(bytes, 0));
+        }
+
+        public byte[] toBytes() {
+            final byte[] bytes = new byte[SIZE];
+            writeShortLE(bytes, 0, throttle);
+            return bytes;
+        }
+
+        @Override
+        public String toString() {
+            return MessageFormat.format("throttle: {0}", throttle);
         }
     }
 
@@ -0,0 +1,192 @@
+package cjohannsen.protocol;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A preallocated, bounded, lock-free queue handing packets from the serial reader thread to the dispatcher thread.
+ *
+ * Exactly one thread may offer and exactly one thread may poll.  Under {@link OverflowPolicy#DROP_OLDEST} the
+ * producer also claims slots from the head, so the head index is advanced with compare-and-set by both sides; a
+ * consumer only keeps a packet if its own claim succeeded.  Packets dropped by the queue are released back to their
+ * pool.
+ */
+public class RingPacketQueue implements PacketQueue {
+
+    /**
+     * What to do with a packet offered to a full queue.
+     */
+    public enum OverflowPolicy {
+        /** Discard the oldest queued packet to make room. */
+        DROP_OLDEST,
+        /** Discard the offered packet. */
+        DROP_NEWEST,
+        /** Wait for the consumer to make room. */
+        BLOCK
+    }
+
+    private final Packet[] slots;
+    private final int mask;
+    private final OverflowPolicy overflowPolicy;
+
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    private volatile Thread waitingConsumer;
+    private volatile Thread waitingProducer;
+
+    private final AtomicLong droppedOldest = new AtomicLong();
+    private final AtomicLong droppedNewest = new AtomicLong();
+    private final AtomicLong producerBlocks = new AtomicLong();
+
+    /**
+     * @param capacity maximum number of queued packets; rounded up to a power of two.
+     * @param overflowPolicy behaviour when the queue is full.
+     */
+    public RingPacketQueue(final int capacity, final OverflowPolicy overflowPolicy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        final int size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+        this.slots = new Packet[size];
+        this.mask = size - 1;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    @Override
+    public boolean offer(final Packet packet) {
+        while (true) {
+            final long t = tail.get();
+            final long h = head.get();
+            if (t - h < slots.length) {
+                slots[(int) t & mask] = packet;
+                tail.set(t + 1);
+                final Thread consumer = waitingConsumer;
+                if (consumer != null) {
+                    LockSupport.unpark(consumer);
+                }
+                return true;
+            }
+            switch (overflowPolicy) {
+                case DROP_NEWEST:
+                    droppedNewest.incrementAndGet();
+                    packet.release();
+                    return false;
+                case DROP_OLDEST:
+                    final Packet oldest = slots[(int) h & mask];
+                    if (head.compareAndSet(h, h + 1)) {
+                        droppedOldest.incrementAndGet();
+                        oldest.release();
+                    }
+                    break;
+                case BLOCK:
+                    producerBlocks.incrementAndGet();
+                    waitingProducer = Thread.currentThread();
+                    if (tail.get() - head.get() >= slots.length) {
+                        LockSupport.park(this);
+                    }
+                    waitingProducer = null;
+                    break;
+            }
+        }
+    }
+
+    @Override
+    public Packet poll() {
+        while (true) {
+            final long h = head.get();
+            if (h >= tail.get()) {
+                return null;
+            }
+            final Packet packet = slots[(int) h & mask];
+            if (head.compareAndSet(h, h + 1)) {
+                final Thread producer = waitingProducer;
+                if (producer != null) {
+                    LockSupport.unpark(producer);
+                }
+                return packet;
+            }
+        }
+    }
+
+    @Override
+    public Packet poll(final long timeout, final TimeUnit unit) {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        Packet packet = poll();
+        while (packet == null) {
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return null;
+            }
+            waitingConsumer = Thread.currentThread();
+            if (isEmpty()) {
+                LockSupport.parkNanos(this, remaining);
+            }
+            waitingConsumer = null;
+            packet = poll();
+        }
+        return packet;
+    }
+
+    @Override
+    public Packet take() {
+        Packet packet = poll();
+        while (packet == null) {
+            waitingConsumer = Thread.currentThread();
+            if (isEmpty()) {
+                LockSupport.park(this);
+            }
+            waitingConsumer = null;
+            packet = poll();
+        }
+        return packet;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return head.get() >= tail.get();
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return droppedOldest.get() + droppedNewest.get();
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Packets discarded to make room for newer ones under {@link OverflowPolicy#DROP_OLDEST}.
+     * @return number of dropped packets.
+     */
+    public long getDroppedOldestCount() {
+        return droppedOldest.get();
+    }
+
+    /**
+     * Packets rejected because the queue was full under {@link OverflowPolicy#DROP_NEWEST}.
+     * @return number of dropped packets.
+     */
+    public long getDroppedNewestCount() {
+        return droppedNewest.get();
+    }
+
+    /**
+     * Times the producer had to wait for room under {@link OverflowPolicy#BLOCK}.
+     * @return number of producer waits.
+     */
+    public long getProducerBlockCount() {
+        return producerBlocks.get();
+    }
+}
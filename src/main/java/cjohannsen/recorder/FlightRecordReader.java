@@ -0,0 +1,156 @@
+package cjohannsen.recorder;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reads back the segments written by {@link FlightRecorder}.
+ */
+public final class FlightRecordReader {
+
+    /**
+     * Receives the records of a segment, in arrival order.  The payload array is reused between records.
+     */
+    @FunctionalInterface
+    public interface RecordListener {
+        void onRecord(long arrivalNanos, int type, byte[] payload, int offset, int length);
+    }
+
+    private FlightRecordReader() {
+    }
+
+    /**
+     * List the segments in a directory.
+     * @param directory the recorder directory.
+     * @return the segment files, oldest first.
+     * @throws IOException if the directory cannot be listed.
+     */
+    public static List<Path> segments(final Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> p.getFileName().toString().endsWith(FlightRecorder.SEGMENT_SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Read every record of a segment.
+     * @param segment the segment file.
+     * @param listener receives each record.
+     * @return the number of records read.
+     * @throws IOException if the file cannot be read or is not a flight recorder segment.
+     */
+    public static long read(final Path segment, final RecordListener listener) throws IOException {
+        final Cursor cursor = new Cursor(Collections.singletonList(segment));
+        long count = 0;
+        while (cursor.next()) {
+            listener.onRecord(cursor.getArrivalNanos(), cursor.getType(), cursor.getPayload(), 0, cursor.getLength());
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Walks the records of a sequence of segments one at a time, without allocating per record.
+     */
+    public static class Cursor {
+        private final List<Path> segments;
+        private final byte[] payload = new byte[FlightRecorder.MAX_RECORD_SIZE];
+        private int segmentIndex;
+        private MappedByteBuffer buffer;
+        private long arrivalNanos;
+        private int type;
+        private int length;
+
+        /**
+         * @param segments the segment files, in the order to read them.
+         */
+        public Cursor(final List<Path> segments) {
+            this.segments = new ArrayList<>(segments);
+        }
+
+        /**
+         * Open a path that is either a single segment or a recorder directory.
+         * @param path a segment file or a directory of segments.
+         * @return a cursor over every segment found.
+         * @throws IOException if the directory cannot be listed.
+         */
+        public static Cursor open(final Path path) throws IOException {
+            return new Cursor(Files.isDirectory(path) ? segments(path) : Collections.singletonList(path));
+        }
+
+        /**
+         * Advance to the next record.
+         * @return false once every segment has been read.
+         * @throws IOException if a segment cannot be read or is not a flight recorder segment.
+         */
+        public boolean next() throws IOException {
+            while (true) {
+                if (buffer == null) {
+                    if (segmentIndex == segments.size()) {
+                        return false;
+                    }
+                    buffer = map(segments.get(segmentIndex++));
+                }
+                if (buffer.remaining() >= FlightRecorder.RECORD_HEADER_SIZE && buffer.get() == FlightRecorder.RECORD_MARKER) {
+                    arrivalNanos = buffer.getLong();
+                    type = buffer.get() & 0xFF;
+                    length = buffer.get() & 0xFF;
+                    // A segment cut short, e.g. by a crash before it was forced to disk, ends at its last whole record.
+                    if (length <= payload.length && buffer.remaining() >= length) {
+                        buffer.get(payload, 0, length);
+                        return true;
+                    }
+                }
+                buffer = null;
+            }
+        }
+
+        /** Arrival time of the current record, in {@link System#nanoTime()} of the recording process. */
+        public long getArrivalNanos() {
+            return arrivalNanos;
+        }
+
+        public int getType() {
+            return type;
+        }
+
+        /**
+         * Payload of the current record, from index 0.  Overwritten by {@link #next()}.
+         * @return the payload array.
+         */
+        public byte[] getPayload() {
+            return payload;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        private static MappedByteBuffer map(final Path segment) throws IOException {
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+                final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                if (buffer.remaining() < FlightRecorder.HEADER_SIZE || buffer.getInt() != FlightRecorder.MAGIC) {
+                    throw new IOException(segment + " is not a flight recorder segment.");
+                }
+                final short version = buffer.getShort();
+                if (version != FlightRecorder.VERSION) {
+                    throw new IOException(segment + " has unsupported version " + version + ".");
+                }
+                buffer.position(FlightRecorder.HEADER_SIZE);
+                return buffer;
+            }
+        }
+    }
+}
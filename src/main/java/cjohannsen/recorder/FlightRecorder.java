@@ -0,0 +1,273 @@
+package cjohannsen.recorder;
+
+import cjohannsen.protocol.Packet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Appends every raw frame received from the simulator to memory-mapped segment files, for analysis after a flight.
+ *
+ * The serial reader thread only copies each frame and its {@link System#nanoTime() arrival time} into a preallocated
+ * single-producer, single-consumer ring; a dedicated recorder thread drains the ring into the current segment.  A full
+ * ring drops the frame rather than stall ingest.  Nothing is allocated per frame on either side.  The recorder thread
+ * parks while the ring is empty and the reader thread unparks it after each frame, so a silent link wakes it only
+ * once a second.
+ *
+ * Segment layout, little-endian: a {@link #HEADER_SIZE} byte header ({@link #MAGIC}, {@link #VERSION}, the segment's
+ * creation time in epoch milliseconds and in {@link System#nanoTime()}) followed by records of
+ * {@code [RECORD_MARKER][long nanos][byte type][byte length][payload]}.  The unused tail of a segment is zero, so a
+ * reader stops at the first byte that is not {@link #RECORD_MARKER}.  See {@link FlightRecordReader}.
+ */
+@Component
+public class FlightRecorder {
+    private static final Logger logger = LoggerFactory.getLogger(FlightRecorder.class);
+
+    public static final int MAGIC = 0x52505453; // "STPR"
+    public static final short VERSION = 1;
+    public static final int HEADER_SIZE = 24;
+    public static final byte RECORD_MARKER = 0x52;
+    public static final int RECORD_HEADER_SIZE = 11;
+    public static final int MAX_RECORD_SIZE = RECORD_HEADER_SIZE + Packet.PACKET_SIZE - Packet.MESSAGE_HEADER_SIZE;
+    public static final String SEGMENT_SUFFIX = ".rec";
+
+    public static final String DEFAULT_DIRECTORY = "recordings";
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+    public static final int DEFAULT_RING_CAPACITY = 1024;
+    public static final long IDLE_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentSize;
+
+    private final byte[] frames;
+    private final int[] lengths;
+    private final long[] arrivals;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    private final AtomicLong recordedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong segmentCount = new AtomicLong();
+
+    private volatile boolean running;
+    private volatile Thread drainThread;
+    private ExecutorService executor;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private String sessionName;
+
+    /** A recorder that records nothing. */
+    public FlightRecorder() {
+        this(false, DEFAULT_DIRECTORY, DEFAULT_SEGMENT_SIZE, DEFAULT_RING_CAPACITY);
+    }
+
+    /**
+     * @param enabled whether to record at all.
+     * @param directory directory to write segments to; created if missing.
+     * @param segmentSize size of each segment file, in bytes.
+     * @param ringCapacity frames buffered between the reader and the recorder thread; rounded up to a power of two.
+     */
+    @Autowired
+    public FlightRecorder(@Value("${simpit.recorder.enabled:false}") boolean enabled,
+                          @Value("${simpit.recorder.directory:" + DEFAULT_DIRECTORY + "}") String directory,
+                          @Value("${simpit.recorder.segment-size:" + DEFAULT_SEGMENT_SIZE + "}") int segmentSize,
+                          @Value("${simpit.recorder.ring-capacity:" + DEFAULT_RING_CAPACITY + "}") int ringCapacity) {
+        if (segmentSize < HEADER_SIZE + MAX_RECORD_SIZE) {
+            throw new IllegalArgumentException("Segment size must be at least " + (HEADER_SIZE + MAX_RECORD_SIZE) + ": " + segmentSize);
+        }
+        if (ringCapacity < 1) {
+            throw new IllegalArgumentException("Ring capacity must be positive: " + ringCapacity);
+        }
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.segmentSize = segmentSize;
+        final int size = Integer.highestOneBit(ringCapacity) == ringCapacity ? ringCapacity : Integer.highestOneBit(ringCapacity) << 1;
+        this.frames = new byte[enabled ? size * Packet.PACKET_SIZE : 0];
+        this.lengths = new int[enabled ? size : 0];
+        this.arrivals = new long[enabled ? size : 0];
+        this.mask = size - 1;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Start the recorder thread.  Does nothing if recording is disabled or already running.
+     */
+    public synchronized void start() {
+        if (!enabled || running) {
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            logger.error("Flight recorder disabled, cannot create " + directory + ": " + e.getMessage());
+            return;
+        }
+        sessionName = "flight-" + System.currentTimeMillis();
+        running = true;
+        executor = Executors.newSingleThreadExecutor();
+        executor.execute(this::drainLoop);
+        logger.info("Flight recorder writing to {}", directory.toAbsolutePath());
+    }
+
+    /**
+     * Stop the recorder thread once it has written every frame already queued, and flush the current segment.
+     * Called when the application context closes.
+     */
+    @PreDestroy
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        final Thread thread = drainThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Queue a raw frame for recording.  Called by the serial reader thread; never blocks and never allocates.
+     * @param buffer array holding the frame.
+     * @param offset index of the first header byte.
+     * @param length length of the frame, header included.
+     */
+    public void record(final byte[] buffer, final int offset, final int length) {
+        if (!running) {
+            return;
+        }
+        final long arrival = System.nanoTime();
+        final long t = tail.get();
+        if (t - head.get() > mask) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+        final int slot = (int) t & mask;
+        final int size = Math.min(length, Packet.PACKET_SIZE);
+        System.arraycopy(buffer, offset, frames, slot * Packet.PACKET_SIZE, size);
+        lengths[slot] = size;
+        arrivals[slot] = arrival;
+        tail.lazySet(t + 1);
+        final Thread thread = drainThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    public long getRecordedCount() {
+        return recordedCount.get();
+    }
+
+    /**
+     * Frames not recorded because the recorder thread fell a full ring behind.
+     * @return number of dropped frames.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getSegmentCount() {
+        return segmentCount.get();
+    }
+
+    private void drainLoop() {
+        drainThread = Thread.currentThread();
+        try {
+            while (running || head.get() != tail.get()) {
+                if (drain() == 0) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+            }
+        } catch (IOException e) {
+            running = false;
+            logger.error("Flight recorder stopped: " + e.getMessage());
+        } finally {
+            closeSegment();
+            drainThread = null;
+        }
+    }
+
+    private int drain() throws IOException {
+        final long h = head.get();
+        final long t = tail.get();
+        for (long i = h; i < t; i++) {
+            final int slot = (int) i & mask;
+            write(arrivals[slot], frames, slot * Packet.PACKET_SIZE, lengths[slot]);
+        }
+        head.lazySet(t);
+        return (int) (t - h);
+    }
+
+    private void write(final long arrival, final byte[] frame, final int offset, final int length) throws IOException {
+        if (length < Packet.MESSAGE_HEADER_SIZE) {
+            return;
+        }
+        final int payloadLength = Math.min(frame[offset + Packet.MESSAGE_SIZE_INDEX] & 0xFF, length - Packet.MESSAGE_HEADER_SIZE);
+        if (segment == null || segment.remaining() < RECORD_HEADER_SIZE + payloadLength) {
+            openSegment();
+        }
+        segment.put(RECORD_MARKER);
+        segment.putLong(arrival);
+        segment.put(frame[offset + Packet.MESSAGE_TYPE_INDEX]);
+        segment.put((byte) payloadLength);
+        segment.put(frame, offset + Packet.MESSAGE_HEADER_SIZE, payloadLength);
+        recordedCount.incrementAndGet();
+    }
+
+    private void openSegment() throws IOException {
+        closeSegment();
+        final Path path = directory.resolve(String.format("%s-%05d%s", sessionName, segmentCount.get(), SEGMENT_SUFFIX));
+        channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        segment.putInt(MAGIC);
+        segment.putShort(VERSION);
+        segment.putShort((short) 0);
+        segment.putLong(System.currentTimeMillis());
+        segment.putLong(System.nanoTime());
+        segmentCount.incrementAndGet();
+        logger.debug("Flight recorder segment {}", path);
+    }
+
+    private void closeSegment() {
+        if (segment != null) {
+            segment.force();
+            segment = null;
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close flight recorder segment: " + e.getMessage());
+            }
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package cjohannsen.simulator;
+
+import cjohannsen.SimpitHost;
+import cjohannsen.protocol.FrameParser;
+import cjohannsen.protocol.MessageType;
+import cjohannsen.protocol.Packet;
+import cjohannsen.protocol.Payload;
+import cjohannsen.telemetry.ChannelLayout;
+import cjohannsen.transport.Transport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays the KerbalSimpit plugin end of a link, so the host can run and be load tested without KSP or a serial port.
+ *
+ * The simulator answers the SYN/ACK/SYNACK handshake and echo requests, and streams synthetic telemetry on every
+ * channel the host has REGISTERed until it is DEREGISTERed.  Each channel streams at its own rate in frames per
+ * second; rates are not limited by any baud rate, so over a {@link cjohannsen.transport.LoopbackTransport} they can go
+ * far beyond what 57600 baud carries.  Other commands are counted and otherwise ignored.
+ */
+public class KerbalSimpitSimulator {
+    private static final Logger logger = LoggerFactory.getLogger(KerbalSimpitSimulator.class);
+
+    public static final double DEFAULT_RATE_HZ = 10;
+    public static final int READ_TIMEOUT_MILLIS = 100;
+    public static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    /** A channel more than this far behind its schedule skips ahead instead of bursting to catch up. */
+    public static final long MAX_LAG_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final int BATCH_SIZE = 4096;
+    private static final byte[] SOI_NAME = "Kerbin".getBytes();
+
+    private final Transport transport;
+    private final int[] channels;
+    private final double[] rates = new double[256];
+    private final AtomicIntegerArray registered = new AtomicIntegerArray(256);
+    private final AtomicLongArray commandCounts = new AtomicLongArray(256);
+    private final Object writeLock = new Object();
+
+    private final AtomicLong framesSent = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+
+    private volatile boolean running;
+    private volatile boolean handshakeComplete;
+    private ExecutorService executor;
+
+    /**
+     * @param transport the plugin end of the link.
+     */
+    public KerbalSimpitSimulator(final Transport transport) {
+        this(transport, DEFAULT_RATE_HZ);
+    }
+
+    /**
+     * @param transport the plugin end of the link.
+     * @param rate frames per second to stream on each registered channel.
+     */
+    public KerbalSimpitSimulator(final Transport transport, final double rate) {
+        this.transport = transport;
+        final List<Integer> streamable = new ArrayList<>();
+        for (MessageType.Datagram type : MessageType.Datagram.values()) {
+            if (Payload.providerFor(type) != null) {
+                streamable.add(type.getValue());
+                rates[type.getValue()] = rate;
+            }
+        }
+        this.channels = streamable.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Parse per channel rates.  Rates are set before {@link #start()}.
+     * @param rates comma separated {@code CHANNEL=hz} pairs, e.g. {@code ALTITUDE_MESSAGE=50,VELOCITY_MESSAGE=50}.
+     */
+    public void setRates(final String rates) {
+        for (String entry : rates.split(",")) {
+            final String trimmed = entry.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            final int separator = trimmed.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid rate '" + trimmed + "', expected CHANNEL=hz.");
+            }
+            setRate(MessageType.Datagram.valueOf(trimmed.substring(0, separator).trim()),
+                    Double.parseDouble(trimmed.substring(separator + 1).trim()));
+        }
+    }
+
+    /**
+     * @param type the channel.
+     * @param rate frames per second while registered; 0 never streams the channel.
+     */
+    public void setRate(final MessageType.Datagram type, final double rate) {
+        if (rate < 0) {
+            throw new IllegalArgumentException("Rate must not be negative: " + rate);
+        }
+        rates[type.getValue()] = rate;
+    }
+
+    public double getRate(final MessageType.Datagram type) {
+        return rates[type.getValue()];
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        logger.info("KerbalSimpit simulator starting.");
+        running = true;
+        transport.setReadTimeout(READ_TIMEOUT_MILLIS);
+        executor = Executors.newFixedThreadPool(2);
+        executor.execute(this::receiveLoop);
+        executor.execute(this::streamLoop);
+    }
+
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Whether the host has answered the ACK with a SYNACK.
+     * @return true once the handshake has completed.
+     */
+    public boolean isHandshakeComplete() {
+        return handshakeComplete;
+    }
+
+    public boolean isRegistered(final MessageType.Datagram type) {
+        return registered.get(type.getValue()) != 0;
+    }
+
+    /**
+     * Number of commands of a type received from the host.
+     * @param command the command type.
+     * @return the number received.
+     */
+    public long getCommandCount(final MessageType.Command command) {
+        return commandCounts.get(command.getValue());
+    }
+
+    public long getFramesSent() {
+        return framesSent.get();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    private void receiveLoop() {
+        final byte[] buffer = new byte[256];
+        final FrameParser parser = new FrameParser();
+        final FrameParser.FrameListener listener = this::onCommand;
+        while (running) {
+            final int read = transport.read(buffer, buffer.length);
+            if (read > 0) {
+                parser.feed(buffer, 0, read, listener);
+            }
+        }
+    }
+
+    private void onCommand(final byte[] buffer, final int offset, final int length) {
+        final int type = buffer[offset + Packet.MESSAGE_TYPE_INDEX] & 0xFF;
+        final int payloadOffset = offset + Packet.MESSAGE_HEADER_SIZE;
+        final int payloadLength = length - Packet.MESSAGE_HEADER_SIZE;
+        commandCounts.incrementAndGet(type);
+        switch (MessageType.Command.from(type)) {
+            case SYNC_MESSAGE:
+                if (payloadLength > 0 && buffer[payloadOffset] == SimpitHost.HANDSHAKE_SYN) {
+                    logger.debug("Simulator received SYN, sending ACK.");
+                    final byte[] version = SimpitHost.KERBALSIMPIT_VERSION.getBytes();
+                    final byte[] ack = new byte[version.length + 2];
+                    ack[0] = SimpitHost.HANDSHAKE_ACK;
+                    System.arraycopy(version, 0, ack, 1, version.length);
+                    send(MessageType.Datagram.SYNC_MESSAGE.getValue(), ack, 0, ack.length);
+                } else if (payloadLength > 0 && buffer[payloadOffset] == SimpitHost.HANDSHAKE_SYNACK) {
+                    logger.debug("Simulator received SYNACK.");
+                    handshakeComplete = true;
+                }
+                break;
+            case ECHO_REQ_MESSAGE:
+                send(MessageType.Datagram.ECHO_RESP_MESSAGE.getValue(), buffer, payloadOffset, payloadLength);
+                break;
+            case REGISTER_MESSAGE:
+                for (int i = 0; i < payloadLength; i++) {
+                    registered.set(buffer[payloadOffset + i] & 0xFF, 1);
+                }
+                break;
+            case DEREGISTER_MESSAGE:
+                for (int i = 0; i < payloadLength; i++) {
+                    registered.set(buffer[payloadOffset + i] & 0xFF, 0);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void send(final int type, final byte[] payload, final int offset, final int length) {
+        final byte[] frame = new byte[Packet.MESSAGE_HEADER_SIZE + length];
+        writeHeader(frame, 0, type, length);
+        System.arraycopy(payload, offset, frame, Packet.MESSAGE_HEADER_SIZE, length);
+        write(frame, frame.length);
+    }
+
+    private void streamLoop() {
+        final byte[] batch = new byte[BATCH_SIZE];
+        final long[] nextDue = new long[256];
+        final long start = System.nanoTime();
+        long frame = 0;
+        while (running) {
+            final long now = System.nanoTime();
+            long earliest = now + IDLE_PARK_NANOS;
+            int size = 0;
+            for (int channel : channels) {
+                final double rate = rates[channel];
+                if (registered.get(channel) == 0 || rate <= 0) {
+                    nextDue[channel] = now;
+                    continue;
+                }
+                if (nextDue[channel] - now <= 0) {
+                    if (size + Packet.PACKET_SIZE > batch.length) {
+                        write(batch, size);
+                        size = 0;
+                    }
+                    size += encode(channel, now - start, frame++, batch, size);
+                    nextDue[channel] += (long) (1e9 / rate);
+                    if (now - nextDue[channel] > MAX_LAG_NANOS) {
+                        nextDue[channel] = now;
+                    }
+                }
+                if (nextDue[channel] - earliest < 0) {
+                    earliest = nextDue[channel];
+                }
+            }
+            if (size > 0) {
+                write(batch, size);
+            }
+            final long wait = earliest - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+        }
+    }
+
+    /**
+     * Write a synthetic frame for a channel.  Numeric fields ramp with time so every frame carries a change.
+     * @return the frame length.
+     */
+    private static int encode(final int channel, final long elapsedNanos, final long frame, final byte[] batch, final int offset) {
+        final MessageType.Datagram type = MessageType.Datagram.from(channel);
+        final int payloadOffset = offset + Packet.MESSAGE_HEADER_SIZE;
+        final float seconds = elapsedNanos / 1e9f;
+        final int length;
+        switch (type) {
+            case ACTIONSTATUS_MESSAGE:
+                batch[payloadOffset] = (byte) frame;
+                length = 1;
+                break;
+            case SOI_MESSAGE:
+                System.arraycopy(SOI_NAME, 0, batch, payloadOffset, SOI_NAME.length);
+                length = SOI_NAME.length;
+                break;
+            default:
+                final int fields = ChannelLayout.fieldCount(type);
+                final boolean integers = ChannelLayout.isIntegerChannel(type);
+                for (int field = 0; field < fields; field++) {
+                    final float value = channel * 1000 + (field + 1) * seconds;
+                    putIntLE(batch, payloadOffset + 4 * field, integers ? (int) value : Float.floatToRawIntBits(value));
+                }
+                length = 4 * fields;
+                break;
+        }
+        writeHeader(batch, offset, channel, length);
+        return Packet.MESSAGE_HEADER_SIZE + length;
+    }
+
+    private void write(final byte[] bytes, final int length) {
+        synchronized (writeLock) {
+            if (transport.write(bytes, length) == length) {
+                bytesSent.addAndGet(length);
+                framesSent.addAndGet(countFrames(bytes, length));
+            }
+        }
+    }
+
+    private static int countFrames(final byte[] bytes, final int length) {
+        int frames = 0;
+        for (int i = 0; i + Packet.MESSAGE_HEADER_SIZE <= length; i += Packet.MESSAGE_HEADER_SIZE + (bytes[i + Packet.MESSAGE_SIZE_INDEX] & 0xFF)) {
+            frames++;
+        }
+        return frames;
+    }
+
+    private static void writeHeader(final byte[] frame, final int offset, final int type, final int payloadLength) {
+        frame[offset] = Packet.PACKET_HEADER_BYTE_0;
+        frame[offset + 1] = Packet.PACKET_HEADER_BYTE_1;
+        frame[offset + Packet.MESSAGE_SIZE_INDEX] = (byte) payloadLength;
+        frame[offset + Packet.MESSAGE_TYPE_INDEX] = (byte) type;
+    }
+
+    private static void putIntLE(final byte[] bytes, final int offset, final int value) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >>> 8);
+        bytes[offset + 2] = (byte) (value >>> 16);
+        bytes[offset + 3] = (byte) (value >>> 24);
+    }
+}
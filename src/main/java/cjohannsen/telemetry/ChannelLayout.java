@@ -0,0 +1,86 @@
+package cjohannsen.telemetry;
+
+import cjohannsen.protocol.MessageType;
+
+/**
+ * Field layout of the numeric telemetry channels.  Every numeric KerbalSimpit payload is a run of little-endian
+ * 4-byte fields, so a field is addressed by its index and lives at byte offset {@code 4 * index} of the payload.
+ */
+public final class ChannelLayout {
+
+    private static final String[] NONE = {};
+    private static final String[] ALTITUDE = {"sealevel", "surface"};
+    private static final String[] APSIDES = {"periapsis", "apoapsis"};
+    private static final String[] RESOURCE = {"total", "available"};
+    private static final String[] VELOCITY = {"orbital", "surface", "vertical"};
+    private static final String[] TARGET = {"distance", "velocity"};
+    private static final String[] AIRSPEED = {"indicatedAirSpeed", "mach"};
+
+    private ChannelLayout() {
+    }
+
+    /**
+     * Names of the numeric fields of a channel, in payload order.
+     * @param type the channel.
+     * @return the field names; empty for channels without numeric fields (action status, SOI, echo, ...).
+     */
+    public static String[] fieldNames(final MessageType.Datagram type) {
+        switch (type) {
+            case ALTITUDE_MESSAGE:
+                return ALTITUDE;
+            case APSIDES_MESSAGE:
+            case APSIDESTIME_MESSAGE:
+                return APSIDES;
+            case LF_MESSAGE:
+            case LF_STAGE_MESSAGE:
+            case OX_MESSAGE:
+            case OX_STAGE_MESSAGE:
+            case SF_MESSAGE:
+            case SF_STAGE_MESSAGE:
+            case MONO_MESSAGE:
+            case ELECTRIC_MESSAGE:
+            case EVA_MESSAGE:
+            case ORE_MESSAGE:
+            case AB_MESSAGE:
+            case AB_STAGE_MESSAGE:
+                return RESOURCE;
+            case VELOCITY_MESSAGE:
+                return VELOCITY;
+            case TARGETINFO_MESSAGE:
+                return TARGET;
+            case AIRSPEED_MESSAGE:
+                return AIRSPEED;
+            default:
+                return NONE;
+        }
+    }
+
+    public static int fieldCount(final MessageType.Datagram type) {
+        return fieldNames(type).length;
+    }
+
+    /**
+     * Index of a named field.
+     * @param type the channel.
+     * @param name the field name.
+     * @return the field index, or -1 if the channel has no such field.
+     */
+    public static int fieldIndex(final MessageType.Datagram type, final String name) {
+        final String[] names = fieldNames(type);
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Whether the numeric fields of a channel are 32-bit integers rather than floats.
+     * @param type the channel.
+     * @return true for integer channels (apsides time).
+     */
+    public static boolean isIntegerChannel(final MessageType.Datagram type) {
+        return type == MessageType.Datagram.APSIDESTIME_MESSAGE;
+    }
+}
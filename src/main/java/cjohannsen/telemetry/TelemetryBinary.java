@@ -0,0 +1,89 @@
+package cjohannsen.telemetry;
+
+import cjohannsen.protocol.MessageType;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes {@link TelemetryStore.Snapshot snapshots} in a compact binary form, streamed byte by byte from the primitive
+ * slots.  All integers are little endian:
+ *
+ * <pre>
+ * epoch          4 bytes  {@link TelemetryStore#getEpoch() store epoch}
+ * version        8 bytes  store version of the snapshot
+ * count          1 byte   number of channels that follow
+ * count times:
+ *   type         1 byte   {@link MessageType.Datagram} value
+ *   version      8 bytes  store version of the channel's last update
+ *   length       1 byte   payload length
+ *   payload      length bytes, exactly as received from the game
+ * </pre>
+ *
+ * Payloads are not re-encoded, so a client decodes them the same way as {@link cjohannsen.protocol.Payload} does.
+ */
+public final class TelemetryBinary {
+
+    public static final int HEADER_SIZE = 13;
+    public static final int CHANNEL_HEADER_SIZE = 10;
+
+    private static final MessageType.Datagram[] CHANNELS = MessageType.Datagram.values();
+
+    private TelemetryBinary() {
+    }
+
+    /**
+     * Write the channels of a snapshot that changed after a version.
+     * @param out the stream to write to; buffering is up to the caller.
+     * @param snapshot the snapshot.
+     * @param channels channels to include, indexed by type value; null for all.
+     * @param sinceVersion only channels updated after this store version are written; 0 for all.
+     * @return the number of bytes written.
+     * @throws IOException if the stream fails.
+     */
+    public static int write(final OutputStream out, final TelemetryStore.Snapshot snapshot, final boolean[] channels,
+                            final long sinceVersion) throws IOException {
+        int count = 0;
+        for (MessageType.Datagram type : CHANNELS) {
+            if (includes(snapshot, type, channels, sinceVersion)) {
+                count++;
+            }
+        }
+        writeInt(out, snapshot.getEpoch());
+        writeLong(out, snapshot.getVersion());
+        out.write(count);
+        int written = HEADER_SIZE;
+        for (MessageType.Datagram type : CHANNELS) {
+            if (!includes(snapshot, type, channels, sinceVersion)) {
+                continue;
+            }
+            final int length = snapshot.getPayloadLength(type);
+            out.write(type.getValue());
+            writeLong(out, snapshot.getChannelVersion(type));
+            out.write(length);
+            for (int i = 0; i < length; i++) {
+                out.write(snapshot.getByte(type, i));
+            }
+            written += CHANNEL_HEADER_SIZE + length;
+        }
+        return written;
+    }
+
+    private static boolean includes(final TelemetryStore.Snapshot snapshot, final MessageType.Datagram type,
+                                    final boolean[] channels, final long sinceVersion) {
+        return snapshot.has(type) && (channels == null || channels[type.getValue()])
+                && snapshot.getChannelVersion(type) > sinceVersion;
+    }
+
+    private static void writeInt(final OutputStream out, final int value) throws IOException {
+        for (int shift = 0; shift < 32; shift += 8) {
+            out.write(value >>> shift);
+        }
+    }
+
+    private static void writeLong(final OutputStream out, final long value) throws IOException {
+        for (int shift = 0; shift < 64; shift += 8) {
+            out.write((int) (value >>> shift));
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package cjohannsen.telemetry;
+
+import cjohannsen.protocol.MessageType;
+import cjohannsen.protocol.Packet;
+import cjohannsen.protocol.Payload;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides whether an incoming telemetry payload is worth accepting, before anything is decoded into objects.
+ *
+ * A payload whose bytes are identical to the last accepted payload on its channel is rejected outright.  Otherwise,
+ * if the channel has a deadband, its numeric fields are read in place and the payload is rejected unless at least one
+ * field moved by the deadband or more since the last accepted payload.  Comparing against the last accepted value,
+ * not the last received one, means slow drift still gets through once it adds up.
+ *
+ * Called from the dispatcher thread only.
+ */
+@Component
+public class TelemetryFilter {
+
+    public static final String DEFAULT_DEADBANDS = "ALTITUDE_MESSAGE=0.5";
+
+    private static final int MAX_PAYLOAD_SIZE = Packet.PACKET_SIZE - Packet.MESSAGE_HEADER_SIZE;
+
+    private final byte[][] accepted = new byte[TelemetryStore.CHANNELS][MAX_PAYLOAD_SIZE];
+    private final int[] acceptedLengths = new int[TelemetryStore.CHANNELS];
+    private final float[] deadbands = new float[TelemetryStore.CHANNELS];
+
+    private final AtomicLong unchangedCount = new AtomicLong();
+    private final AtomicLong deadbandCount = new AtomicLong();
+    private final AtomicLong acceptedCount = new AtomicLong();
+
+    public TelemetryFilter() {
+        Arrays.fill(acceptedLengths, -1);
+    }
+
+    /**
+     * @param deadbands comma separated {@code CHANNEL=deadband} pairs, e.g. {@code ALTITUDE_MESSAGE=0.5}.
+     */
+    @Autowired
+    public TelemetryFilter(@Value("${simpit.telemetry.deadbands:" + DEFAULT_DEADBANDS + "}") final String deadbands) {
+        this();
+        for (String entry : deadbands.split(",")) {
+            final String trimmed = entry.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            final int separator = trimmed.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid deadband '" + trimmed + "', expected CHANNEL=value.");
+            }
+            setDeadband(MessageType.Datagram.valueOf(trimmed.substring(0, separator).trim()),
+                    Float.parseFloat(trimmed.substring(separator + 1).trim()));
+        }
+    }
+
+    /**
+     * Ignore changes smaller than the given amount on every numeric field of a channel.
+     * @param type the channel.
+     * @param deadband minimum change to accept, in the field's units; 0 accepts any change.
+     */
+    public void setDeadband(final MessageType.Datagram type, final float deadband) {
+        deadbands[type.getValue()] = deadband;
+    }
+
+    public float getDeadband(final MessageType.Datagram type) {
+        return deadbands[type.getValue()];
+    }
+
+    /**
+     * Test a payload and, if accepted, remember it as the channel's new reference value.
+     * @param type the channel.
+     * @param bytes array holding the payload.
+     * @param offset index of the first payload byte.
+     * @param length payload length.
+     * @return true if the payload carries a change worth processing.
+     */
+    public boolean accept(final MessageType.Datagram type, final byte[] bytes, final int offset, final int length) {
+        final int channel = type.getValue();
+        if (channel >= TelemetryStore.CHANNELS || length > MAX_PAYLOAD_SIZE) {
+            return true;
+        }
+        final byte[] last = accepted[channel];
+        final int lastLength = acceptedLengths[channel];
+        if (lastLength == length) {
+            if (equal(last, bytes, offset, length)) {
+                unchangedCount.incrementAndGet();
+                return false;
+            }
+            if (deadbands[channel] > 0 && withinDeadband(type, last, bytes, offset, length, deadbands[channel])) {
+                deadbandCount.incrementAndGet();
+                return false;
+            }
+        }
+        System.arraycopy(bytes, offset, last, 0, length);
+        acceptedLengths[channel] = length;
+        acceptedCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Forget the reference value of every channel, so the next payload on each is accepted.
+     */
+    public void reset() {
+        Arrays.fill(acceptedLengths, -1);
+    }
+
+    /**
+     * Payloads rejected because they were byte-for-byte identical to the last accepted one.
+     * @return number of unchanged payloads.
+     */
+    public long getUnchangedCount() {
+        return unchangedCount.get();
+    }
+
+    /**
+     * Payloads rejected because no field moved by at least the channel's deadband.
+     * @return number of payloads inside the deadband.
+     */
+    public long getDeadbandCount() {
+        return deadbandCount.get();
+    }
+
+    public long getAcceptedCount() {
+        return acceptedCount.get();
+    }
+
+    private static boolean equal(final byte[] last, final byte[] bytes, final int offset, final int length) {
+        for (int i = 0; i < length; i++) {
+            if (last[i] != bytes[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean withinDeadband(final MessageType.Datagram type, final byte[] last, final byte[] bytes,
+                                          final int offset, final int length, final float deadband) {
+        final int fields = ChannelLayout.fieldCount(type);
+        if (fields == 0 || length < 4 * fields) {
+            return false;
+        }
+        final boolean integers = ChannelLayout.isIntegerChannel(type);
+        for (int field = 0; field < fields; field++) {
+            final float delta = integers
+                    ? (long) Payload.readIntLE(bytes, offset + 4 * field) - Payload.readIntLE(last, 4 * field)
+                    : Payload.readFloatLE(bytes, offset + 4 * field) - Payload.readFloatLE(last, 4 * field);
+            // NaN deltas fall through and count as a change.
+            if (!(Math.abs(delta) < deadband)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,275 @@
+package cjohannsen.telemetry;
+
+import cjohannsen.protocol.MessageType;
+import cjohannsen.protocol.Payload;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Recent history of every numeric telemetry field, in fixed memory.
+ *
+ * Each field keeps three primitive ring buffers: the raw samples of every frame received, including unchanged ones,
+ * 1 second buckets and 10 second buckets.  Buckets hold the min, max and mean of the samples that fell in them and
+ * are rolled up incrementally as samples are recorded, so a query never has to scan raw data.  Once a ring is full its
+ * oldest entries are overwritten; memory use is set by the capacities at construction and does not grow with flight
+ * time.
+ *
+ * Samples are recorded by the dispatcher thread; queries may come from any thread.
+ */
+@Component
+public class TelemetryHistory {
+
+    /** Resolution of a history query. */
+    public enum Tier {
+        RAW(0),
+        SECOND(1000),
+        TEN_SECONDS(10000);
+
+        private final long bucketMillis;
+
+        Tier(long bucketMillis) {
+            this.bucketMillis = bucketMillis;
+        }
+
+        public long getBucketMillis() {
+            return bucketMillis;
+        }
+    }
+
+    /** One point of a history query.  For raw samples min, max and mean are all the sample value. */
+    public static class Sample {
+        private final long time;
+        private final float min;
+        private final float max;
+        private final float mean;
+        private final int count;
+
+        Sample(long time, float min, float max, float mean, int count) {
+            this.time = time;
+            this.min = min;
+            this.max = max;
+            this.mean = mean;
+            this.count = count;
+        }
+
+        /** Start of the bucket, or the sample time, in epoch milliseconds. */
+        public long getTime() {
+            return time;
+        }
+
+        public float getMin() {
+            return min;
+        }
+
+        public float getMax() {
+            return max;
+        }
+
+        public float getMean() {
+            return mean;
+        }
+
+        /** Number of raw samples the point summarises. */
+        public int getCount() {
+            return count;
+        }
+    }
+
+    public static final int DEFAULT_RAW_CAPACITY = 1024;
+    public static final int DEFAULT_SECOND_CAPACITY = 600;
+    public static final int DEFAULT_TEN_SECOND_CAPACITY = 1080;
+
+    private final Series[][] series = new Series[TelemetryStore.CHANNELS][];
+
+    public TelemetryHistory() {
+        this(DEFAULT_RAW_CAPACITY, DEFAULT_SECOND_CAPACITY, DEFAULT_TEN_SECOND_CAPACITY);
+    }
+
+    /**
+     * @param rawCapacity raw samples kept per field.
+     * @param secondCapacity 1 second buckets kept per field.
+     * @param tenSecondCapacity 10 second buckets kept per field.
+     */
+    @Autowired
+    public TelemetryHistory(@Value("${simpit.history.raw-capacity:" + DEFAULT_RAW_CAPACITY + "}") int rawCapacity,
+                            @Value("${simpit.history.second-capacity:" + DEFAULT_SECOND_CAPACITY + "}") int secondCapacity,
+                            @Value("${simpit.history.ten-second-capacity:" + DEFAULT_TEN_SECOND_CAPACITY + "}") int tenSecondCapacity) {
+        for (MessageType.Datagram type : MessageType.Datagram.values()) {
+            final int fields = ChannelLayout.fieldCount(type);
+            if (fields == 0) {
+                continue;
+            }
+            series[type.getValue()] = new Series[fields];
+            for (int field = 0; field < fields; field++) {
+                series[type.getValue()][field] = new Series(rawCapacity, secondCapacity, tenSecondCapacity);
+            }
+        }
+    }
+
+    /**
+     * Record the numeric fields of a payload.  Allocation free.
+     * @param type the channel.
+     * @param bytes array holding the payload.
+     * @param offset index of the first payload byte.
+     * @param length payload length.
+     * @param timeMillis sample time, in epoch milliseconds.
+     */
+    public void record(final MessageType.Datagram type, final byte[] bytes, final int offset, final int length, final long timeMillis) {
+        if (type.getValue() >= TelemetryStore.CHANNELS) {
+            return;
+        }
+        final Series[] fields = series[type.getValue()];
+        if (fields == null || length < 4 * fields.length) {
+            return;
+        }
+        final boolean integers = ChannelLayout.isIntegerChannel(type);
+        for (int field = 0; field < fields.length; field++) {
+            final float value = integers
+                    ? Payload.readIntLE(bytes, offset + 4 * field)
+                    : Payload.readFloatLE(bytes, offset + 4 * field);
+            fields[field].add(timeMillis, value);
+        }
+    }
+
+    /**
+     * Query the history of one field.
+     * @param type the channel.
+     * @param field the field name, as given by {@link ChannelLayout#fieldNames(MessageType.Datagram)}.
+     * @param tier resolution to query.
+     * @param sinceMillis earliest time to return, in epoch milliseconds.
+     * @return the samples in time order, oldest first.
+     * @throws IllegalArgumentException if the channel has no such field.
+     */
+    public List<Sample> query(final MessageType.Datagram type, final String field, final Tier tier, final long sinceMillis) {
+        final int index = ChannelLayout.fieldIndex(type, field);
+        if (index < 0) {
+            throw new IllegalArgumentException(type + " has no field '" + field + "'.");
+        }
+        return series[type.getValue()][index].query(tier, sinceMillis);
+    }
+
+    /** A ring of time-stamped min/max/sum/count points. */
+    private static class Ring {
+        private final long[] times;
+        private final float[] mins;
+        private final float[] maxes;
+        private final double[] sums;
+        private final int[] counts;
+        private int next;
+        private int size;
+
+        Ring(int capacity) {
+            times = new long[capacity];
+            mins = new float[capacity];
+            maxes = new float[capacity];
+            sums = new double[capacity];
+            counts = new int[capacity];
+        }
+
+        void add(long time, float min, float max, double sum, int count) {
+            times[next] = time;
+            mins[next] = min;
+            maxes[next] = max;
+            sums[next] = sum;
+            counts[next] = count;
+            next = next + 1 == times.length ? 0 : next + 1;
+            size = Math.min(size + 1, times.length);
+        }
+
+        void query(long sinceMillis, List<Sample> into) {
+            int index = next - size;
+            if (index < 0) {
+                index += times.length;
+            }
+            for (int i = 0; i < size; i++) {
+                if (times[index] >= sinceMillis) {
+                    into.add(new Sample(times[index], mins[index], maxes[index], (float) (sums[index] / counts[index]), counts[index]));
+                }
+                index = index + 1 == times.length ? 0 : index + 1;
+            }
+        }
+    }
+
+    /** An open bucket accumulating points until time moves past it. */
+    private static class Bucket {
+        private final long width;
+        private long start = Long.MIN_VALUE;
+        private float min;
+        private float max;
+        private double sum;
+        private int count;
+
+        Bucket(long width) {
+            this.width = width;
+        }
+
+        /**
+         * Fold a point into the bucket, first closing the current bucket into the ring if the point lies past it.
+         */
+        void add(long time, float pointMin, float pointMax, double pointSum, int pointCount, Ring ring) {
+            final long bucketStart = time - Math.floorMod(time, width);
+            if (bucketStart != start) {
+                if (count > 0) {
+                    ring.add(start, min, max, sum, count);
+                }
+                start = bucketStart;
+                min = pointMin;
+                max = pointMax;
+                sum = 0;
+                count = 0;
+            }
+            min = Math.min(min, pointMin);
+            max = Math.max(max, pointMax);
+            sum += pointSum;
+            count += pointCount;
+        }
+
+        void query(long sinceMillis, List<Sample> into) {
+            if (count > 0 && start >= sinceMillis) {
+                into.add(new Sample(start, min, max, (float) (sum / count), count));
+            }
+        }
+    }
+
+    private static class Series {
+        private final Ring raw;
+        private final Ring seconds;
+        private final Ring tenSeconds;
+        private final Bucket second = new Bucket(Tier.SECOND.getBucketMillis());
+        private final Bucket tenSecond = new Bucket(Tier.TEN_SECONDS.getBucketMillis());
+
+        Series(int rawCapacity, int secondCapacity, int tenSecondCapacity) {
+            raw = new Ring(rawCapacity);
+            seconds = new Ring(secondCapacity);
+            tenSeconds = new Ring(tenSecondCapacity);
+        }
+
+        synchronized void add(long time, float value) {
+            raw.add(time, value, value, value, 1);
+            second.add(time, value, value, value, 1, seconds);
+            tenSecond.add(time, value, value, value, 1, tenSeconds);
+        }
+
+        synchronized List<Sample> query(Tier tier, long sinceMillis) {
+            final List<Sample> samples = new ArrayList<>();
+            switch (tier) {
+                case RAW:
+                    raw.query(sinceMillis, samples);
+                    break;
+                case SECOND:
+                    seconds.query(sinceMillis, samples);
+                    second.query(sinceMillis, samples);
+                    break;
+                case TEN_SECONDS:
+                    tenSeconds.query(sinceMillis, samples);
+                    tenSecond.query(sinceMillis, samples);
+                    break;
+            }
+            return samples;
+        }
+    }
+}
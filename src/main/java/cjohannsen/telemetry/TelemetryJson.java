@@ -0,0 +1,136 @@
+package cjohannsen.telemetry;
+
+import cjohannsen.protocol.MessageType;
+
+/**
+ * Writes {@link TelemetryStore.Snapshot snapshots} as JSON straight from the primitive slots, without decoding
+ * {@link cjohannsen.protocol.Payload}s or going through an object mapper:
+ *
+ * <pre>{"version":"5f3a9c01-42","channels":{"ALTITUDE_MESSAGE":{"sealevel":1234.5,"surface":1200.0},"SOI_MESSAGE":{"name":"Kerbin"}}}</pre>
+ *
+ * Numeric channels are written by their {@link ChannelLayout} field names; the action status channel as its
+ * {@code status} bitmask and the SOI channel as its {@code name}.  Non-finite floats are written as {@code null}.
+ * The version is the snapshot's {@link TelemetryStore.Snapshot#getTag() tag}.
+ */
+public final class TelemetryJson {
+
+    private static final MessageType.Datagram[] CHANNELS = MessageType.Datagram.values();
+
+    private TelemetryJson() {
+    }
+
+    /**
+     * Whether a channel carries telemetry that can be written.
+     * @param type the channel.
+     * @return true for numeric, action status and SOI channels.
+     */
+    public static boolean isTelemetry(final MessageType.Datagram type) {
+        return ChannelLayout.fieldCount(type) > 0
+                || type == MessageType.Datagram.ACTIONSTATUS_MESSAGE
+                || type == MessageType.Datagram.SOI_MESSAGE;
+    }
+
+    /**
+     * Write the channels of a snapshot that changed after a version.
+     * @param out the builder to append to.
+     * @param snapshot the snapshot.
+     * @param channels channels to include, indexed by type value; null for all.
+     * @param sinceVersion only channels updated after this store version are written; 0 for all.
+     * @return the number of channels written.
+     */
+    public static int write(final StringBuilder out, final TelemetryStore.Snapshot snapshot, final boolean[] channels,
+                            final long sinceVersion) {
+        out.append("{\"version\":\"").append(Integer.toHexString(snapshot.getEpoch())).append('-')
+                .append(snapshot.getVersion()).append("\",\"channels\":{");
+        int written = 0;
+        for (MessageType.Datagram type : CHANNELS) {
+            if (!isTelemetry(type) || (channels != null && !channels[type.getValue()])
+                    || snapshot.getChannelVersion(type) <= sinceVersion) {
+                continue;
+            }
+            if (written++ > 0) {
+                out.append(',');
+            }
+            appendChannel(out, snapshot, type);
+        }
+        out.append("}}");
+        return written;
+    }
+
+    /**
+     * Write one channel as {@code "NAME":{...}}.
+     * @param out the builder to append to.
+     * @param snapshot the snapshot holding the channel.
+     * @param type the channel.
+     */
+    public static void appendChannel(final StringBuilder out, final TelemetryStore.Snapshot snapshot, final MessageType.Datagram type) {
+        out.append('"').append(type.name()).append("\":{");
+        switch (type) {
+            case ACTIONSTATUS_MESSAGE:
+                out.append("\"status\":").append(snapshot.getByte(type, 0) & 0xFF);
+                break;
+            case SOI_MESSAGE:
+                out.append("\"name\":\"");
+                final int length = snapshot.getPayloadLength(type);
+                for (int i = 0; i < length; i++) {
+                    final char c = (char) (snapshot.getByte(type, i) & 0xFF);
+                    if (c == 0) {
+                        break;
+                    }
+                    appendEscaped(out, c);
+                }
+                out.append('"');
+                break;
+            default:
+                final String[] names = ChannelLayout.fieldNames(type);
+                final boolean integers = ChannelLayout.isIntegerChannel(type);
+                for (int field = 0; field < names.length; field++) {
+                    if (field > 0) {
+                        out.append(',');
+                    }
+                    out.append('"').append(names[field]).append("\":");
+                    if (integers) {
+                        out.append(snapshot.getInt(type, field));
+                    } else {
+                        final float value = snapshot.getFloat(type, field);
+                        if (Float.isNaN(value) || Float.isInfinite(value)) {
+                            out.append("null");
+                        } else {
+                            out.append(value);
+                        }
+                    }
+                }
+                break;
+        }
+        out.append('}');
+    }
+
+    private static void appendEscaped(final StringBuilder out, final char c) {
+        if (c == '"' || c == '\\') {
+            out.append('\\').append(c);
+        } else if (c < 0x20) {
+            out.append(String.format("\\u%04x", (int) c));
+        } else {
+            out.append(c);
+        }
+    }
+
+    /**
+     * Parse a channel filter.
+     * @param channels comma separated channel names, e.g. {@code ALTITUDE_MESSAGE,VELOCITY_MESSAGE}; empty or null
+     *                 for all channels.
+     * @return the filter indexed by type value, or null for all channels.
+     */
+    public static boolean[] parseChannels(final String channels) {
+        if (channels == null || channels.trim().isEmpty()) {
+            return null;
+        }
+        final boolean[] filter = new boolean[256];
+        for (String name : channels.split(",")) {
+            if (!name.trim().isEmpty()) {
+                filter[MessageType.Datagram.valueOf(name.trim()).getValue()] = true;
+            }
+        }
+        return filter;
+    }
+}
@@ -0,0 +1,272 @@
+package cjohannsen.telemetry;
+
+import cjohannsen.ApplicationState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pushes telemetry to subscribers as Server-Sent Events, instead of having displays poll {@code /status}.
+ *
+ * A subscriber first receives a {@code snapshot} event holding every channel it asked for, then {@code update}
+ * events holding only the channels that changed since its last event.  Each subscriber may filter channels and
+ * ask for a lower rate than {@link #getMaxRateHz() the publisher's}; updates that arrive faster are coalesced, so a
+ * client always gets the latest values.  Events are JSON in the {@link TelemetryJson} format, with the snapshot's
+ * {@link TelemetryStore.Snapshot#getTag() tag} as the event id.
+ *
+ * One publisher thread owns every subscriber, so the store is snapshotted once per tick however many clients are
+ * connected, and nothing is done while the store is unchanged.  The publisher only formats events; the blocking
+ * writes run on sender threads, at most one per subscriber at a time, so a display on a stalled connection cannot hold
+ * up the others.  While a subscriber's previous event is still being written it is skipped, and its next event carries
+ * every change since the last one it was sent.  A subscriber whose write has not finished within the send timeout is
+ * dropped.
+ */
+@Component
+public class TelemetryPublisher {
+    private static final Logger logger = LoggerFactory.getLogger(TelemetryPublisher.class);
+
+    public static final double DEFAULT_MAX_RATE_HZ = 20;
+    public static final long DEFAULT_TIMEOUT_MILLIS = 30 * 60 * 1000L;
+    public static final long DEFAULT_SEND_TIMEOUT_MILLIS = 5000;
+
+    /** Where a subscriber's events go. */
+    interface Sink {
+        void send(String event, String id, String data) throws IOException;
+
+        void close();
+    }
+
+    private static class Subscriber {
+        final Sink sink;
+        final boolean[] channels;
+        final long intervalNanos;
+        long lastVersion = -1;
+        long nextDueNanos;
+        long sendStartedNanos;
+        volatile boolean sending;
+        volatile boolean closed;
+
+        Subscriber(final Sink sink, final boolean[] channels, final long intervalNanos) {
+            this.sink = sink;
+            this.channels = channels;
+            this.intervalNanos = intervalNanos;
+        }
+    }
+
+    private final TelemetryStore store;
+    private final double maxRateHz;
+    private final long timeoutMillis;
+    private final long sendTimeoutNanos;
+    private final Executor sender;
+
+    private final Queue<Subscriber> joining = new ConcurrentLinkedQueue<>();
+    /** Publisher thread only. */
+    private final List<Subscriber> subscribers = new ArrayList<>();
+    private TelemetryStore.Snapshot snapshot;
+    private final StringBuilder json = new StringBuilder(1024);
+
+    private final AtomicLong eventsSent = new AtomicLong();
+    private final AtomicLong subscribersStalled = new AtomicLong();
+    private volatile int subscriberCount;
+    private ScheduledExecutorService executor;
+
+    public TelemetryPublisher(final ApplicationState applicationState) {
+        this(applicationState, DEFAULT_MAX_RATE_HZ, DEFAULT_TIMEOUT_MILLIS, DEFAULT_SEND_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param applicationState holder of the telemetry store to publish.
+     * @param maxRateHz most events per second sent to any subscriber.
+     * @param timeoutMillis how long a stream stays open before the client has to reconnect.
+     * @param sendTimeoutMillis how long one event may take to write before its subscriber is dropped.
+     */
+    @Autowired
+    public TelemetryPublisher(final ApplicationState applicationState,
+                              @Value("${simpit.stream.max-rate:" + DEFAULT_MAX_RATE_HZ + "}") final double maxRateHz,
+                              @Value("${simpit.stream.timeout-millis:" + DEFAULT_TIMEOUT_MILLIS + "}") final long timeoutMillis,
+                              @Value("${simpit.stream.send-timeout-millis:" + DEFAULT_SEND_TIMEOUT_MILLIS + "}") final long sendTimeoutMillis) {
+        this(applicationState, maxRateHz, timeoutMillis, sendTimeoutMillis, Executors.newCachedThreadPool(r -> {
+            final Thread thread = new Thread(r, "telemetry-stream-sender");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * @param sender runs the writes to subscribers.
+     */
+    TelemetryPublisher(final ApplicationState applicationState, final double maxRateHz, final long timeoutMillis,
+                       final long sendTimeoutMillis, final Executor sender) {
+        if (maxRateHz <= 0) {
+            throw new IllegalArgumentException("Rate must be positive: " + maxRateHz);
+        }
+        if (sendTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("Send timeout must be positive: " + sendTimeoutMillis);
+        }
+        this.store = applicationState.getTelemetryStore();
+        this.snapshot = store.snapshot(null);
+        this.maxRateHz = maxRateHz;
+        this.timeoutMillis = timeoutMillis;
+        this.sendTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeoutMillis);
+        this.sender = sender;
+    }
+
+    /**
+     * Open a telemetry stream.
+     * @param channels comma separated channels to stream; empty for all.
+     * @param rateHz most events per second wanted; 0 or more than the maximum for the maximum.
+     * @return the emitter to return from the controller.
+     */
+    public SseEmitter subscribe(final String channels, final double rateHz) {
+        final SseEmitter emitter = new SseEmitter(timeoutMillis);
+        final Subscriber subscriber = subscribe(new Sink() {
+            @Override
+            public void send(final String event, final String id, final String data) throws IOException {
+                emitter.send(SseEmitter.event().name(event).id(id).data(data));
+            }
+
+            @Override
+            public void close() {
+                emitter.complete();
+            }
+        }, TelemetryJson.parseChannels(channels), rateHz);
+        emitter.onCompletion(() -> subscriber.closed = true);
+        emitter.onTimeout(() -> subscriber.closed = true);
+        start();
+        return emitter;
+    }
+
+    Subscriber subscribe(final Sink sink, final boolean[] channels, final double rateHz) {
+        final double rate = rateHz <= 0 ? maxRateHz : Math.min(rateHz, maxRateHz);
+        final Subscriber subscriber = new Subscriber(sink, channels, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+        joining.add(subscriber);
+        return subscriber;
+    }
+
+    public double getMaxRateHz() {
+        return maxRateHz;
+    }
+
+    public int getSubscriberCount() {
+        return subscriberCount;
+    }
+
+    public long getEventsSent() {
+        return eventsSent.get();
+    }
+
+    /**
+     * Subscribers dropped because writing an event to them took longer than the send timeout.
+     * @return number of stalled subscribers.
+     */
+    public long getSubscribersStalled() {
+        return subscribersStalled.get();
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    private synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        logger.info("Starting telemetry publisher at up to " + maxRateHz + " Hz.");
+        executor = Executors.newSingleThreadScheduledExecutor();
+        final long periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / maxRateHz);
+        executor.scheduleAtFixedRate(() -> {
+            try {
+                publish(System.nanoTime());
+            } catch (RuntimeException e) {
+                logger.error("Telemetry publishing failed", e);
+            }
+        }, 0, periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Send every due subscriber the channels that changed since its last event.  Publisher thread only.
+     * @param now {@link System#nanoTime()} of the tick.
+     */
+    void publish(final long now) {
+        Subscriber joined;
+        while ((joined = joining.poll()) != null) {
+            subscribers.add(joined);
+        }
+        subscribers.removeIf(s -> s.closed);
+        subscriberCount = subscribers.size();
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        if (store.getVersion() != snapshot.getVersion()) {
+            snapshot = store.snapshot(snapshot);
+        }
+        final long version = snapshot.getVersion();
+        final String tag = snapshot.getTag();
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.sending) {
+                if (now - subscriber.sendStartedNanos > sendTimeoutNanos) {
+                    logger.debug("Dropping stalled telemetry subscriber.");
+                    subscribersStalled.incrementAndGet();
+                    // Closing may wait for the stalled write to give up, so it is left to a sender thread.
+                    subscriber.closed = true;
+                    sender.execute(subscriber.sink::close);
+                }
+                continue;
+            }
+            final boolean first = subscriber.lastVersion < 0;
+            if (!first && (subscriber.lastVersion == version || now - subscriber.nextDueNanos < 0)) {
+                continue;
+            }
+            json.setLength(0);
+            final int channels = TelemetryJson.write(json, snapshot, subscriber.channels, first ? 0 : subscriber.lastVersion);
+            subscriber.lastVersion = version;
+            if (!first && channels == 0) {
+                // Only channels outside the subscriber's filter changed.
+                continue;
+            }
+            subscriber.nextDueNanos = now + subscriber.intervalNanos;
+            subscriber.sendStartedNanos = now;
+            subscriber.sending = true;
+            final String event = first ? "snapshot" : "update";
+            final String data = json.toString();
+            sender.execute(() -> send(subscriber, event, tag, data));
+        }
+    }
+
+    /**
+     * Write one event.  Sender thread.
+     */
+    private void send(final Subscriber subscriber, final String event, final String id, final String data) {
+        try {
+            subscriber.sink.send(event, id, data);
+            eventsSent.incrementAndGet();
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Dropping telemetry subscriber: " + e.getMessage());
+            drop(subscriber);
+        } finally {
+            subscriber.sending = false;
+        }
+    }
+
+    private void drop(final Subscriber subscriber) {
+        subscriber.closed = true;
+        subscriber.sink.close();
+    }
+}
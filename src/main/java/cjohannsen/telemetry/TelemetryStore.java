@@ -0,0 +1,254 @@
+package cjohannsen.telemetry;
+
+import cjohannsen.protocol.MessageType;
+import cjohannsen.protocol.Packet;
+import cjohannsen.protocol.Payload;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latest telemetry for every datagram channel, held in fixed primitive slots rather than boxed {@link Payload}s.
+ *
+ * Each channel owns {@link #WORDS_PER_CHANNEL} 32-bit words holding its payload as received, so every 4-byte field
+ * (the floats and ints of the KerbalSimpit message structs) lives in its own slot and is read with
+ * {@link Float#intBitsToFloat(int)} or as-is.  Shorter fields (the action group byte, the SOI string) are packed
+ * little-endian into the same words.
+ *
+ * Writes are guarded by a sequence lock: the sequence is odd while an update is in progress, and the global
+ * {@link #getVersion() version} is the number of completed updates.  Readers take {@link #snapshot(Snapshot)
+ * snapshots} that are consistent across all channels, retrying if a write overlapped, and never block the writer.
+ *
+ * Versions restart from 0 with every process, so clients are handed {@link Snapshot#getTag() tags} that qualify the
+ * version with a random {@link #getEpoch() epoch} chosen when the store is created.
+ */
+public class TelemetryStore {
+
+    public static final int WORDS_PER_CHANNEL = (Packet.PACKET_SIZE - Packet.MESSAGE_HEADER_SIZE) / 4;
+
+    /** One slot per datagram type value. */
+    public static final int CHANNELS;
+    static {
+        int max = 0;
+        for (MessageType.Datagram d : MessageType.Datagram.values()) {
+            if (d != MessageType.Datagram.UNDEFINED) {
+                max = Math.max(max, d.getValue());
+            }
+        }
+        CHANNELS = max + 1;
+    }
+
+    private final int epoch = new Random().nextInt();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicIntegerArray words = new AtomicIntegerArray(CHANNELS * WORDS_PER_CHANNEL);
+    private final AtomicIntegerArray lengths = new AtomicIntegerArray(CHANNELS);
+    private final AtomicLongArray channelVersions = new AtomicLongArray(CHANNELS);
+
+    /**
+     * Store the payload received on a channel.  Allocation free.
+     * @param type the channel.
+     * @param bytes array holding the payload.
+     * @param offset index of the first payload byte.
+     * @param length payload length, at most {@link #WORDS_PER_CHANNEL} * 4 bytes.
+     */
+    public synchronized void update(final MessageType.Datagram type, final byte[] bytes, final int offset, final int length) {
+        final int channel = type.getValue();
+        if (channel >= CHANNELS) {
+            return;
+        }
+        final int size = Math.min(length, WORDS_PER_CHANNEL * 4);
+        final long seq = sequence.get();
+        sequence.set(seq + 1);
+
+        final int base = channel * WORDS_PER_CHANNEL;
+        for (int w = 0; w < WORDS_PER_CHANNEL; w++) {
+            int word = 0;
+            for (int b = 0; b < 4; b++) {
+                final int index = w * 4 + b;
+                if (index < size) {
+                    word |= (bytes[offset + index] & 0xFF) << (8 * b);
+                }
+            }
+            words.lazySet(base + w, word);
+        }
+        lengths.lazySet(channel, size);
+        channelVersions.lazySet(channel, (seq >>> 1) + 1);
+
+        sequence.lazySet(seq + 2);
+    }
+
+    /**
+     * Random id of this store, and so of this process.
+     * @return the epoch.
+     */
+    public int getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Number of completed updates.  Changes whenever any channel changes.
+     * @return the current version.
+     */
+    public long getVersion() {
+        return sequence.get() >>> 1;
+    }
+
+    /**
+     * Copy the whole store into a snapshot, consistent across channels.
+     * @param into snapshot to overwrite, or null to allocate a new one.
+     * @return the filled snapshot.
+     */
+    public Snapshot snapshot(final Snapshot into) {
+        final Snapshot snapshot = into != null ? into : new Snapshot();
+        while (true) {
+            final long before = sequence.get();
+            if ((before & 1) != 0) {
+                Thread.yield();
+                continue;
+            }
+            for (int i = 0; i < snapshot.words.length; i++) {
+                snapshot.words[i] = words.get(i);
+            }
+            for (int c = 0; c < CHANNELS; c++) {
+                snapshot.lengths[c] = lengths.get(c);
+                snapshot.channelVersions[c] = channelVersions.get(c);
+            }
+            if (sequence.get() == before) {
+                snapshot.epoch = epoch;
+                snapshot.version = before >>> 1;
+                return snapshot;
+            }
+        }
+    }
+
+    /**
+     * Read a single 32-bit float field of a channel.  Atomic for the field, but not across fields.
+     * @param type the channel.
+     * @param field index of the 4-byte field within the payload.
+     * @return the field value.
+     */
+    public float getFloat(final MessageType.Datagram type, final int field) {
+        return Float.intBitsToFloat(getInt(type, field));
+    }
+
+    public int getInt(final MessageType.Datagram type, final int field) {
+        return words.get(type.getValue() * WORDS_PER_CHANNEL + field);
+    }
+
+    public boolean has(final MessageType.Datagram type) {
+        return type.getValue() < CHANNELS && channelVersions.get(type.getValue()) != 0;
+    }
+
+    /**
+     * A point-in-time copy of the store.  Reusable across {@link #snapshot(Snapshot)} calls.
+     */
+    public static class Snapshot {
+        private final int[] words = new int[CHANNELS * WORDS_PER_CHANNEL];
+        private final int[] lengths = new int[CHANNELS];
+        private final long[] channelVersions = new long[CHANNELS];
+        private int epoch;
+        private long version;
+
+        /**
+         * The store version this snapshot was taken at.
+         * @return the number of updates included.
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        public int getEpoch() {
+            return epoch;
+        }
+
+        /**
+         * The version qualified by the store epoch, e.g. {@code 5f3a9c01-42}, as handed to clients in ETags, event
+         * ids and documents and sent back as {@code since}.  Unlike the bare version it never repeats across restarts.
+         * @return the tag.
+         */
+        public String getTag() {
+            return Integer.toHexString(epoch) + '-' + version;
+        }
+
+        /**
+         * The version a client's {@code since} tag refers to.
+         * @param tag a tag from {@link #getTag()}; empty for none.
+         * @return the tag's version if it came from this store, otherwise 0 so that every channel is sent again.
+         * @throws IllegalArgumentException if the tag is malformed.
+         */
+        public long sinceVersion(final String tag) {
+            final String trimmed = tag.trim();
+            if (trimmed.isEmpty()) {
+                return 0;
+            }
+            final int dash = trimmed.indexOf('-');
+            if (dash <= 0) {
+                throw new IllegalArgumentException("Invalid since '" + trimmed + "', expected epoch-version.");
+            }
+            try {
+                final int tagEpoch = Integer.parseUnsignedInt(trimmed.substring(0, dash), 16);
+                final long tagVersion = Long.parseLong(trimmed.substring(dash + 1));
+                return tagEpoch == epoch ? tagVersion : 0;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid since '" + trimmed + "', expected epoch-version.");
+            }
+        }
+
+        public boolean has(final MessageType.Datagram type) {
+            return type.getValue() < CHANNELS && channelVersions[type.getValue()] != 0;
+        }
+
+        /**
+         * The store version at which a channel last changed.
+         * @param type the channel.
+         * @return the version of the channel's last update, or 0 if it has never been received.
+         */
+        public long getChannelVersion(final MessageType.Datagram type) {
+            return type.getValue() < CHANNELS ? channelVersions[type.getValue()] : 0;
+        }
+
+        public int getPayloadLength(final MessageType.Datagram type) {
+            return lengths[type.getValue()];
+        }
+
+        public float getFloat(final MessageType.Datagram type, final int field) {
+            return Float.intBitsToFloat(getInt(type, field));
+        }
+
+        public int getInt(final MessageType.Datagram type, final int field) {
+            return words[type.getValue() * WORDS_PER_CHANNEL + field];
+        }
+
+        public byte getByte(final MessageType.Datagram type, final int index) {
+            return (byte) (words[type.getValue() * WORDS_PER_CHANNEL + index / 4] >>> (8 * (index % 4)));
+        }
+
+        /**
+         * Copy a channel's payload bytes into an array.
+         * @param type the channel.
+         * @param dest destination array.
+         * @param offset index in dest of the first byte.
+         * @return number of bytes copied.
+         */
+        public int copyPayload(final MessageType.Datagram type, final byte[] dest, final int offset) {
+            final int length = lengths[type.getValue()];
+            for (int i = 0; i < length; i++) {
+                dest[offset + i] = getByte(type, i);
+            }
+            return length;
+        }
+
+        /**
+         * Copy a channel's payload bytes into a new array.  Allocates; intended for cold paths.
+         * @param type the channel.
+         * @return the payload bytes.
+         */
+        public byte[] getPayload(final MessageType.Datagram type) {
+            final byte[] payload = new byte[lengths[type.getValue()]];
+            copyPayload(type, payload, 0);
+            return payload;
+        }
+    }
+}
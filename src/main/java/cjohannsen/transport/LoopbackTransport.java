@@ -0,0 +1,131 @@
+package cjohannsen.transport;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An in-memory link.  A loopback transport and its {@link #getPeer() peer} are the two ends of a pair of bounded byte
+ * pipes: what one end writes, the other end reads.  There is no baud rate, so the link runs as fast as both ends can
+ * go; a write to a full pipe waits for the reader to make room.
+ */
+public class LoopbackTransport implements Transport {
+
+    public static final int DEFAULT_CAPACITY = 64 * 1024;
+
+    private final Pipe in;
+    private final Pipe out;
+    private final LoopbackTransport peer;
+    private volatile int readTimeoutMillis = 1000;
+
+    public LoopbackTransport() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity bytes buffered in each direction.
+     */
+    public LoopbackTransport(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.in = new Pipe(capacity);
+        this.out = new Pipe(capacity);
+        this.peer = new LoopbackTransport(this);
+    }
+
+    private LoopbackTransport(final LoopbackTransport peer) {
+        this.in = peer.out;
+        this.out = peer.in;
+        this.peer = peer;
+    }
+
+    /**
+     * The other end of the link.
+     * @return the transport that reads what this one writes, and vice versa.
+     */
+    public LoopbackTransport getPeer() {
+        return peer;
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int length) {
+        try {
+            return in.read(buffer, length, TimeUnit.MILLISECONDS.toNanos(readTimeoutMillis));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    @Override
+    public int write(final byte[] buffer, final int length) {
+        try {
+            out.write(buffer, length);
+            return length;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    @Override
+    public void setReadTimeout(final int timeoutMillis) {
+        this.readTimeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Bytes written by the peer and not yet read.
+     * @return number of buffered bytes.
+     */
+    public int available() {
+        return in.size();
+    }
+
+    /** A bounded single-direction byte ring. */
+    private static class Pipe {
+        private final byte[] ring;
+        private int head;
+        private int size;
+
+        Pipe(final int capacity) {
+            this.ring = new byte[capacity];
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized int read(final byte[] buffer, final int length, final long timeoutNanos) throws InterruptedException {
+            final long deadline = System.nanoTime() + timeoutNanos;
+            while (size == 0) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return 0;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            final int count = Math.min(length, size);
+            final int first = Math.min(count, ring.length - head);
+            System.arraycopy(ring, head, buffer, 0, first);
+            System.arraycopy(ring, 0, buffer, first, count - first);
+            head = (head + count) % ring.length;
+            size -= count;
+            notifyAll();
+            return count;
+        }
+
+        synchronized void write(final byte[] buffer, final int length) throws InterruptedException {
+            int written = 0;
+            while (written < length) {
+                while (size == ring.length) {
+                    wait();
+                }
+                final int tail = (head + size) % ring.length;
+                final int count = Math.min(length - written, Math.min(ring.length - size, ring.length - tail));
+                System.arraycopy(buffer, written, ring, tail, count);
+                size += count;
+                written += count;
+                notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package cjohannsen.transport;
+
+import cjohannsen.SimpitHost;
+import cjohannsen.protocol.MessageType;
+import cjohannsen.protocol.Packet;
+import cjohannsen.recorder.FlightRecordReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays a {@link cjohannsen.recorder.FlightRecorder flight recording} back as if it were arriving on the serial port,
+ * so the normal handshake, {@link cjohannsen.protocol.PacketSource} and dispatch code run unchanged.
+ *
+ * Nothing is delivered until the host writes its handshake SYN, which is answered with a synthesized ACK; the
+ * recording's own handshake frames are skipped.  Recorded frames are then replayed with their original spacing
+ * divided by the speed, or back to back at {@link #AS_FAST_AS_POSSIBLE}, which makes a repeatable throughput
+ * benchmark out of real flight traffic; pair it with the {@code BLOCK} overflow policy so the inbound queue applies
+ * back pressure instead of dropping.  Everything else the host writes is accepted and discarded.
+ *
+ * Frames are produced on the thread calling {@link #read(byte[], int)}.
+ */
+public class ReplayTransport implements Transport {
+    private static final Logger logger = LoggerFactory.getLogger(ReplayTransport.class);
+
+    /** Speed that replays every frame as soon as the reader asks for more. */
+    public static final double AS_FAST_AS_POSSIBLE = 0;
+
+    private static final byte[] ACK_FRAME;
+    static {
+        final byte[] version = SimpitHost.KERBALSIMPIT_VERSION.getBytes();
+        final byte[] payload = new byte[version.length + 2];
+        payload[0] = SimpitHost.HANDSHAKE_ACK;
+        System.arraycopy(version, 0, payload, 1, version.length);
+        ACK_FRAME = frame(MessageType.Datagram.SYNC_MESSAGE, payload);
+    }
+
+    private final FlightRecordReader.Cursor cursor;
+    private final double speed;
+    private final Object handshakeLock = new Object();
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    private volatile int readTimeoutMillis = 1000;
+    private boolean synReceived;
+    private boolean playing;
+    private boolean hasRecord;
+    private long firstRecordNanos;
+    private long startNanos;
+    private volatile long elapsedNanos;
+    private volatile long framesReplayed;
+    private volatile long bytesReplayed;
+    private volatile long framesSkipped;
+
+    /**
+     * @param recording a segment file or a flight recorder directory.
+     * @param speed playback speed: 1 for real time, 2 for twice as fast, ... or {@link #AS_FAST_AS_POSSIBLE}.
+     * @throws IOException if the recording cannot be listed.
+     */
+    public ReplayTransport(final Path recording, final double speed) throws IOException {
+        if (speed < 0) {
+            throw new IllegalArgumentException("Speed must not be negative: " + speed);
+        }
+        this.cursor = FlightRecordReader.Cursor.open(recording);
+        this.speed = speed;
+    }
+
+    /**
+     * Parse a playback speed: a multiple of real time such as {@code 1}, {@code 2} or {@code 10x}, or {@code max}.
+     * @param speed the speed to parse.
+     * @return the speed, {@link #AS_FAST_AS_POSSIBLE} for {@code max}.
+     */
+    public static double parseSpeed(final String speed) {
+        final String trimmed = speed.trim().toLowerCase();
+        if (trimmed.equals("max")) {
+            return AS_FAST_AS_POSSIBLE;
+        }
+        final double value = Double.parseDouble(trimmed.endsWith("x") ? trimmed.substring(0, trimmed.length() - 1) : trimmed);
+        if (value <= 0) {
+            throw new IllegalArgumentException("Invalid replay speed '" + speed + "', expected a positive multiple or 'max'.");
+        }
+        return value;
+    }
+
+    /**
+     * @param buffer array to read into, from index 0.
+     * @param length maximum number of bytes to read; at least {@link Packet#PACKET_SIZE}.
+     * @return the number of bytes of whole frames read; 0 if none were due before the read timeout.
+     */
+    @Override
+    public int read(final byte[] buffer, final int length) {
+        if (length < Packet.PACKET_SIZE) {
+            throw new IllegalArgumentException("Read length must be at least " + Packet.PACKET_SIZE + ": " + length);
+        }
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(readTimeoutMillis);
+        try {
+            if (!playing) {
+                return awaitHandshake(buffer, deadline);
+            }
+            if (!hasRecord) {
+                LockSupport.parkNanos(deadline - System.nanoTime());
+                return 0;
+            }
+            long now = System.nanoTime();
+            final long due = dueNanos(cursor.getArrivalNanos());
+            if (due - deadline > 0) {
+                LockSupport.parkNanos(deadline - now);
+                return 0;
+            }
+            while (due - now > 0) {
+                LockSupport.parkNanos(due - now);
+                now = System.nanoTime();
+            }
+
+            int size = 0;
+            while (hasRecord && size + Packet.MESSAGE_HEADER_SIZE + cursor.getLength() <= length
+                    && dueNanos(cursor.getArrivalNanos()) - now <= 0) {
+                size += encode(buffer, size);
+                advance();
+            }
+            return size;
+        } catch (IOException e) {
+            logger.error("Replay failed: " + e.getMessage());
+            hasRecord = false;
+            finish();
+            return -1;
+        }
+    }
+
+    @Override
+    public int write(final byte[] buffer, final int length) {
+        if (length > Packet.MESSAGE_HEADER_SIZE
+                && buffer[0] == Packet.PACKET_HEADER_BYTE_0 && buffer[1] == Packet.PACKET_HEADER_BYTE_1
+                && buffer[Packet.MESSAGE_TYPE_INDEX] == MessageType.Command.SYNC_MESSAGE.getValue()
+                && buffer[Packet.MESSAGE_HEADER_SIZE] == SimpitHost.HANDSHAKE_SYN) {
+            synchronized (handshakeLock) {
+                synReceived = true;
+                handshakeLock.notifyAll();
+            }
+        }
+        return length;
+    }
+
+    @Override
+    public void setReadTimeout(final int timeoutMillis) {
+        this.readTimeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Wait for the whole recording to be handed to the reader.
+     * @param timeout how long to wait.
+     * @param unit unit of the timeout.
+     * @return true if the replay finished in time.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean awaitFinished(final long timeout, final TimeUnit unit) throws InterruptedException {
+        return finished.await(timeout, unit);
+    }
+
+    public boolean isFinished() {
+        return finished.getCount() == 0;
+    }
+
+    public long getFramesReplayed() {
+        return framesReplayed;
+    }
+
+    public long getBytesReplayed() {
+        return bytesReplayed;
+    }
+
+    /**
+     * Recorded handshake frames left out of the replay.
+     * @return number of skipped frames.
+     */
+    public long getFramesSkipped() {
+        return framesSkipped;
+    }
+
+    /**
+     * Time from the first replayed frame to the end of the recording, once finished.
+     * @return elapsed nanoseconds, 0 while still replaying.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    private int awaitHandshake(final byte[] buffer, final long deadline) throws IOException {
+        synchronized (handshakeLock) {
+            while (!synReceived) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return 0;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(handshakeLock, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return 0;
+                }
+            }
+        }
+        logger.info("Replay answering handshake, at {}.", speed == AS_FAST_AS_POSSIBLE ? "full speed" : speed + "x");
+        System.arraycopy(ACK_FRAME, 0, buffer, 0, ACK_FRAME.length);
+        playing = true;
+        startNanos = System.nanoTime();
+        advance();
+        firstRecordNanos = cursor.getArrivalNanos();
+        return ACK_FRAME.length;
+    }
+
+    private void advance() throws IOException {
+        while ((hasRecord = cursor.next()) && cursor.getType() == MessageType.Datagram.SYNC_MESSAGE.getValue()) {
+            framesSkipped++;
+        }
+        if (!hasRecord) {
+            finish();
+        }
+    }
+
+    private long dueNanos(final long arrivalNanos) {
+        if (speed == AS_FAST_AS_POSSIBLE) {
+            return startNanos;
+        }
+        return startNanos + (long) ((arrivalNanos - firstRecordNanos) / speed);
+    }
+
+    private int encode(final byte[] buffer, final int offset) {
+        final int length = cursor.getLength();
+        buffer[offset] = Packet.PACKET_HEADER_BYTE_0;
+        buffer[offset + 1] = Packet.PACKET_HEADER_BYTE_1;
+        buffer[offset + Packet.MESSAGE_SIZE_INDEX] = (byte) length;
+        buffer[offset + Packet.MESSAGE_TYPE_INDEX] = (byte) cursor.getType();
+        System.arraycopy(cursor.getPayload(), 0, buffer, offset + Packet.MESSAGE_HEADER_SIZE, length);
+        framesReplayed++;
+        bytesReplayed += Packet.MESSAGE_HEADER_SIZE + length;
+        return Packet.MESSAGE_HEADER_SIZE + length;
+    }
+
+    private void finish() {
+        if (isFinished()) {
+            return;
+        }
+        elapsedNanos = System.nanoTime() - startNanos;
+        final double seconds = elapsedNanos / 1e9;
+        logger.info("Replay finished: {} frames, {} bytes in {} ms ({} frames/s, {} bytes/s).",
+                framesReplayed, bytesReplayed, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                seconds > 0 ? Math.round(framesReplayed / seconds) : framesReplayed,
+                seconds > 0 ? Math.round(bytesReplayed / seconds) : bytesReplayed);
+        finished.countDown();
+    }
+
+    private static byte[] frame(final MessageType.Datagram type, final byte[] payload) {
+        final byte[] frame = new byte[Packet.MESSAGE_HEADER_SIZE + payload.length];
+        frame[0] = Packet.PACKET_HEADER_BYTE_0;
+        frame[1] = Packet.PACKET_HEADER_BYTE_1;
+        frame[Packet.MESSAGE_SIZE_INDEX] = (byte) payload.length;
+        frame[Packet.MESSAGE_TYPE_INDEX] = (byte) type.getValue();
+        System.arraycopy(payload, 0, frame, Packet.MESSAGE_HEADER_SIZE, payload.length);
+        return frame;
+    }
+}
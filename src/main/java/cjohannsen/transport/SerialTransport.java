@@ -0,0 +1,38 @@
+package cjohannsen.transport;
+
+import com.fazecast.jSerialComm.SerialPort;
+
+/**
+ * A transport over a jSerialComm serial port.
+ */
+public class SerialTransport implements Transport {
+
+    private final SerialPort serialPort;
+
+    /**
+     * @param serialPort an open serial port.
+     */
+    public SerialTransport(final SerialPort serialPort) {
+        this.serialPort = serialPort;
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int length) {
+        return serialPort.readBytes(buffer, length);
+    }
+
+    @Override
+    public int write(final byte[] buffer, final int length) {
+        return serialPort.writeBytes(buffer, length);
+    }
+
+    @Override
+    public void setReadTimeout(final int timeoutMillis) {
+        // Semi-blocking: the driver returns as soon as any byte arrives, or empty after the timeout.
+        serialPort.setComPortTimeouts(SerialPort.TIMEOUT_READ_SEMI_BLOCKING, timeoutMillis, 0);
+    }
+
+    public SerialPort getSerialPort() {
+        return serialPort;
+    }
+}
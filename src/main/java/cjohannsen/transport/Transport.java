@@ -0,0 +1,29 @@
+package cjohannsen.transport;
+
+/**
+ * A byte link to KerbalSimpit.  {@link cjohannsen.protocol.PacketSource} reads from it and
+ * {@link cjohannsen.SimpitHost} writes to it; neither knows what is on the other end.
+ */
+public interface Transport {
+
+    /**
+     * Read whatever is available, waiting up to the {@link #setReadTimeout(int) read timeout} for at least one byte.
+     * @param buffer array to read into, from index 0.
+     * @param length maximum number of bytes to read.
+     * @return the number of bytes read; 0 if the timeout expired first, negative on error.
+     */
+    int read(byte[] buffer, int length);
+
+    /**
+     * Write bytes to the link.
+     * @param buffer array holding the bytes, from index 0.
+     * @param length number of bytes to write.
+     * @return the number of bytes written, negative on error.
+     */
+    int write(byte[] buffer, int length);
+
+    /**
+     * @param timeoutMillis how long {@link #read(byte[], int)} waits on a silent link.
+     */
+    void setReadTimeout(int timeoutMillis);
+}
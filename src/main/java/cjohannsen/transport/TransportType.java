@@ -0,0 +1,13 @@
+package cjohannsen.transport;
+
+/**
+ * The kinds of link the application can run over, selected with {@code simpit.transport}.
+ */
+public enum TransportType {
+    /** The first serial port, or {@code simpit.serial.port}. */
+    SERIAL,
+    /** An in-process {@link cjohannsen.simulator.KerbalSimpitSimulator} over a {@link LoopbackTransport}. */
+    SIMULATOR,
+    /** A flight recording played back by a {@link ReplayTransport}. */
+    REPLAY
+}
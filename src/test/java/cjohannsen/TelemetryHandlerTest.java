@@ -0,0 +1,49 @@
+package cjohannsen;
+
+import cjohannsen.broadcast.TelemetryBroadcaster;
+import cjohannsen.metrics.StartupReport;
+import cjohannsen.protocol.MessageType;
+import cjohannsen.protocol.Payload;
+import cjohannsen.telemetry.TelemetryFilter;
+import cjohannsen.telemetry.TelemetryHistory;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TelemetryHandlerTest {
+
+    public static final double MAX_DELTA = 0.01;
+
+    @Test
+    public void update_steadyChannelFillsHistoryBuckets() {
+        ApplicationState state = new ApplicationState();
+        TelemetryHistory history = new TelemetryHistory(64, 64, 64);
+        TelemetryHandler handler = new TelemetryHandler(state, new TelemetryFilter(), history,
+                new TelemetryBroadcaster(), new StartupReport("none"));
+        byte[] altitude = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putFloat(1000f).putFloat(900f).array();
+
+        for (long time = 0; time < 20000; time += 500) {
+            handler.update(MessageType.Datagram.ALTITUDE_MESSAGE, altitude, 0, altitude.length,
+                    Payload.AltitudeMessage::from, 0, time);
+        }
+
+        assertEquals(1, state.getTelemetryStore().getVersion());
+        List<TelemetryHistory.Sample> seconds = history.query(MessageType.Datagram.ALTITUDE_MESSAGE, "sealevel",
+                TelemetryHistory.Tier.SECOND, 0);
+        assertEquals(20, seconds.size());
+        for (int i = 0; i < seconds.size(); i++) {
+            assertEquals(1000L * i, seconds.get(i).getTime());
+            assertEquals(2, seconds.get(i).getCount());
+            assertEquals(1000f, seconds.get(i).getMean(), MAX_DELTA);
+        }
+        List<TelemetryHistory.Sample> tenSeconds = history.query(MessageType.Datagram.ALTITUDE_MESSAGE, "sealevel",
+                TelemetryHistory.Tier.TEN_SECONDS, 0);
+        assertEquals(2, tenSeconds.size());
+        assertEquals(20, tenSeconds.get(0).getCount());
+        assertEquals(20, tenSeconds.get(1).getCount());
+    }
+}
@@ -0,0 +1,86 @@
+package cjohannsen.broadcast;
+
+import cjohannsen.protocol.MessageType;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TelemetryBroadcasterTest {
+
+    @Test(timeout = 10000)
+    public void offer_batchesUpdatesIntoDatagramsOnLoopback() throws IOException {
+        try (BroadcastReceiver receiver = new BroadcastReceiver(new InetSocketAddress("127.0.0.1", 0))) {
+            // Room for the header and four, but not five, 8 byte altitude updates per datagram.
+            int mtu = TelemetryBroadcaster.HEADER_SIZE + 4 * (TelemetryBroadcaster.RECORD_HEADER_SIZE + 8) + 8;
+            TelemetryBroadcaster broadcaster = new TelemetryBroadcaster(true, "127.0.0.1:" + receiver.getLocalAddress().getPort(), mtu, 64, 1);
+            broadcaster.start();
+            for (int i = 0; i < 10; i++) {
+                broadcaster.offer(MessageType.Datagram.ALTITUDE_MESSAGE, new byte[]{(byte) i, 0, 0, 0, 0, 0, 0, 0}, 0, 8);
+            }
+
+            List<Integer> values = new ArrayList<>();
+            List<Long> sequences = new ArrayList<>();
+            while (values.size() < 10) {
+                int count = receiver.receive((sequence, type, payload, offset, length) -> {
+                    assertEquals(MessageType.Datagram.ALTITUDE_MESSAGE.getValue(), type);
+                    assertEquals(8, length);
+                    values.add((int) payload[offset]);
+                    if (sequences.isEmpty() || sequences.get(sequences.size() - 1) != sequence) {
+                        sequences.add(sequence);
+                    }
+                });
+                assertTrue(count <= 4);
+            }
+            broadcaster.stop();
+
+            for (int i = 0; i < 10; i++) {
+                assertEquals(i, (int) values.get(i));
+            }
+            for (int i = 0; i < sequences.size(); i++) {
+                assertEquals(i, (long) sequences.get(i));
+            }
+            assertEquals(10, broadcaster.getUpdatesSent());
+            assertEquals(sequences.size(), broadcaster.getDatagramsSent());
+            assertEquals(0, receiver.getLostCount());
+        }
+    }
+
+    @Test
+    public void decode_countsLostAndDropsLateDatagrams() throws IOException {
+        try (BroadcastReceiver receiver = new BroadcastReceiver(new InetSocketAddress("127.0.0.1", 0))) {
+            List<Long> delivered = new ArrayList<>();
+            BroadcastReceiver.UpdateListener listener = (sequence, type, payload, offset, length) -> delivered.add(sequence);
+
+            assertEquals(1, receiver.decode(datagram(7, 0), listener));
+            assertEquals(1, receiver.decode(datagram(7, 3), listener));
+            assertEquals(0, receiver.decode(datagram(7, 2), listener));
+            assertEquals(1, receiver.decode(datagram(8, 0), listener));
+
+            assertEquals(3, delivered.size());
+            assertEquals(2, receiver.getLostCount());
+            assertEquals(1, receiver.getLateCount());
+            assertEquals(3, receiver.getReceivedCount());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseTargets_rejectsMissingPort() {
+        TelemetryBroadcaster.parseTargets("239.255.83.80");
+    }
+
+    private static ByteBuffer datagram(final int session, final long sequence) {
+        ByteBuffer buffer = ByteBuffer.allocate(TelemetryBroadcaster.HEADER_SIZE + 3).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(TelemetryBroadcaster.MAGIC).putInt(session).putLong(sequence).putShort((short) 1);
+        buffer.put((byte) MessageType.Datagram.SOI_MESSAGE.getValue()).put((byte) 1).put((byte) 'M');
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,158 @@
+package cjohannsen.control;
+
+import cjohannsen.protocol.CommandWriter;
+import cjohannsen.protocol.FrameParser;
+import cjohannsen.protocol.MessageType;
+import cjohannsen.protocol.Packet;
+import cjohannsen.protocol.Payload;
+import cjohannsen.transport.LoopbackTransport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ControlStreamerTest {
+
+    private LoopbackTransport transport;
+    private CommandWriter writer;
+    private ControlStreamer streamer;
+    private final FrameParser parser = new FrameParser();
+    private final List<byte[]> frames = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        transport = new LoopbackTransport();
+        transport.getPeer().setReadTimeout(200);
+        writer = new CommandWriter(transport);
+        writer.start();
+        streamer = new ControlStreamer(writer, 50, 100);
+    }
+
+    @After
+    public void tearDown() {
+        writer.stop();
+    }
+
+    /** Read frames written so far, waiting until at least {@code count} have arrived. */
+    private void receive(int count) {
+        byte[] buffer = new byte[256];
+        while (frames.size() < count) {
+            int read = transport.getPeer().read(buffer, buffer.length);
+            if (read <= 0) {
+                break;
+            }
+            parser.feed(buffer, 0, read, (b, offset, length) -> frames.add(Arrays.copyOfRange(b, offset, offset + length)));
+        }
+    }
+
+    private static byte[] payload(byte[] frame) {
+        return Arrays.copyOfRange(frame, Packet.MESSAGE_HEADER_SIZE, frame.length);
+    }
+
+    @Test
+    public void tick_sendsOnlyMovedAxes() {
+        streamer.set(Axis.PITCH, 0.5f);
+        streamer.set(Axis.THROTTLE, 1f);
+
+        streamer.tick();
+        receive(2);
+
+        assertEquals(2, frames.size());
+        assertEquals(MessageType.Command.ROTATION_MESSAGE.getValue(), frames.get(0)[Packet.MESSAGE_TYPE_INDEX]);
+        Payload.RotationMessage rotation = Payload.RotationMessage.from(payload(frames.get(0)));
+        assertEquals(16384, rotation.pitch);
+        assertEquals(Payload.RotationMessage.PITCH, rotation.mask);
+        assertEquals(MessageType.Command.THROTTLE_MESSAGE.getValue(), frames.get(1)[Packet.MESSAGE_TYPE_INDEX]);
+        assertEquals(Short.MAX_VALUE, Payload.ThrottleMessage.from(payload(frames.get(1))).throttle);
+        assertEquals(2, streamer.getFramesSent());
+    }
+
+    @Test
+    public void tick_skipsChangesInsideDeadband() throws InterruptedException {
+        streamer.set(Axis.YAW, 1000);
+        streamer.tick();
+        receive(1);
+
+        streamer.set(Axis.YAW, 1050);
+        Thread.sleep(20);
+        streamer.tick();
+
+        assertEquals(1, streamer.getFramesSent());
+    }
+
+    @Test
+    public void tick_alwaysSendsReturnToCentre() {
+        streamer.set(Axis.WHEEL_STEER, 1000);
+        streamer.tick();
+        receive(1);
+
+        streamer.set(Axis.WHEEL_STEER, 50);
+        streamer.set(Axis.WHEEL_STEER, 0);
+        waitForWriter();
+        streamer.tick();
+        receive(2);
+
+        assertEquals(2, frames.size());
+        Payload.WheelMessage wheel = Payload.WheelMessage.from(payload(frames.get(1)));
+        assertEquals(0, wheel.steer);
+        assertEquals(Payload.WheelMessage.STEER, wheel.mask);
+    }
+
+    @Test
+    public void tick_alwaysSendsFullNegativeDeflection() {
+        streamer.set(Axis.ROLL, Short.MIN_VALUE + 50);
+        streamer.tick();
+        receive(1);
+
+        streamer.set(Axis.ROLL, -1f);
+        waitForWriter();
+        streamer.tick();
+        receive(2);
+
+        assertEquals(2, frames.size());
+        Payload.RotationMessage rotation = Payload.RotationMessage.from(payload(frames.get(1)));
+        assertEquals(Short.MIN_VALUE, rotation.roll);
+        assertEquals(Payload.RotationMessage.ROLL, rotation.mask);
+    }
+
+    @Test
+    public void tick_keepsLatestValueWhileWriterBusy() {
+        CommandWriter idle = new CommandWriter(new LoopbackTransport());
+        ControlStreamer stalled = new ControlStreamer(idle, 50, 100);
+        stalled.set(Axis.TRANSLATE_X, 0.25f);
+        stalled.tick();
+        stalled.set(Axis.TRANSLATE_X, 0.75f);
+        stalled.tick();
+
+        assertEquals(1, stalled.getFramesSent());
+        assertEquals(1, stalled.getFramesSuppressed());
+        assertEquals(1, idle.getPending(CommandWriter.Lane.BULK));
+    }
+
+    @Test
+    public void set_parsesNormalizedValues() {
+        streamer.set("PITCH=1, YAW=-1,THROTTLE=2");
+        assertEquals(Short.MAX_VALUE, streamer.get(Axis.PITCH));
+        assertEquals(Short.MIN_VALUE, streamer.get(Axis.YAW));
+        assertEquals(Short.MAX_VALUE, streamer.get(Axis.THROTTLE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void set_rejectsMalformedEntry() {
+        streamer.set("PITCH");
+    }
+
+    private void waitForWriter() {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (writer.getFramesWritten() < streamer.getFramesSent() && System.currentTimeMillis() < deadline) {
+            Thread.yield();
+        }
+        assertTrue(writer.getFramesWritten() >= streamer.getFramesSent());
+    }
+}
@@ -0,0 +1,133 @@
+package cjohannsen.input;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SwitchMatrixScannerTest {
+
+    private static final long PERIOD = 1_000_000;
+
+    private MockInputProvider matrix;
+    private SwitchMatrixScanner scanner;
+    private final List<long[]> edges = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() {
+        matrix = new MockInputProvider(8, 8);
+        // 1 kHz with a 5 ms debounce: a change must hold for 5 scans.
+        scanner = new SwitchMatrixScanner(matrix, 1000, 5);
+        scanner.addListener((row, column, closed, edgeNanos) -> edges.add(new long[]{row, column, closed ? 1 : 0, edgeNanos}));
+    }
+
+    private void scan(int from, int count) {
+        for (int i = from; i < from + count; i++) {
+            scanner.scan(i * PERIOD);
+        }
+    }
+
+    @Test
+    public void scan_reportsEdgeAfterDebounce() {
+        assertEquals(5, scanner.getStableScans());
+        matrix.press(3, 6);
+
+        scan(1, 4);
+        assertTrue(edges.isEmpty());
+        assertFalse(scanner.isClosed(3, 6));
+
+        scan(5, 1);
+        assertEquals(1, edges.size());
+        assertEquals(3, edges.get(0)[0]);
+        assertEquals(6, edges.get(0)[1]);
+        assertEquals(1, edges.get(0)[2]);
+        assertEquals("edge stamped at the first scan that saw it", PERIOD, edges.get(0)[3]);
+        assertTrue(scanner.isClosed(3, 6));
+    }
+
+    @Test
+    public void scan_bounceRestartsDebounce() {
+        matrix.press(0, 0);
+        scan(1, 3);
+        matrix.release(0, 0);
+        scan(4, 1);
+        matrix.press(0, 0);
+        scan(5, 4);
+        assertTrue(edges.isEmpty());
+
+        scan(9, 1);
+        assertEquals(1, edges.size());
+        assertEquals(5 * PERIOD, edges.get(0)[3]);
+    }
+
+    @Test
+    public void scan_reportsReleaseAndIndependentSwitches() {
+        matrix.press(1, 2);
+        matrix.press(7, 7);
+        scan(1, 5);
+        assertEquals(2, edges.size());
+
+        matrix.release(1, 2);
+        scan(6, 5);
+        assertEquals(3, edges.size());
+        assertEquals(0, edges.get(2)[2]);
+        assertFalse(scanner.isClosed(1, 2));
+        assertTrue(scanner.isClosed(7, 7));
+        assertEquals(3, scanner.getEdgeCount());
+    }
+
+    @Test
+    public void scan_zeroDebounceReportsImmediately() {
+        SwitchMatrixScanner immediate = new SwitchMatrixScanner(matrix, 1000, 0);
+        List<Boolean> states = new ArrayList<>();
+        immediate.addListener((row, column, closed, edgeNanos) -> states.add(closed));
+        matrix.press(2, 2);
+        immediate.scan(0);
+        matrix.release(2, 2);
+        immediate.scan(1);
+
+        assertEquals(2, states.size());
+        assertEquals(1, immediate.getStableScans());
+    }
+
+    @Test
+    public void start_scansOnTimedLoop() throws InterruptedException {
+        scanner.start();
+        try {
+            matrix.press(4, 4);
+            long deadline = System.currentTimeMillis() + 1000;
+            while (edges.isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+        } finally {
+            scanner.stop();
+        }
+        assertEquals(1, edges.size());
+        assertEquals(1, scanner.getEdgeCount());
+        assertTrue(scanner.getScanCount() >= 5);
+        assertEquals(8 * scanner.getScanCount(), matrix.getReadCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mockProvider_rejectsTooManyColumns() {
+        new MockInputProvider(1, 33);
+    }
+
+    @Test
+    public void parsePins_readsAddresses() {
+        int[] pins = Pi4jMatrixProvider.parsePins("21, 22,23");
+        assertEquals(3, pins.length);
+        assertEquals(22, pins[1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parsePins_rejectsNames() {
+        Pi4jMatrixProvider.parsePins("GPIO_21");
+    }
+}
@@ -0,0 +1,111 @@
+package cjohannsen.link;
+
+import cjohannsen.protocol.MessageType;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LinkMonitorTest {
+
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final List<byte[]> probes = new ArrayList<>();
+    private final long[] lastReceived = new long[256];
+    private final List<LinkMonitor.State> transitions = new ArrayList<>();
+    private LinkMonitor monitor;
+    private long start;
+
+    @Before
+    public void setUp() {
+        start = System.nanoTime();
+        monitor = new LinkMonitor(probes::add, type -> lastReceived[type], 5000, 500, 2000, 250, 2000, 6000);
+        monitor.addListener((previous, current) -> transitions.add(current));
+    }
+
+    private void receive(final MessageType.Datagram type, final long nanos) {
+        lastReceived[type.getValue()] = nanos;
+    }
+
+    private void echo(final byte[] probe, final long nanos) {
+        receive(MessageType.Datagram.ECHO_RESP_MESSAGE, nanos);
+        monitor.onEcho(probe, 0, probe.length, nanos);
+    }
+
+    @Test
+    public void onEcho_measuresRoundTripOfMatchingProbe() {
+        monitor.tick(start);
+        assertEquals(1, probes.size());
+
+        echo(probes.get(0), start + 3 * MILLI);
+
+        assertEquals(3 * MILLI, monitor.getLastRttNanos());
+        assertEquals(1, monitor.getRtt().getCount());
+        assertEquals(1, monitor.getProbesAnswered());
+        // A second copy of the same response is not counted again.
+        echo(probes.get(0), start + 4 * MILLI);
+        assertEquals(1, monitor.getProbesAnswered());
+    }
+
+    @Test
+    public void onEcho_ignoresForeignEchoes() {
+        byte[] text = "rpi-simpit heartbeat".getBytes();
+
+        monitor.onEcho(text, 0, text.length, start);
+
+        assertEquals(0, monitor.getRtt().getCount());
+    }
+
+    @Test
+    public void tick_degradesAndLosesLinkOnSilence() {
+        monitor.tick(start);
+        echo(probes.get(0), start + MILLI);
+        assertEquals(LinkMonitor.State.HEALTHY, monitor.getState());
+
+        monitor.tick(start + 2500 * MILLI);
+        assertEquals(LinkMonitor.State.DEGRADED, monitor.getState());
+
+        monitor.tick(start + 7000 * MILLI);
+        assertEquals(LinkMonitor.State.LOST, monitor.getState());
+
+        receive(MessageType.Datagram.ALTITUDE_MESSAGE, start + 7050 * MILLI);
+        monitor.tick(start + 7100 * MILLI);
+        assertEquals(LinkMonitor.State.HEALTHY, monitor.getState());
+
+        assertEquals(3, transitions.size());
+        assertEquals(LinkMonitor.State.DEGRADED, transitions.get(0));
+        assertEquals(LinkMonitor.State.LOST, transitions.get(1));
+    }
+
+    @Test
+    public void tick_degradesLinkOnLostProbe() {
+        for (long t = 0; t <= 2000; t += 100) {
+            receive(MessageType.Datagram.ALTITUDE_MESSAGE, start + t * MILLI);
+            monitor.tick(start + t * MILLI);
+        }
+
+        // Telemetry kept flowing, but the first probe was never answered.
+        assertEquals(1, monitor.getProbesLost());
+        assertEquals(LinkMonitor.State.DEGRADED, monitor.getState());
+    }
+
+    @Test
+    public void tick_probesFasterWhileDegraded() {
+        monitor.tick(start);
+        echo(probes.get(0), start + 300 * MILLI);
+
+        for (long t = 100; t <= 2000; t += 100) {
+            receive(MessageType.Datagram.ALTITUDE_MESSAGE, start + t * MILLI);
+            monitor.tick(start + t * MILLI);
+        }
+
+        // The slow round trip degraded the link at 300 ms; probes then went out every 500 ms instead of every 5 s.
+        assertEquals(LinkMonitor.State.DEGRADED, monitor.getState());
+        assertEquals(4, probes.size());
+    }
+}
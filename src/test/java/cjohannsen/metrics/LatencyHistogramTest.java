@@ -0,0 +1,60 @@
+package cjohannsen.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void buckets_coverEveryValueWithinOneSixteenth() {
+        long[] values = {0, 1, 15, 16, 17, 100, 1000, 123456, 1_000_000_007L, Long.MAX_VALUE / 3, Long.MAX_VALUE};
+        for (long value : values) {
+            int bucket = LatencyHistogram.bucket(value);
+            long upper = LatencyHistogram.upperBound(bucket);
+            assertTrue(value + " above its bucket", value <= upper);
+            assertTrue(value + " below its bucket", bucket == 0 || value > LatencyHistogram.upperBound(bucket - 1));
+            assertTrue(value + " bucket too wide", upper - value <= Math.max(1, value / LatencyHistogram.SUB_BUCKETS));
+        }
+    }
+
+    @Test
+    public void percentiles_fromRecordedValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1_000_000, histogram.getMaxNanos());
+        assertEquals(500_500, histogram.getMeanNanos(), 0.001);
+        assertEquals(500_000, histogram.getPercentileNanos(50), 500_000 / LatencyHistogram.SUB_BUCKETS);
+        assertEquals(990_000, histogram.getPercentileNanos(99), 990_000 / LatencyHistogram.SUB_BUCKETS);
+        assertEquals(1_000_000, histogram.getPercentileNanos(100));
+    }
+
+    @Test
+    public void percentile_neverExceedsMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+        assertEquals(1000, histogram.getPercentileNanos(99));
+    }
+
+    @Test
+    public void record_clampsNegativeToZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getPercentileNanos(50));
+    }
+
+    @Test
+    public void reset_clearsEverything() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(42);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxNanos());
+        assertEquals(0, histogram.getPercentileNanos(50));
+    }
+}
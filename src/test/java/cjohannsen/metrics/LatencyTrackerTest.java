@@ -0,0 +1,75 @@
+package cjohannsen.metrics;
+
+import cjohannsen.protocol.InvalidPacketException;
+import cjohannsen.protocol.MessageType;
+import cjohannsen.protocol.Packet;
+import cjohannsen.protocol.PacketSource;
+import cjohannsen.transport.LoopbackTransport;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyTrackerTest {
+
+    @Test
+    public void packetSource_stampsFirstByteOfSplitFrame() throws InterruptedException {
+        LoopbackTransport transport = new LoopbackTransport();
+        PacketSource packetSource = new PacketSource(transport);
+        packetSource.start();
+        byte[] altitude = {Packet.PACKET_HEADER_BYTE_0, Packet.PACKET_HEADER_BYTE_1, 8, (byte) MessageType.Datagram.ALTITUDE_MESSAGE.getValue(), 0, 0, 0, 0, 0, 0, 0, 0};
+
+        transport.getPeer().write(altitude, 6);
+        Thread.sleep(50);
+        transport.getPeer().write(new byte[]{0, 0, 0, 0, 0, 0}, 6);
+
+        Optional<Packet> packet = packetSource.next(Optional.of(1000));
+        assertTrue(packet.isPresent());
+        long frameNanos = packet.get().getFrameNanos() - packet.get().getFirstByteNanos();
+        assertTrue("frame took " + frameNanos + " ns", frameNanos >= TimeUnit.MILLISECONDS.toNanos(40));
+        packet.get().release();
+    }
+
+    @Test
+    public void recordTelemetry_recordsEveryStage() throws InvalidPacketException {
+        LatencyTracker tracker = new LatencyTracker();
+        Packet packet = Packet.decodePacket(new byte[]{Packet.PACKET_HEADER_BYTE_0, Packet.PACKET_HEADER_BYTE_1, 1, 1, 0}, 0, 5);
+        packet.setReceiveNanos(1_000, 3_000);
+
+        tracker.recordTelemetry(packet, 10_000, 15_000);
+
+        assertEquals(2_000, tracker.getHistogram(LatencyTracker.Stage.FRAME).getMaxNanos());
+        assertEquals(7_000, tracker.getHistogram(LatencyTracker.Stage.QUEUE).getMaxNanos());
+        assertEquals(5_000, tracker.getHistogram(LatencyTracker.Stage.HANDLER).getMaxNanos());
+        assertEquals(14_000, tracker.getHistogram(LatencyTracker.Stage.TELEMETRY_TOTAL).getMaxNanos());
+    }
+
+    @Test
+    public void recordTelemetry_unstampedPacketOnlyTimesHandler() throws InvalidPacketException {
+        LatencyTracker tracker = new LatencyTracker();
+        Packet packet = Packet.decodePacket(new byte[]{Packet.PACKET_HEADER_BYTE_0, Packet.PACKET_HEADER_BYTE_1, 1, 1, 0}, 0, 5);
+
+        tracker.recordTelemetry(packet, 10_000, 15_000);
+
+        assertEquals(1, tracker.getHistogram(LatencyTracker.Stage.HANDLER).getCount());
+        assertEquals(0, tracker.getHistogram(LatencyTracker.Stage.TELEMETRY_TOTAL).getCount());
+    }
+
+    @Test
+    public void recordCommand_publishedAsGauges() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        LatencyTracker tracker = new LatencyTracker(registry);
+
+        tracker.recordCommand(0, 2_000, 102_000);
+
+        assertEquals(2_000, tracker.getHistogram(LatencyTracker.Stage.ENCODE).getMaxNanos());
+        assertEquals(100_000, tracker.getHistogram(LatencyTracker.Stage.WRITE).getMaxNanos());
+        assertEquals(102_000e-9, registry.find("simpit.latency").tag("stage", "command_total").tag("statistic", "max").gauge().value(), 1e-12);
+        assertEquals(7, tracker.snapshot().size());
+    }
+}
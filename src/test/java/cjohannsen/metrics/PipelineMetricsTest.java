@@ -0,0 +1,87 @@
+package cjohannsen.metrics;
+
+import cjohannsen.protocol.CommandWriter;
+import cjohannsen.protocol.InvalidPacketException;
+import cjohannsen.protocol.MessageType;
+import cjohannsen.protocol.Packet;
+import cjohannsen.protocol.PacketSource;
+import cjohannsen.transport.LoopbackTransport;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PipelineMetricsTest {
+
+    private MeterRegistry registry;
+    private LoopbackTransport transport;
+    private PacketSource packetSource;
+    private PipelineMetrics metrics;
+
+    @Before
+    public void setUp() {
+        registry = new SimpleMeterRegistry();
+        transport = new LoopbackTransport();
+        packetSource = new PacketSource(transport);
+        metrics = new PipelineMetrics(registry, packetSource, new CommandWriter(transport));
+    }
+
+    @Test
+    public void receivedPackets_countedPerChannel() throws InterruptedException {
+        packetSource.start();
+        byte[] altitude = {Packet.PACKET_HEADER_BYTE_0, Packet.PACKET_HEADER_BYTE_1, 8, (byte) MessageType.Datagram.ALTITUDE_MESSAGE.getValue(), 0, 0, 0, 0, 0, 0, 0, 0};
+        transport.getPeer().write(altitude, altitude.length);
+        transport.getPeer().write(altitude, altitude.length);
+
+        waitFor(() -> packetSource.getReceivedCount(MessageType.Datagram.ALTITUDE_MESSAGE) == 2);
+        assertEquals(2, registry.find("simpit.packets.received").tag("channel", "ALTITUDE_MESSAGE").functionCounter().count(), 0);
+        assertEquals(0, registry.find("simpit.packets.received").tag("channel", "VELOCITY_MESSAGE").functionCounter().count(), 0);
+        assertEquals(2, registry.find("simpit.queue.depth").gauge().value(), 0);
+    }
+
+    @Test
+    public void invalidFrames_countedByReason() throws InterruptedException {
+        packetSource.start();
+        // A header declaring more payload than a packet holds is skipped by the parser as an oversized frame.
+        byte[] oversized = {Packet.PACKET_HEADER_BYTE_0, Packet.PACKET_HEADER_BYTE_1, 40, 1};
+        transport.getPeer().write(oversized, oversized.length);
+
+        waitFor(() -> packetSource.getOversizedFrameCount() == 1);
+        assertEquals(1, registry.find("simpit.frames.invalid").tag("reason", "OVERSIZED_FRAME").functionCounter().count(), 0);
+        assertEquals(0, registry.find("simpit.frames.invalid").tag("reason", InvalidPacketException.Reason.MISSING_HEADER.name()).functionCounter().count(), 0);
+    }
+
+    @Test
+    public void recordHandler_timesPerChannel() {
+        metrics.recordHandler(MessageType.Datagram.ALTITUDE_MESSAGE.getValue(), TimeUnit.MICROSECONDS.toNanos(5));
+        metrics.recordHandler(MessageType.Datagram.ALTITUDE_MESSAGE.getValue(), TimeUnit.MICROSECONDS.toNanos(15));
+        metrics.recordHandler(255, 1000);
+
+        assertEquals(2, registry.find("simpit.handler.duration").tag("channel", "ALTITUDE_MESSAGE").timer().count());
+        assertEquals(20, registry.find("simpit.handler.duration").tag("channel", "ALTITUDE_MESSAGE").timer().totalTime(TimeUnit.MICROSECONDS), 0.001);
+    }
+
+    @Test
+    public void recordWrite_countsBytesPerCommand() {
+        metrics.recordWrite(MessageType.Command.REGISTER_MESSAGE.getValue(), 5);
+        metrics.recordWrite(MessageType.Command.REGISTER_MESSAGE.getValue(), 5);
+        metrics.recordWrite(MessageType.Command.ECHO_REQ_MESSAGE.getValue(), -1);
+
+        assertEquals(10, registry.find("simpit.commands.written").tag("command", "REGISTER_MESSAGE").counter().count(), 0);
+        assertEquals(0, registry.find("simpit.commands.written").tag("command", "ECHO_REQ_MESSAGE").counter().count(), 0);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package cjohannsen.metrics;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StartupReportTest {
+
+    @Test
+    public void parseResidentKilobytes_readsVmRss() {
+        assertEquals(48212, StartupReport.parseResidentKilobytes(Arrays.asList(
+                "Name:\tjava", "VmPeak:\t  912345 kB", "VmRSS:\t   48212 kB", "RssAnon:\t   30000 kB")));
+        assertEquals(-1, StartupReport.parseResidentKilobytes(Collections.singletonList("Name:\tjava")));
+    }
+
+    @Test
+    public void telemetry_recordsOnlyTheFirstUpdate() throws InterruptedException {
+        StartupReport report = new StartupReport("none");
+        report.telemetry(System.nanoTime() - 2000000);
+        long first = report.getFirstTelemetryMillis();
+        long firstPacket = report.getFirstPacketMicros();
+        Thread.sleep(5);
+
+        report.telemetry(System.nanoTime());
+
+        assertTrue(first > 0);
+        assertTrue(firstPacket >= 2000);
+        assertEquals(first, report.getFirstTelemetryMillis());
+        assertEquals(firstPacket, report.getFirstPacketMicros());
+    }
+}
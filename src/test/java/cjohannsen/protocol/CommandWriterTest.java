@@ -0,0 +1,145 @@
+package cjohannsen.protocol;
+
+import cjohannsen.transport.LoopbackTransport;
+import cjohannsen.transport.Transport;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CommandWriterTest {
+
+    /** Records every write; writes at most {@code limit} bytes of each. */
+    private static class RecordingTransport implements Transport {
+        final List<byte[]> writes = new ArrayList<>();
+        int limit = Integer.MAX_VALUE;
+
+        @Override
+        public int read(byte[] buffer, int length) {
+            return 0;
+        }
+
+        @Override
+        public int write(byte[] buffer, int length) {
+            writes.add(Arrays.copyOf(buffer, length));
+            return Math.min(length, limit);
+        }
+
+        @Override
+        public void setReadTimeout(int timeoutMillis) {
+        }
+    }
+
+    private static byte[] frame(MessageType.Command command, int value) {
+        return Packet.encodePacket(command, (byte) value);
+    }
+
+    @Test
+    public void submit_writtenByWriterThread() throws InterruptedException, ExecutionException, TimeoutException {
+        LoopbackTransport transport = new LoopbackTransport();
+        CommandWriter writer = new CommandWriter(transport);
+        writer.start();
+        try {
+            byte[] frame = frame(MessageType.Command.AGACTIVATE_MESSAGE, MessageType.ActionGroupIndex.STAGE_ACTION.getValue());
+            CompletableFuture<Boolean> result = writer.submit(CommandWriter.Lane.PRIORITY, frame);
+
+            assertTrue(result.get(1, TimeUnit.SECONDS));
+            byte[] received = new byte[frame.length];
+            assertEquals(frame.length, transport.getPeer().read(received, received.length));
+            assertArrayEquals(frame, received);
+        } finally {
+            writer.stop();
+        }
+    }
+
+    @Test
+    public void writeNext_batchesPendingFrames() {
+        RecordingTransport transport = new RecordingTransport();
+        CommandWriter writer = new CommandWriter(transport);
+        CompletableFuture<Boolean> first = writer.submit(CommandWriter.Lane.BULK, frame(MessageType.Command.REGISTER_MESSAGE, 1));
+        CompletableFuture<Boolean> second = writer.submit(CommandWriter.Lane.BULK, frame(MessageType.Command.REGISTER_MESSAGE, 2));
+
+        writer.writeNext();
+
+        assertEquals(1, transport.writes.size());
+        assertEquals(10, transport.writes.get(0).length);
+        assertTrue(first.join());
+        assertTrue(second.join());
+        assertEquals(2, writer.getFramesWritten());
+        assertEquals(1, writer.getWriteCount());
+    }
+
+    @Test
+    public void writeNext_priorityAheadOfBulk() {
+        RecordingTransport transport = new RecordingTransport();
+        CommandWriter writer = new CommandWriter(transport);
+        writer.submit(CommandWriter.Lane.BULK, frame(MessageType.Command.REGISTER_MESSAGE, 1));
+        writer.submit(CommandWriter.Lane.PRIORITY, frame(MessageType.Command.AGACTIVATE_MESSAGE, 1));
+
+        writer.writeNext();
+
+        byte[] written = transport.writes.get(0);
+        assertEquals(MessageType.Command.AGACTIVATE_MESSAGE.getValue(), written[Packet.MESSAGE_TYPE_INDEX]);
+        assertEquals(MessageType.Command.REGISTER_MESSAGE.getValue(), written[5 + Packet.MESSAGE_TYPE_INDEX]);
+    }
+
+    @Test
+    public void writeNext_limitsBatchSize() {
+        RecordingTransport transport = new RecordingTransport();
+        CommandWriter writer = new CommandWriter(transport, 64, Packet.PACKET_SIZE);
+        for (int i = 0; i < 8; i++) {
+            writer.submit(CommandWriter.Lane.BULK, frame(MessageType.Command.REGISTER_MESSAGE, i));
+        }
+
+        writer.writeNext();
+        writer.writeNext();
+
+        assertEquals(35, transport.writes.get(0).length);
+        assertEquals(5, transport.writes.get(1).length);
+        assertEquals(0, writer.getPending(CommandWriter.Lane.BULK));
+    }
+
+    @Test
+    public void writeNext_shortWriteFailsUnwrittenFrames() {
+        RecordingTransport transport = new RecordingTransport();
+        transport.limit = 7;
+        CommandWriter writer = new CommandWriter(transport);
+        CompletableFuture<Boolean> first = writer.submit(CommandWriter.Lane.BULK, frame(MessageType.Command.REGISTER_MESSAGE, 1));
+        CompletableFuture<Boolean> second = writer.submit(CommandWriter.Lane.BULK, frame(MessageType.Command.REGISTER_MESSAGE, 2));
+
+        writer.writeNext();
+
+        assertTrue(first.join());
+        assertFalse(second.join());
+        assertEquals(1, writer.getFramesWritten());
+    }
+
+    @Test
+    public void submit_rejectedWhenLaneFull() throws InterruptedException {
+        CommandWriter writer = new CommandWriter(new RecordingTransport(), 1, CommandWriter.DEFAULT_BATCH_BYTES);
+        writer.submit(CommandWriter.Lane.BULK, frame(MessageType.Command.REGISTER_MESSAGE, 1));
+        CompletableFuture<Boolean> rejected = writer.submit(CommandWriter.Lane.BULK, frame(MessageType.Command.REGISTER_MESSAGE, 2));
+        CompletableFuture<Boolean> priority = writer.submit(CommandWriter.Lane.PRIORITY, frame(MessageType.Command.AGACTIVATE_MESSAGE, 1));
+
+        try {
+            rejected.get();
+            fail("Expected rejection");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        assertFalse(priority.isDone());
+        assertEquals(1, writer.getRejectedCount());
+    }
+}
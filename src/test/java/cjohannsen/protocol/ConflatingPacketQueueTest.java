@@ -0,0 +1,71 @@
+package cjohannsen.protocol;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ConflatingPacketQueueTest {
+
+    private final PacketPool pool = new PacketPool(0);
+
+    @Test
+    public void continuousChannels_keepOnlyNewestPacket() throws InvalidPacketException {
+        ConflatingPacketQueue queue = new ConflatingPacketQueue(4, RingPacketQueue.OverflowPolicy.DROP_OLDEST);
+        Packet stale = packet(MessageType.Datagram.ALTITUDE_MESSAGE);
+        Packet fresh = packet(MessageType.Datagram.ALTITUDE_MESSAGE);
+        Packet velocity = packet(MessageType.Datagram.VELOCITY_MESSAGE);
+
+        queue.offer(stale);
+        queue.offer(velocity);
+        queue.offer(fresh);
+
+        assertEquals(2, queue.size());
+        assertSame(fresh, queue.poll());
+        assertSame(velocity, queue.poll());
+        assertNull(queue.poll());
+        assertEquals(1, queue.getConflatedCount(MessageType.Datagram.ALTITUDE_MESSAGE));
+    }
+
+    @Test
+    public void eventChannels_areNeverConflated() throws InvalidPacketException {
+        ConflatingPacketQueue queue = new ConflatingPacketQueue(4, RingPacketQueue.OverflowPolicy.DROP_OLDEST);
+        Packet first = packet(MessageType.Datagram.ACTIONSTATUS_MESSAGE);
+        Packet second = packet(MessageType.Datagram.ACTIONSTATUS_MESSAGE);
+        Packet scene = packet(MessageType.Datagram.SCENE_CHANGE_MESSAGE);
+
+        queue.offer(packet(MessageType.Datagram.LF_MESSAGE));
+        queue.offer(first);
+        queue.offer(second);
+        queue.offer(scene);
+
+        assertSame(first, queue.poll());
+        assertSame(second, queue.poll());
+        assertSame(scene, queue.poll());
+        assertEquals(MessageType.Datagram.LF_MESSAGE, queue.poll().getDatagram());
+        assertEquals(0, queue.getConflatedCount());
+    }
+
+    @Test
+    public void burstOfResources_doesNotPushOutEvents() throws InvalidPacketException {
+        ConflatingPacketQueue queue = new ConflatingPacketQueue(2, RingPacketQueue.OverflowPolicy.DROP_OLDEST);
+        Packet soi = packet(MessageType.Datagram.SOI_MESSAGE);
+
+        queue.offer(soi);
+        for (int i = 0; i < 100; i++) {
+            queue.offer(packet(MessageType.Datagram.OX_MESSAGE));
+        }
+
+        assertSame(soi, queue.poll());
+        assertEquals(MessageType.Datagram.OX_MESSAGE, queue.poll().getDatagram());
+        assertNull(queue.poll());
+        assertEquals(0, queue.getDroppedCount());
+    }
+
+    private Packet packet(MessageType.Datagram type) throws InvalidPacketException {
+        byte[] frame = Packet.encodePacket(MessageType.Command.SYNC_MESSAGE, new byte[8]);
+        frame[Packet.MESSAGE_TYPE_INDEX] = (byte) type.getValue();
+        return pool.acquire().load(frame, 0, frame.length);
+    }
+}
@@ -0,0 +1,98 @@
+package cjohannsen.protocol;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class FrameParserTest {
+
+    private final List<byte[]> frames = new ArrayList<>();
+    private final FrameParser.FrameListener collector = (b, o, l) -> frames.add(Arrays.copyOfRange(b, o, o + l));
+
+    @Test
+    public void feed_emitsEveryFrameInOneChunk() {
+        byte[] first = frame(MessageType.Datagram.ALTITUDE_MESSAGE, 8);
+        byte[] second = frame(MessageType.Datagram.VELOCITY_MESSAGE, 12);
+        byte[] third = frame(MessageType.Datagram.ACTIONSTATUS_MESSAGE, 1);
+        byte[] chunk = concat(first, second, third);
+
+        FrameParser parser = new FrameParser();
+        parser.feed(chunk, 0, chunk.length, collector);
+
+        assertEquals(3, frames.size());
+        assertArrayEquals(first, frames.get(0));
+        assertArrayEquals(second, frames.get(1));
+        assertArrayEquals(third, frames.get(2));
+        assertEquals(0, parser.buffered());
+    }
+
+    @Test
+    public void feed_keepsPartialFramesAcrossReads() {
+        byte[] first = frame(MessageType.Datagram.ALTITUDE_MESSAGE, 8);
+        byte[] second = frame(MessageType.Datagram.APSIDES_MESSAGE, 8);
+        byte[] stream = concat(first, second);
+
+        FrameParser parser = new FrameParser();
+        for (byte b : stream) {
+            parser.feed(new byte[] {b}, 0, 1, collector);
+        }
+
+        assertEquals(2, frames.size());
+        assertArrayEquals(first, frames.get(0));
+        assertArrayEquals(second, frames.get(1));
+    }
+
+    @Test
+    public void feed_resynchronisesAfterGarbage() {
+        byte[] garbage = {0x01, Packet.PACKET_HEADER_BYTE_0, 0x02, Packet.PACKET_HEADER_BYTE_0, Packet.PACKET_HEADER_BYTE_1, 0x7F};
+        byte[] good = frame(MessageType.Datagram.LF_MESSAGE, 8);
+        byte[] chunk = concat(garbage, good);
+
+        FrameParser parser = new FrameParser();
+        parser.feed(chunk, 0, chunk.length, collector);
+
+        assertEquals(1, frames.size());
+        assertArrayEquals(good, frames.get(0));
+        assertEquals(1, parser.getOversizedFrames());
+    }
+
+    @Test
+    public void feed_emitsFramesThatWrapTheRing() {
+        FrameParser parser = new FrameParser(Packet.PACKET_SIZE);
+        List<byte[]> expected = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            byte[] f = frame(MessageType.Datagram.VELOCITY_MESSAGE, 1 + (i * 7) % FrameParser.MAX_PAYLOAD_SIZE);
+            expected.add(f);
+            parser.feed(f, 0, f.length, collector);
+        }
+
+        assertEquals(expected.size(), frames.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), frames.get(i));
+        }
+    }
+
+    private static byte[] frame(MessageType.Datagram type, int payloadSize) {
+        byte[] payload = new byte[payloadSize];
+        for (int i = 0; i < payloadSize; i++) {
+            payload[i] = (byte) (type.getValue() + i);
+        }
+        byte[] frame = Packet.encodePacket(MessageType.Command.SYNC_MESSAGE, payload);
+        frame[Packet.MESSAGE_TYPE_INDEX] = (byte) type.getValue();
+        return frame;
+    }
+
+    private static byte[] concat(byte[]... arrays) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] a : arrays) {
+            out.write(a, 0, a.length);
+        }
+        return out.toByteArray();
+    }
+}
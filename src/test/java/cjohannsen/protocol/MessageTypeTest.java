@@ -0,0 +1,35 @@
+package cjohannsen.protocol;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class MessageTypeTest {
+
+    @Test
+    public void datagram_from_findsEveryType() {
+        for (MessageType.Datagram d : MessageType.Datagram.values()) {
+            if (d != MessageType.Datagram.UNDEFINED) {
+                assertEquals(d, MessageType.Datagram.from(d.getValue()));
+            }
+        }
+    }
+
+    @Test
+    public void datagram_from_returnsUndefinedForUnknownValues() {
+        assertEquals(MessageType.Datagram.UNDEFINED, MessageType.Datagram.from(4));
+        assertEquals(MessageType.Datagram.UNDEFINED, MessageType.Datagram.from(255));
+        assertEquals(MessageType.Datagram.UNDEFINED, MessageType.Datagram.from(-1));
+        assertEquals(MessageType.Datagram.UNDEFINED, MessageType.Datagram.from(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void command_from_findsEveryType() {
+        for (MessageType.Command c : MessageType.Command.values()) {
+            if (c != MessageType.Command.UNDEFINED) {
+                assertEquals(c, MessageType.Command.from(c.getValue()));
+            }
+        }
+        assertEquals(MessageType.Command.UNDEFINED, MessageType.Command.from(3));
+    }
+}
@@ -0,0 +1,85 @@
+package cjohannsen.protocol;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class PacketTest {
+
+    @Test
+    public void wrap_pointsIntoBuffer() throws InvalidPacketException {
+        byte[] frame = altitudeFrame(123.456f, 234.567f);
+        byte[] buffer = new byte[frame.length + 5];
+        System.arraycopy(frame, 0, buffer, 5, frame.length);
+
+        Packet packet = new Packet(null).wrap(buffer, 5, frame.length);
+
+        assertSame(buffer, packet.getBuffer());
+        assertEquals(MessageType.Datagram.ALTITUDE_MESSAGE, packet.getDatagram());
+        assertEquals(MessageType.Datagram.ALTITUDE_MESSAGE.getValue(), packet.getType());
+        assertEquals(9, packet.getPayloadOffset());
+        assertEquals(8, packet.getPayloadLength());
+        assertEquals(123.456f, Payload.AltitudeMessage.from(packet.getPayload()).sealevel, 0.001f);
+    }
+
+    @Test(expected = InvalidPacketException.class)
+    public void wrap_rejectsTruncatedFrame() throws InvalidPacketException {
+        byte[] frame = altitudeFrame(1f, 2f);
+        new Packet(null).wrap(frame, 0, frame.length - 1);
+    }
+
+    @Test
+    public void pool_reusesReleasedPackets() throws InvalidPacketException {
+        PacketPool pool = new PacketPool(1);
+        byte[] frame = altitudeFrame(1f, 2f);
+
+        Packet first = pool.acquire().load(frame, 0, frame.length);
+        first.release();
+        Packet second = pool.acquire().load(frame, 0, frame.length);
+
+        assertSame(first, second);
+        assertEquals(1, pool.getAllocatedCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void pool_rejectsDoubleRelease() {
+        Packet packet = new PacketPool(0).acquire();
+        packet.release();
+        packet.release();
+    }
+
+    @Test
+    public void decodePacket_copiesFrame() throws InvalidPacketException {
+        byte[] frame = altitudeFrame(1f, 2f);
+        Packet packet = Packet.decodePacket(frame, 0, frame.length);
+        byte[] payload = packet.getPayload();
+        frame[Packet.MESSAGE_HEADER_SIZE] = 0;
+
+        assertArrayEquals(payload, packet.getPayload());
+    }
+
+    @Test
+    public void wrap_reportsReason() {
+        byte[] frame = altitudeFrame(1f, 2f);
+        frame[1] = 0;
+        try {
+            new PacketPool(0).acquire().wrap(frame, 0, frame.length);
+            fail();
+        } catch (InvalidPacketException e) {
+            assertEquals(InvalidPacketException.Reason.MISSING_HEADER, e.getReason());
+        }
+    }
+
+    private static byte[] altitudeFrame(float sealevel, float surface) {
+        byte[] payload = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putFloat(sealevel).putFloat(surface).array();
+        byte[] frame = Packet.encodePacket(MessageType.Command.SYNC_MESSAGE, payload);
+        frame[Packet.MESSAGE_TYPE_INDEX] = (byte) MessageType.Datagram.ALTITUDE_MESSAGE.getValue();
+        return frame;
+    }
+}
@@ -5,6 +5,7 @@ import org.junit.Test;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 
@@ -93,6 +94,35 @@ public class PayloadTest {
         int_toString_passes(Payload.ApsidesTimeMessage::from,"Periapsis: 1 s, Apoapsis: 2 s");
     }
 
+    @Test
+    public void readFloatLE_matchesByteBuffer() {
+        byte[] bytes = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putFloat(-0.5f).putFloat(123456.789f).array();
+        assertEquals(-0.5f, Payload.readFloatLE(bytes, 0), MAX_DELTA);
+        assertEquals(123456.789f, Payload.readFloatLE(bytes, 4), MAX_DELTA);
+    }
+
+    @Test
+    public void readIntLE_matchesByteBuffer() {
+        byte[] bytes = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putInt(-2).putInt(0x12345678).array();
+        assertEquals(-2, Payload.readIntLE(bytes, 0));
+        assertEquals(0x12345678, Payload.readIntLE(bytes, 4));
+    }
+
+    @Test
+    public void readShortLE_signExtends() {
+        byte[] bytes = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putShort((short) -32768).putShort((short) 32767).array();
+        assertEquals(-32768, Payload.readShortLE(bytes, 0));
+        assertEquals(32767, Payload.readShortLE(bytes, 2));
+    }
+
+    @Test
+    public void velocityMessage_accessors_readAtOffset() {
+        byte[] bytes = ByteBuffer.allocate(15).order(ByteOrder.LITTLE_ENDIAN).put(new byte[3]).putFloat(1.5f).putFloat(2.5f).putFloat(-3.5f).array();
+        assertEquals(1.5f, Payload.VelocityMessage.orbital(bytes, 3), MAX_DELTA);
+        assertEquals(2.5f, Payload.VelocityMessage.surface(bytes, 3), MAX_DELTA);
+        assertEquals(-3.5f, Payload.VelocityMessage.vertical(bytes, 3), MAX_DELTA);
+    }
+
     interface FloatProvider {
         float provide(Payload p);
     }
@@ -101,6 +131,59 @@ public class PayloadTest {
         int provide(Payload p);
     }
 
+    @Test
+    public void rotationMessage_from_readsSignedShorts() {
+        byte[] bytes = ByteBuffer.allocate(7).order(ByteOrder.LITTLE_ENDIAN)
+                .putShort((short) -32768).putShort((short) 1234).putShort((short) 32767).put((byte) 5).array();
+        Payload.RotationMessage message = Payload.RotationMessage.from(bytes);
+        assertEquals(-32768, message.pitch);
+        assertEquals(1234, message.roll);
+        assertEquals(32767, message.yaw);
+        assertEquals(5, message.mask);
+    }
+
+    @Test
+    public void rotationMessage_toBytes_roundTrips() {
+        Payload.RotationMessage message = Payload.RotationMessage.from(new Payload.RotationMessage(-100, 200, -300, Payload.RotationMessage.ROLL).toBytes());
+        assertEquals(-100, message.pitch);
+        assertEquals(200, message.roll);
+        assertEquals(-300, message.yaw);
+        assertEquals(Payload.RotationMessage.ROLL, message.mask);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rotationMessage_from_fails() {
+        Payload.RotationMessage.from(new byte[6]);
+    }
+
+    @Test
+    public void translationMessage_toBytes_roundTrips() {
+        byte[] bytes = new Payload.TranslationMessage(1, -2, 32767, (byte) 7).toBytes();
+        assertEquals(Payload.TranslationMessage.SIZE, bytes.length);
+        Payload.TranslationMessage message = Payload.TranslationMessage.from(bytes);
+        assertEquals(1, message.x);
+        assertEquals(-2, message.y);
+        assertEquals(32767, message.z);
+        assertEquals(7, message.mask);
+    }
+
+    @Test
+    public void wheelMessage_toBytes_roundTrips() {
+        byte[] bytes = new Payload.WheelMessage(-16000, 16000, Payload.WheelMessage.THROTTLE).toBytes();
+        assertEquals(Payload.WheelMessage.SIZE, bytes.length);
+        Payload.WheelMessage message = Payload.WheelMessage.from(bytes);
+        assertEquals(-16000, message.steer);
+        assertEquals(16000, message.throttle);
+        assertEquals(Payload.WheelMessage.THROTTLE, message.mask);
+    }
+
+    @Test
+    public void throttleMessage_toBytes_roundTrips() {
+        byte[] bytes = new Payload.ThrottleMessage(32767).toBytes();
+        assertArrayEquals(new byte[]{(byte) 0xFF, 0x7F}, bytes);
+        assertEquals(32767, Payload.ThrottleMessage.from(bytes).throttle);
+    }
+
     private void float_message_from_passes(Payload.Provider provider, float f1, float f2, FloatProvider fp1, FloatProvider fp2) {
         byte[] bytes = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putFloat(f1).putFloat(f2).array();
         Payload p = provider.provide(bytes);
@@ -183,4 +266,17 @@ public class PayloadTest {
         assertEquals(expected, p.toString());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void writeLongLE_roundTrips() {
+        byte[] bytes = new byte[10];
+
+        Payload.writeLongLE(bytes, 1, 0x0102030405060708L);
+
+        assertEquals(0x08, bytes[1]);
+        assertEquals(0x01, bytes[8]);
+        assertEquals(0x0102030405060708L, Payload.readLongLE(bytes, 1));
+        Payload.writeLongLE(bytes, 1, -2L);
+        assertEquals(-2L, Payload.readLongLE(bytes, 1));
+    }
+
+}
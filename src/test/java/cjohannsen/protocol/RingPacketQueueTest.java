@@ -0,0 +1,82 @@
+package cjohannsen.protocol;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RingPacketQueueTest {
+
+    private final PacketPool pool = new PacketPool(0);
+
+    @Test
+    public void capacity_roundsUpToPowerOfTwo() {
+        assertEquals(16, new RingPacketQueue(10, RingPacketQueue.OverflowPolicy.DROP_OLDEST).capacity());
+        assertEquals(8, new RingPacketQueue(8, RingPacketQueue.OverflowPolicy.DROP_OLDEST).capacity());
+    }
+
+    @Test
+    public void dropOldest_keepsNewestPackets() {
+        RingPacketQueue queue = new RingPacketQueue(2, RingPacketQueue.OverflowPolicy.DROP_OLDEST);
+        Packet first = pool.acquire();
+        Packet second = pool.acquire();
+        Packet third = pool.acquire();
+
+        assertTrue(queue.offer(first));
+        assertTrue(queue.offer(second));
+        assertTrue(queue.offer(third));
+
+        assertSame(second, queue.poll());
+        assertSame(third, queue.poll());
+        assertNull(queue.poll());
+        assertEquals(1, queue.getDroppedOldestCount());
+        assertSame(first, pool.acquire());
+    }
+
+    @Test
+    public void dropNewest_rejectsOfferedPacket() {
+        RingPacketQueue queue = new RingPacketQueue(1, RingPacketQueue.OverflowPolicy.DROP_NEWEST);
+        Packet first = pool.acquire();
+        Packet second = pool.acquire();
+
+        assertTrue(queue.offer(first));
+        assertFalse(queue.offer(second));
+
+        assertSame(first, queue.poll());
+        assertEquals(1, queue.getDroppedNewestCount());
+    }
+
+    @Test
+    public void poll_timesOutWhenEmpty() {
+        RingPacketQueue queue = new RingPacketQueue(4, RingPacketQueue.OverflowPolicy.DROP_OLDEST);
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test(timeout = 10000)
+    public void block_deliversEveryPacketInOrder() throws InterruptedException {
+        final int count = 100000;
+        final RingPacketQueue queue = new RingPacketQueue(4, RingPacketQueue.OverflowPolicy.BLOCK);
+        final Packet[] packets = new Packet[count];
+        for (int i = 0; i < count; i++) {
+            packets[i] = new Packet(null);
+        }
+
+        Thread producer = new Thread(() -> {
+            for (Packet p : packets) {
+                queue.offer(p);
+            }
+        });
+        producer.start();
+
+        for (int i = 0; i < count; i++) {
+            assertSame(packets[i], queue.take());
+        }
+        producer.join();
+        assertEquals(0, queue.getDroppedOldestCount() + queue.getDroppedNewestCount());
+    }
+}
@@ -0,0 +1,131 @@
+package cjohannsen.recorder;
+
+import cjohannsen.protocol.MessageType;
+import cjohannsen.protocol.Packet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FlightRecorderTest {
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("flight-recorder-test");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void record_writesFramesInOrder() throws IOException {
+        FlightRecorder recorder = new FlightRecorder(true, directory.toString(), 4096, 16);
+        recorder.start();
+        byte[] first = frame(MessageType.Datagram.ALTITUDE_MESSAGE, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        byte[] second = frame(MessageType.Datagram.SOI_MESSAGE, "Kerbin".getBytes());
+        recorder.record(first, 0, first.length);
+        recorder.record(second, 0, second.length);
+        recorder.stop();
+
+        List<Path> segments = FlightRecordReader.segments(directory);
+        assertEquals(1, segments.size());
+        List<Integer> types = new ArrayList<>();
+        List<byte[]> payloads = new ArrayList<>();
+        List<Long> arrivals = new ArrayList<>();
+        assertEquals(2, FlightRecordReader.read(segments.get(0), (nanos, type, payload, offset, length) -> {
+            types.add(type);
+            payloads.add(Arrays.copyOfRange(payload, offset, offset + length));
+            arrivals.add(nanos);
+        }));
+        assertEquals(MessageType.Datagram.ALTITUDE_MESSAGE.getValue(), (int) types.get(0));
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}, payloads.get(0));
+        assertEquals(MessageType.Datagram.SOI_MESSAGE.getValue(), (int) types.get(1));
+        assertArrayEquals("Kerbin".getBytes(), payloads.get(1));
+        assertTrue(arrivals.get(1) >= arrivals.get(0));
+        assertEquals(2, recorder.getRecordedCount());
+    }
+
+    @Test
+    public void record_rollsSegments() throws IOException {
+        int segmentSize = FlightRecorder.HEADER_SIZE + 3 * (FlightRecorder.RECORD_HEADER_SIZE + 8);
+        FlightRecorder recorder = new FlightRecorder(true, directory.toString(), segmentSize, 16);
+        recorder.start();
+        byte[] frame = frame(MessageType.Datagram.ALTITUDE_MESSAGE, new byte[8]);
+        for (int i = 0; i < 7; i++) {
+            recorder.record(frame, 0, frame.length);
+            // Stay within the ring so nothing is dropped.
+            while (recorder.getRecordedCount() < i + 1) {
+                Thread.yield();
+            }
+        }
+        recorder.stop();
+
+        List<Path> segments = FlightRecordReader.segments(directory);
+        assertEquals(3, segments.size());
+        long total = 0;
+        for (Path segment : segments) {
+            total += FlightRecordReader.read(segment, (nanos, type, payload, offset, length) -> { });
+        }
+        assertEquals(7, total);
+        assertEquals(0, recorder.getDroppedCount());
+    }
+
+    @Test
+    public void read_stopsAtTruncatedRecord() throws IOException {
+        FlightRecorder recorder = new FlightRecorder(true, directory.toString(), 4096, 16);
+        recorder.start();
+        byte[] frame = frame(MessageType.Datagram.ALTITUDE_MESSAGE, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        recorder.record(frame, 0, frame.length);
+        recorder.record(frame, 0, frame.length);
+        recorder.stop();
+
+        Path segment = FlightRecordReader.segments(directory).get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(FlightRecorder.HEADER_SIZE + 2 * FlightRecorder.RECORD_HEADER_SIZE + 8 + 3);
+        }
+
+        assertEquals(1, FlightRecordReader.read(segment, (nanos, type, payload, offset, length) -> { }));
+    }
+
+    @Test
+    public void record_disabledWritesNothing() throws IOException {
+        FlightRecorder recorder = new FlightRecorder();
+        recorder.start();
+        byte[] frame = frame(MessageType.Datagram.ALTITUDE_MESSAGE, new byte[8]);
+        recorder.record(frame, 0, frame.length);
+        recorder.stop();
+
+        assertEquals(0, recorder.getRecordedCount());
+        assertEquals(0, FlightRecordReader.segments(directory).size());
+    }
+
+    private static byte[] frame(MessageType.Datagram type, byte[] payload) {
+        byte[] frame = new byte[Packet.MESSAGE_HEADER_SIZE + payload.length];
+        frame[0] = Packet.PACKET_HEADER_BYTE_0;
+        frame[1] = Packet.PACKET_HEADER_BYTE_1;
+        frame[2] = (byte) payload.length;
+        frame[3] = (byte) type.getValue();
+        System.arraycopy(payload, 0, frame, Packet.MESSAGE_HEADER_SIZE, payload.length);
+        return frame;
+    }
+}
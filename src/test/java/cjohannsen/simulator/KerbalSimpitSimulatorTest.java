@@ -0,0 +1,107 @@
+package cjohannsen.simulator;
+
+import cjohannsen.SimpitHost;
+import cjohannsen.protocol.MessageType;
+import cjohannsen.protocol.Packet;
+import cjohannsen.protocol.PacketSource;
+import cjohannsen.transport.LoopbackTransport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class KerbalSimpitSimulatorTest {
+
+    private LoopbackTransport transport;
+    private KerbalSimpitSimulator simulator;
+    private PacketSource packetSource;
+
+    @Before
+    public void setUp() {
+        transport = new LoopbackTransport();
+        simulator = new KerbalSimpitSimulator(transport.getPeer(), 1000);
+        simulator.start();
+        packetSource = new PacketSource(transport);
+        packetSource.start();
+    }
+
+    @After
+    public void tearDown() {
+        simulator.stop();
+    }
+
+    @Test
+    public void handshake_answersSynWithAck() {
+        send(MessageType.Command.SYNC_MESSAGE, SimpitHost.HANDSHAKE_SYN);
+
+        Packet ack = next();
+        assertEquals(MessageType.Datagram.SYNC_MESSAGE, ack.getDatagram());
+        assertEquals(SimpitHost.HANDSHAKE_ACK, ack.getBuffer()[ack.getPayloadOffset()]);
+        ack.release();
+
+        send(MessageType.Command.SYNC_MESSAGE, SimpitHost.HANDSHAKE_SYNACK);
+        waitFor(() -> simulator.isHandshakeComplete());
+    }
+
+    @Test
+    public void register_streamsChannelUntilDeregistered() {
+        send(MessageType.Command.REGISTER_MESSAGE, (byte) MessageType.Datagram.ALTITUDE_MESSAGE.getValue());
+
+        for (int i = 0; i < 10; i++) {
+            Packet packet = next();
+            assertEquals(MessageType.Datagram.ALTITUDE_MESSAGE, packet.getDatagram());
+            assertEquals(8, packet.getPayloadLength());
+            packet.release();
+        }
+
+        send(MessageType.Command.DEREGISTER_MESSAGE, (byte) MessageType.Datagram.ALTITUDE_MESSAGE.getValue());
+        waitFor(() -> !simulator.isRegistered(MessageType.Datagram.ALTITUDE_MESSAGE));
+        assertEquals(1, simulator.getCommandCount(MessageType.Command.DEREGISTER_MESSAGE));
+    }
+
+    @Test
+    public void echo_returnsPayload() {
+        byte[] request = Packet.encodePacket(MessageType.Command.ECHO_REQ_MESSAGE, "ping".getBytes());
+        transport.write(request, request.length);
+
+        Packet response = next();
+        assertEquals(MessageType.Datagram.ECHO_RESP_MESSAGE, response.getDatagram());
+        assertEquals("ping", new String(response.getPayload()));
+        response.release();
+    }
+
+    @Test
+    public void setRates_parsesChannelRates() {
+        simulator.setRates("ALTITUDE_MESSAGE=50, VELOCITY_MESSAGE=0");
+
+        assertEquals(50, simulator.getRate(MessageType.Datagram.ALTITUDE_MESSAGE), 0);
+        assertEquals(0, simulator.getRate(MessageType.Datagram.VELOCITY_MESSAGE), 0);
+        assertEquals(1000, simulator.getRate(MessageType.Datagram.LF_MESSAGE), 0);
+        assertFalse(simulator.isRegistered(MessageType.Datagram.LF_MESSAGE));
+    }
+
+    private void send(MessageType.Command command, byte payload) {
+        byte[] message = Packet.encodePacket(command, payload);
+        transport.write(message, message.length);
+    }
+
+    private Packet next() {
+        Optional<Packet> packet = packetSource.next(Optional.of(1000));
+        assertTrue(packet.isPresent());
+        return packet.get();
+    }
+
+    private static void waitFor(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.yield();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package cjohannsen.telemetry;
+
+import cjohannsen.protocol.MessageType;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+
+public class TelemetryBinaryTest {
+
+    @Test
+    public void write_streamsChangedChannelsWithVersions() throws IOException {
+        TelemetryStore store = new TelemetryStore();
+        byte[] altitude = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putFloat(100).putFloat(50).array();
+        byte[] soi = "Mun".getBytes();
+        store.update(MessageType.Datagram.ALTITUDE_MESSAGE, altitude, 0, altitude.length);
+        store.update(MessageType.Datagram.SOI_MESSAGE, soi, 0, soi.length);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        int written = TelemetryBinary.write(out, store.snapshot(null), null, 1);
+
+        assertEquals(TelemetryBinary.HEADER_SIZE + TelemetryBinary.CHANNEL_HEADER_SIZE + soi.length, written);
+        ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(written, buffer.remaining());
+        assertEquals(store.getEpoch(), buffer.getInt());
+        assertEquals(2, buffer.getLong());
+        assertEquals(1, buffer.get());
+        assertEquals(MessageType.Datagram.SOI_MESSAGE.getValue(), buffer.get() & 0xFF);
+        assertEquals(2, buffer.getLong());
+        assertEquals(soi.length, buffer.get());
+        byte[] payload = new byte[soi.length];
+        buffer.get(payload);
+        assertEquals("Mun", new String(payload));
+    }
+
+    @Test
+    public void write_filtersChannels() throws IOException {
+        TelemetryStore store = new TelemetryStore();
+        byte[] altitude = new byte[8];
+        store.update(MessageType.Datagram.ALTITUDE_MESSAGE, altitude, 0, altitude.length);
+        store.update(MessageType.Datagram.VELOCITY_MESSAGE, new byte[12], 0, 12);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        TelemetryBinary.write(out, store.snapshot(null), TelemetryJson.parseChannels("ALTITUDE_MESSAGE"), 0);
+
+        byte[] bytes = out.toByteArray();
+        assertEquals(1, bytes[12]);
+        assertEquals(MessageType.Datagram.ALTITUDE_MESSAGE.getValue(), bytes[13] & 0xFF);
+        assertEquals(TelemetryBinary.HEADER_SIZE + TelemetryBinary.CHANNEL_HEADER_SIZE + altitude.length, bytes.length);
+    }
+}
@@ -0,0 +1,50 @@
+package cjohannsen.telemetry;
+
+import cjohannsen.protocol.MessageType;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TelemetryFilterTest {
+
+    @Test
+    public void accept_rejectsIdenticalBytes() {
+        TelemetryFilter filter = new TelemetryFilter("");
+        byte[] bytes = floats(100f, 50f);
+
+        assertTrue(filter.accept(MessageType.Datagram.LF_MESSAGE, bytes, 0, bytes.length));
+        assertFalse(filter.accept(MessageType.Datagram.LF_MESSAGE, bytes.clone(), 0, bytes.length));
+        assertTrue(filter.accept(MessageType.Datagram.LF_MESSAGE, floats(100f, 49f), 0, bytes.length));
+        assertEquals(1, filter.getUnchangedCount());
+    }
+
+    @Test
+    public void accept_appliesDeadbandAgainstLastAcceptedValue() {
+        TelemetryFilter filter = new TelemetryFilter("ALTITUDE_MESSAGE=0.5");
+
+        assertTrue(filter.accept(MessageType.Datagram.ALTITUDE_MESSAGE, floats(1000f, 10f), 0, 8));
+        assertFalse(filter.accept(MessageType.Datagram.ALTITUDE_MESSAGE, floats(1000.3f, 10.2f), 0, 8));
+        assertTrue(filter.accept(MessageType.Datagram.ALTITUDE_MESSAGE, floats(1000.6f, 10.2f), 0, 8));
+        assertFalse(filter.accept(MessageType.Datagram.ALTITUDE_MESSAGE, floats(1000.9f, 10.2f), 0, 8));
+        assertEquals(2, filter.getDeadbandCount());
+    }
+
+    @Test
+    public void accept_readsPayloadAtOffset() {
+        TelemetryFilter filter = new TelemetryFilter("");
+        byte[] frame = new byte[12];
+        System.arraycopy(floats(1f, 2f), 0, frame, 4, 8);
+
+        assertTrue(filter.accept(MessageType.Datagram.TARGETINFO_MESSAGE, frame, 4, 8));
+        assertFalse(filter.accept(MessageType.Datagram.TARGETINFO_MESSAGE, floats(1f, 2f), 0, 8));
+    }
+
+    private static byte[] floats(float a, float b) {
+        return ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putFloat(a).putFloat(b).array();
+    }
+}
@@ -0,0 +1,71 @@
+package cjohannsen.telemetry;
+
+import cjohannsen.protocol.MessageType;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TelemetryHistoryTest {
+
+    public static final double MAX_DELTA = 0.01;
+
+    @Test
+    public void record_rollsUpSecondBuckets() {
+        TelemetryHistory history = new TelemetryHistory(16, 16, 16);
+        record(history, 1000, 10f);
+        record(history, 1500, 20f);
+        record(history, 2100, 5f);
+
+        List<TelemetryHistory.Sample> samples = history.query(MessageType.Datagram.ALTITUDE_MESSAGE, "sealevel", TelemetryHistory.Tier.SECOND, 0);
+
+        assertEquals(2, samples.size());
+        assertEquals(1000, samples.get(0).getTime());
+        assertEquals(10f, samples.get(0).getMin(), MAX_DELTA);
+        assertEquals(20f, samples.get(0).getMax(), MAX_DELTA);
+        assertEquals(15f, samples.get(0).getMean(), MAX_DELTA);
+        assertEquals(2, samples.get(0).getCount());
+        assertEquals(2000, samples.get(1).getTime());
+        assertEquals(5f, samples.get(1).getMean(), MAX_DELTA);
+    }
+
+    @Test
+    public void record_overwritesOldestRawSamples() {
+        TelemetryHistory history = new TelemetryHistory(4, 4, 4);
+        for (int i = 0; i < 10; i++) {
+            record(history, i, i);
+        }
+
+        List<TelemetryHistory.Sample> samples = history.query(MessageType.Datagram.ALTITUDE_MESSAGE, "sealevel", TelemetryHistory.Tier.RAW, 0);
+
+        assertEquals(4, samples.size());
+        assertEquals(6f, samples.get(0).getMean(), MAX_DELTA);
+        assertEquals(9f, samples.get(3).getMean(), MAX_DELTA);
+    }
+
+    @Test
+    public void query_filtersBySinceAndField() {
+        TelemetryHistory history = new TelemetryHistory(16, 16, 16);
+        record(history, 5000, 1f);
+        record(history, 25000, 2f);
+
+        List<TelemetryHistory.Sample> samples = history.query(MessageType.Datagram.ALTITUDE_MESSAGE, "surface", TelemetryHistory.Tier.TEN_SECONDS, 10000);
+
+        assertEquals(1, samples.size());
+        assertEquals(20000, samples.get(0).getTime());
+        assertEquals(-2f, samples.get(0).getMean(), MAX_DELTA);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void query_rejectsUnknownField() {
+        new TelemetryHistory(4, 4, 4).query(MessageType.Datagram.ALTITUDE_MESSAGE, "nope", TelemetryHistory.Tier.RAW, 0);
+    }
+
+    private static void record(TelemetryHistory history, long time, float sealevel) {
+        byte[] bytes = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putFloat(sealevel).putFloat(-sealevel).array();
+        history.record(MessageType.Datagram.ALTITUDE_MESSAGE, bytes, 0, bytes.length, time);
+    }
+}
@@ -0,0 +1,224 @@
+package cjohannsen.telemetry;
+
+import cjohannsen.ApplicationState;
+import cjohannsen.protocol.MessageType;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TelemetryPublisherTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private static class RecordingSink implements TelemetryPublisher.Sink {
+        final List<String> events = Collections.synchronizedList(new ArrayList<>());
+        final List<String> data = Collections.synchronizedList(new ArrayList<>());
+        volatile boolean failing;
+        volatile boolean closed;
+
+        @Override
+        public void send(final String event, final String id, final String data) throws IOException {
+            if (failing) {
+                throw new IOException("Broken pipe");
+            }
+            this.events.add(event);
+            this.data.add(data);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private ApplicationState applicationState;
+    private TelemetryStore store;
+    private TelemetryPublisher publisher;
+
+    @Before
+    public void setUp() {
+        applicationState = new ApplicationState();
+        store = applicationState.getTelemetryStore();
+        publisher = new TelemetryPublisher(applicationState, 20, 1000, 1000, Runnable::run);
+    }
+
+    private String epoch() {
+        return Integer.toHexString(store.getEpoch());
+    }
+
+    private void update(final MessageType.Datagram type, final float... values) {
+        final ByteBuffer buffer = ByteBuffer.allocate(values.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+        for (float value : values) {
+            buffer.putFloat(value);
+        }
+        store.update(type, buffer.array(), 0, values.length * 4);
+    }
+
+    @Test
+    public void publish_sendsFullSnapshotOnConnect() {
+        update(MessageType.Datagram.ALTITUDE_MESSAGE, 100, 50);
+        update(MessageType.Datagram.VELOCITY_MESSAGE, 1, 2, 3);
+        RecordingSink sink = new RecordingSink();
+        publisher.subscribe(sink, null, 0);
+
+        publisher.publish(0);
+
+        assertEquals(1, sink.events.size());
+        assertEquals("snapshot", sink.events.get(0));
+        assertEquals("{\"version\":\"" + epoch() + "-2\",\"channels\":{\"ALTITUDE_MESSAGE\":{\"sealevel\":100.0,\"surface\":50.0},"
+                + "\"VELOCITY_MESSAGE\":{\"orbital\":1.0,\"surface\":2.0,\"vertical\":3.0}}}", sink.data.get(0));
+    }
+
+    @Test
+    public void publish_sendsOnlyChangedChannels() {
+        update(MessageType.Datagram.ALTITUDE_MESSAGE, 100, 50);
+        update(MessageType.Datagram.VELOCITY_MESSAGE, 1, 2, 3);
+        RecordingSink sink = new RecordingSink();
+        publisher.subscribe(sink, null, 0);
+        publisher.publish(0);
+
+        publisher.publish(SECOND);
+        update(MessageType.Datagram.ALTITUDE_MESSAGE, 110, 60);
+        publisher.publish(2 * SECOND);
+
+        assertEquals(2, sink.events.size());
+        assertEquals("update", sink.events.get(1));
+        assertEquals("{\"version\":\"" + epoch() + "-3\",\"channels\":{\"ALTITUDE_MESSAGE\":{\"sealevel\":110.0,\"surface\":60.0}}}", sink.data.get(1));
+    }
+
+    @Test
+    public void publish_filtersChannelsPerSubscriber() {
+        RecordingSink altitude = new RecordingSink();
+        RecordingSink all = new RecordingSink();
+        publisher.subscribe(altitude, TelemetryJson.parseChannels("ALTITUDE_MESSAGE"), 0);
+        publisher.subscribe(all, null, 0);
+        publisher.publish(0);
+
+        update(MessageType.Datagram.VELOCITY_MESSAGE, 1, 2, 3);
+        publisher.publish(SECOND);
+
+        assertEquals(1, altitude.events.size());
+        assertEquals(2, all.events.size());
+    }
+
+    @Test
+    public void publish_coalescesUpdatesAboveSubscriberRate() {
+        RecordingSink sink = new RecordingSink();
+        publisher.subscribe(sink, null, 2);
+        publisher.publish(0);
+
+        for (int i = 1; i <= 10; i++) {
+            update(MessageType.Datagram.ALTITUDE_MESSAGE, i, i);
+            publisher.publish(i * SECOND / 20);
+        }
+
+        // Ten changes over 500 ms at 2 Hz: the snapshot, then one update carrying the latest value.
+        assertEquals(2, sink.events.size());
+        assertTrue(sink.data.get(1).contains("\"sealevel\":10.0"));
+    }
+
+    @Test
+    public void publish_dropsSubscriberWhenSendFails() {
+        RecordingSink sink = new RecordingSink();
+        publisher.subscribe(sink, null, 0);
+        publisher.publish(0);
+        assertEquals(1, publisher.getSubscriberCount());
+
+        sink.failing = true;
+        update(MessageType.Datagram.ALTITUDE_MESSAGE, 1, 1);
+        publisher.publish(SECOND);
+        publisher.publish(2 * SECOND);
+
+        assertTrue(sink.closed);
+        assertEquals(0, publisher.getSubscriberCount());
+        assertEquals(1, publisher.getEventsSent());
+    }
+
+    @Test(timeout = 10000)
+    public void publish_blockedSubscriberDoesNotDelayOthers() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        RecordingSink blocked = new RecordingSink() {
+            @Override
+            public void send(final String event, final String id, final String data) throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                super.send(event, id, data);
+            }
+        };
+        RecordingSink healthy = new RecordingSink();
+        ExecutorService sender = Executors.newCachedThreadPool();
+        TelemetryPublisher threaded = new TelemetryPublisher(applicationState, 20, 1000, 1000, sender);
+        try {
+            threaded.subscribe(blocked, null, 0);
+            threaded.subscribe(healthy, null, 0);
+            threaded.publish(0);
+            awaitEvents(healthy, 1);
+
+            update(MessageType.Datagram.ALTITUDE_MESSAGE, 1, 1);
+            threaded.publish(SECOND / 2);
+            awaitEvents(healthy, 2);
+            assertEquals(0, blocked.events.size());
+            assertFalse(blocked.closed);
+
+            // Past the send timeout the stalled subscriber is dropped; the healthy one keeps receiving.
+            update(MessageType.Datagram.ALTITUDE_MESSAGE, 2, 2);
+            threaded.publish(2 * SECOND);
+            awaitEvents(healthy, 3);
+            while (!blocked.closed) {
+                Thread.sleep(1);
+            }
+            assertEquals(1, threaded.getSubscribersStalled());
+            threaded.publish(3 * SECOND);
+            assertEquals(1, threaded.getSubscriberCount());
+        } finally {
+            release.countDown();
+            sender.shutdown();
+        }
+    }
+
+    private static void awaitEvents(final RecordingSink sink, final int count) throws InterruptedException {
+        while (sink.events.size() < count) {
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void parseChannels_emptyMeansAll() {
+        assertEquals(null, TelemetryJson.parseChannels(""));
+        boolean[] filter = TelemetryJson.parseChannels("ALTITUDE_MESSAGE, SOI_MESSAGE");
+        assertTrue(filter[MessageType.Datagram.ALTITUDE_MESSAGE.getValue()]);
+        assertTrue(filter[MessageType.Datagram.SOI_MESSAGE.getValue()]);
+        assertFalse(filter[MessageType.Datagram.VELOCITY_MESSAGE.getValue()]);
+    }
+
+    @Test
+    public void write_writesSoiNameAndNonFiniteAsNull() {
+        byte[] soi = "Mun\"".getBytes();
+        store.update(MessageType.Datagram.SOI_MESSAGE, soi, 0, soi.length);
+        update(MessageType.Datagram.ALTITUDE_MESSAGE, Float.NaN, 1);
+        StringBuilder out = new StringBuilder();
+
+        int written = TelemetryJson.write(out, store.snapshot(null), null, 0);
+
+        assertEquals(2, written);
+        assertEquals("{\"version\":\"" + epoch() + "-2\",\"channels\":{\"ALTITUDE_MESSAGE\":{\"sealevel\":null,\"surface\":1.0},"
+                + "\"SOI_MESSAGE\":{\"name\":\"Mun\\\"\"}}}", out.toString());
+    }
+}
@@ -0,0 +1,89 @@
+package cjohannsen.telemetry;
+
+import cjohannsen.protocol.MessageType;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TelemetryStoreTest {
+
+    public static final double MAX_DELTA = 0.01;
+
+    @Test
+    public void update_storesFieldsInPrimitiveSlots() {
+        TelemetryStore store = new TelemetryStore();
+        byte[] bytes = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN).putFloat(1.5f).putFloat(2.5f).putFloat(3.5f).array();
+
+        store.update(MessageType.Datagram.VELOCITY_MESSAGE, bytes, 0, bytes.length);
+
+        assertTrue(store.has(MessageType.Datagram.VELOCITY_MESSAGE));
+        assertFalse(store.has(MessageType.Datagram.ALTITUDE_MESSAGE));
+        assertEquals(1, store.getVersion());
+        assertEquals(2.5f, store.getFloat(MessageType.Datagram.VELOCITY_MESSAGE, 1), MAX_DELTA);
+        TelemetryStore.Snapshot snapshot = store.snapshot(null);
+        assertEquals(3.5f, snapshot.getFloat(MessageType.Datagram.VELOCITY_MESSAGE, 2), MAX_DELTA);
+        assertEquals(1, snapshot.getChannelVersion(MessageType.Datagram.VELOCITY_MESSAGE));
+    }
+
+    @Test
+    public void snapshot_roundTripsOddLengthPayloads() {
+        TelemetryStore store = new TelemetryStore();
+        byte[] soi = "Kerbin".getBytes();
+
+        store.update(MessageType.Datagram.SOI_MESSAGE, soi, 0, soi.length);
+
+        assertArrayEquals(soi, store.snapshot(null).getPayload(MessageType.Datagram.SOI_MESSAGE));
+    }
+
+    @Test(timeout = 10000)
+    public void snapshot_isConsistentAcrossChannels() throws InterruptedException {
+        final TelemetryStore store = new TelemetryStore();
+        final AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            byte[] bytes = new byte[8];
+            for (int i = 1; running.get(); i++) {
+                ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(0, i).putInt(4, i);
+                store.update(MessageType.Datagram.APSIDESTIME_MESSAGE, bytes, 0, bytes.length);
+                store.update(MessageType.Datagram.TARGETINFO_MESSAGE, bytes, 0, bytes.length);
+            }
+        });
+        writer.start();
+
+        TelemetryStore.Snapshot snapshot = new TelemetryStore.Snapshot();
+        for (int i = 0; i < 20000; i++) {
+            store.snapshot(snapshot);
+            int first = snapshot.getInt(MessageType.Datagram.APSIDESTIME_MESSAGE, 0);
+            int second = snapshot.getInt(MessageType.Datagram.TARGETINFO_MESSAGE, 0);
+            assertTrue(first + " vs " + second, first == second || first == second + 1);
+            assertEquals(first, snapshot.getInt(MessageType.Datagram.APSIDESTIME_MESSAGE, 1));
+        }
+        running.set(false);
+        writer.join();
+    }
+
+    @Test
+    public void sinceVersion_ignoresTagsFromAnotherEpoch() {
+        TelemetryStore store = new TelemetryStore();
+        store.update(MessageType.Datagram.ALTITUDE_MESSAGE, new byte[8], 0, 8);
+        store.update(MessageType.Datagram.ALTITUDE_MESSAGE, new byte[8], 0, 8);
+        TelemetryStore.Snapshot snapshot = store.snapshot(null);
+        String otherEpoch = Integer.toHexString(store.getEpoch() + 1);
+
+        assertEquals(Integer.toHexString(store.getEpoch()) + "-2", snapshot.getTag());
+        assertEquals(2, snapshot.sinceVersion(snapshot.getTag()));
+        assertEquals(0, snapshot.sinceVersion(otherEpoch + "-1"));
+        assertEquals(0, snapshot.sinceVersion(""));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sinceVersion_rejectsMalformedTag() {
+        new TelemetryStore().snapshot(null).sinceVersion("42");
+    }
+}
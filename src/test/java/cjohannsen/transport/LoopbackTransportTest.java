@@ -0,0 +1,56 @@
+package cjohannsen.transport;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LoopbackTransportTest {
+
+    @Test
+    public void write_isReadByPeer() {
+        LoopbackTransport transport = new LoopbackTransport(8);
+        transport.write(new byte[]{1, 2, 3}, 3);
+
+        byte[] buffer = new byte[8];
+        assertEquals(3, transport.getPeer().read(buffer, buffer.length));
+        assertEquals(3, buffer[2]);
+        assertEquals(0, transport.available());
+    }
+
+    @Test
+    public void read_wrapsAroundRing() {
+        LoopbackTransport transport = new LoopbackTransport(4);
+        LoopbackTransport peer = transport.getPeer();
+        byte[] buffer = new byte[4];
+        peer.write(new byte[]{1, 2, 3}, 3);
+        assertEquals(3, transport.read(buffer, 3));
+        peer.write(new byte[]{4, 5, 6}, 3);
+
+        assertEquals(3, transport.read(buffer, buffer.length));
+        assertEquals(4, buffer[0]);
+        assertEquals(6, buffer[2]);
+    }
+
+    @Test
+    public void read_timesOutOnSilentLink() {
+        LoopbackTransport transport = new LoopbackTransport();
+        transport.setReadTimeout(5);
+
+        assertEquals(0, transport.read(new byte[8], 8));
+    }
+
+    @Test(timeout = 5000)
+    public void write_waitsForReaderWhenFull() throws InterruptedException {
+        LoopbackTransport transport = new LoopbackTransport(4);
+        Thread writer = new Thread(() -> transport.write(new byte[10], 10));
+        writer.start();
+
+        byte[] buffer = new byte[4];
+        int total = 0;
+        while (total < 10) {
+            total += transport.getPeer().read(buffer, buffer.length);
+        }
+        writer.join();
+        assertEquals(10, total);
+    }
+}
@@ -0,0 +1,108 @@
+package cjohannsen.transport;
+
+import cjohannsen.SimpitHost;
+import cjohannsen.protocol.MessageType;
+import cjohannsen.protocol.Packet;
+import cjohannsen.protocol.PacketSource;
+import cjohannsen.protocol.RingPacketQueue;
+import cjohannsen.recorder.FlightRecorder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ReplayTransportTest {
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("replay-transport-test");
+        FlightRecorder recorder = new FlightRecorder(true, directory.toString(), FlightRecorder.DEFAULT_SEGMENT_SIZE, 64);
+        recorder.start();
+        record(recorder, MessageType.Datagram.SYNC_MESSAGE, new byte[]{SimpitHost.HANDSHAKE_ACK});
+        for (int i = 0; i < 20; i++) {
+            record(recorder, MessageType.Datagram.ALTITUDE_MESSAGE, new byte[]{(byte) i, 0, 0, 0, 0, 0, 0, 0});
+        }
+        recorder.stop();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void read_waitsForSynThenAcks() throws IOException {
+        ReplayTransport transport = new ReplayTransport(directory, ReplayTransport.AS_FAST_AS_POSSIBLE);
+        transport.setReadTimeout(10);
+        byte[] buffer = new byte[256];
+
+        assertEquals(0, transport.read(buffer, buffer.length));
+
+        byte[] syn = Packet.encodePacket(MessageType.Command.SYNC_MESSAGE, new byte[]{SimpitHost.HANDSHAKE_SYN, 0});
+        transport.write(syn, syn.length);
+        int length = transport.read(buffer, buffer.length);
+
+        assertTrue(length > Packet.MESSAGE_HEADER_SIZE);
+        assertEquals(MessageType.Datagram.SYNC_MESSAGE.getValue(), buffer[Packet.MESSAGE_TYPE_INDEX]);
+        assertEquals(SimpitHost.HANDSHAKE_ACK, buffer[Packet.MESSAGE_HEADER_SIZE]);
+    }
+
+    @Test
+    public void replay_feedsPacketSource() throws Exception {
+        ReplayTransport transport = new ReplayTransport(directory, ReplayTransport.AS_FAST_AS_POSSIBLE);
+        PacketSource packetSource = new PacketSource(transport, 16, RingPacketQueue.OverflowPolicy.BLOCK, false, new FlightRecorder());
+        packetSource.start();
+        byte[] syn = Packet.encodePacket(MessageType.Command.SYNC_MESSAGE, new byte[]{SimpitHost.HANDSHAKE_SYN, 0});
+        transport.write(syn, syn.length);
+
+        Packet ack = packetSource.next(Optional.of(1000)).get();
+        assertEquals(MessageType.Datagram.SYNC_MESSAGE, ack.getDatagram());
+        ack.release();
+        for (int i = 0; i < 20; i++) {
+            Packet packet = packetSource.next(Optional.of(1000)).get();
+            assertEquals(MessageType.Datagram.ALTITUDE_MESSAGE, packet.getDatagram());
+            assertEquals(i, packet.getBuffer()[packet.getPayloadOffset()]);
+            packet.release();
+        }
+
+        assertTrue(transport.awaitFinished(1, TimeUnit.SECONDS));
+        assertEquals(20, transport.getFramesReplayed());
+        assertEquals(1, transport.getFramesSkipped());
+    }
+
+    @Test
+    public void parseSpeed() {
+        assertEquals(ReplayTransport.AS_FAST_AS_POSSIBLE, ReplayTransport.parseSpeed("max"), 0);
+        assertEquals(1, ReplayTransport.parseSpeed("1"), 0);
+        assertEquals(10, ReplayTransport.parseSpeed("10x"), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseSpeed_rejectsZero() {
+        ReplayTransport.parseSpeed("0");
+    }
+
+    private static void record(FlightRecorder recorder, MessageType.Datagram type, byte[] payload) {
+        byte[] frame = new byte[Packet.MESSAGE_HEADER_SIZE + payload.length];
+        frame[0] = Packet.PACKET_HEADER_BYTE_0;
+        frame[1] = Packet.PACKET_HEADER_BYTE_1;
+        frame[Packet.MESSAGE_SIZE_INDEX] = (byte) payload.length;
+        frame[Packet.MESSAGE_TYPE_INDEX] = (byte) type.getValue();
+        System.arraycopy(payload, 0, frame, Packet.MESSAGE_HEADER_SIZE, payload.length);
+        recorder.record(frame, 0, frame.length);
+    }
+}